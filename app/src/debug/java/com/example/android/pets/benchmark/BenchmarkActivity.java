@@ -0,0 +1,108 @@
+package com.example.android.pets.benchmark;
+
+import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Bundle;
+import android.support.v7.app.AppCompatActivity;
+import android.util.Log;
+import android.widget.ScrollView;
+import android.widget.TextView;
+
+import com.example.android.pets.data.PetsDatabase;
+import com.example.android.pets.data.PetsMaintenance;
+import com.example.android.pets.data.QueryMetrics;
+
+import java.lang.ref.WeakReference;
+
+/**
+ * Debug-only screen that runs one benchmark against a scratch database and shows the report.
+ *
+ * adb shell am start -n com.example.android.pets/.benchmark.BenchmarkActivity -e benchmark bulk_write
+ */
+public class BenchmarkActivity extends AppCompatActivity {
+
+    private static final String LOG_TAG = BenchmarkActivity.class.getSimpleName();
+
+    public static final String EXTRA_BENCHMARK = "benchmark";
+
+    public static final String BENCHMARK_BULK_WRITE = "bulk_write";
+    public static final String BENCHMARK_DATABASE_CONFIG = "database_config";
+    public static final String BENCHMARK_EXPORT = "export";
+    public static final String BENCHMARK_IMPORT = "import";
+    public static final String BENCHMARK_SYNC = "sync";
+    public static final String BENCHMARK_SEED = "seed";
+    //Not a benchmark, shows what the app's own database has recorded so far
+    public static final String QUERY_METRICS = "query_metrics";
+    //Runs maintenance on the app's own database right away, without waiting for the app to idle
+    public static final String MAINTENANCE = "maintenance";
+
+    private TextView mReportTextView;
+
+    @Override
+    protected void onCreate(Bundle savedInstanceState) {
+        super.onCreate(savedInstanceState);
+        mReportTextView = new TextView(this);
+        ScrollView scrollView = new ScrollView(this);
+        scrollView.addView(mReportTextView);
+        setContentView(scrollView);
+
+        String benchmark = getIntent().getStringExtra(EXTRA_BENCHMARK);
+        if(benchmark == null){
+            benchmark = BENCHMARK_BULK_WRITE;
+        }
+        mReportTextView.setText("Running " + benchmark + "...");
+        new BenchmarkTask(this).execute(benchmark);
+    }
+
+    //Each benchmark returns a plain text report
+    static String runBenchmark(Context context, String benchmark){
+        switch (benchmark){
+            case BENCHMARK_BULK_WRITE:
+                return BulkWriteBenchmark.run(context, BulkWriteBenchmark.DEFAULT_ROWS);
+            case BENCHMARK_DATABASE_CONFIG:
+                return DatabaseConfigBenchmark.run(context, DatabaseConfigBenchmark.DEFAULT_ROWS,
+                        DatabaseConfigBenchmark.DEFAULT_WRITES);
+            case BENCHMARK_EXPORT:
+                return ExportBenchmark.run(context, ExportBenchmark.DEFAULT_ROWS);
+            case BENCHMARK_IMPORT:
+                return ImportBenchmark.run(context, ImportBenchmark.DEFAULT_ROWS);
+            case BENCHMARK_SYNC:
+                return SyncBenchmark.run(context, SyncBenchmark.DEFAULT_ROWS);
+            case BENCHMARK_SEED:
+                return SeedBenchmark.run(context, SeedBenchmark.DEFAULT_ROWS);
+            case QUERY_METRICS:
+                QueryMetrics metrics = PetsDatabase.getInstance(context).getQueryMetrics();
+                return metrics == null ? "Query metrics are not installed" : metrics.dump();
+            case MAINTENANCE:
+                return new PetsMaintenance(PetsDatabase.getInstance(context)).run().toString();
+            default:
+                return "Unknown benchmark: " + benchmark;
+        }
+    }
+
+    private static class BenchmarkTask extends AsyncTask<String, Void, String> {
+
+        private final WeakReference<BenchmarkActivity> weakActivity;
+        private final Context appContext;
+
+        BenchmarkTask(BenchmarkActivity activity){
+            this.weakActivity = new WeakReference<>(activity);
+            this.appContext = activity.getApplicationContext();
+        }
+
+        @Override
+        protected String doInBackground(String... benchmarks){
+            String report = runBenchmark(appContext, benchmarks[0]);
+            Log.i(LOG_TAG, report);
+            return report;
+        }
+
+        @Override
+        protected void onPostExecute(String report){
+            BenchmarkActivity activity = weakActivity.get();
+            if(activity != null){
+                activity.mReportTextView.setText(report);
+            }
+        }
+    }
+}
@@ -0,0 +1,124 @@
+package com.example.android.pets.benchmark;
+
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.pets.data.PetBulkWriter;
+import com.example.android.pets.data.PetDao;
+import com.example.android.pets.data.PetEntry;
+import com.example.android.pets.data.PetsDatabase;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Compares the single-row PetDao write methods with the chunked bulk path in PetBulkWriter.
+ *
+ * Both paths run against the same on-disk scratch database, so the cost of every commit is
+ * included, which is what the bulk path saves.
+ */
+public final class BulkWriteBenchmark {
+
+    public static final int DEFAULT_ROWS = 2000;
+
+    private static final String DATABASE_NAME = "benchmark_bulk_write";
+
+    private BulkWriteBenchmark(){
+    }
+
+    @WorkerThread
+    public static String run(Context context, int rows){
+        context.deleteDatabase(DATABASE_NAME);
+        PetsDatabase database = PetsDatabase.create(context, DATABASE_NAME);
+        try {
+            return runWith(database, rows);
+        } finally {
+            database.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    private static String runWith(PetsDatabase database, int rows){
+        PetDao dao = database.petDao();
+        PetBulkWriter bulkWriter = new PetBulkWriter(database);
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US, "Bulk write benchmark, %d rows%n", rows));
+
+        //Single-row path: one implicit transaction per call
+        List<PetEntry> pets = makePets(rows);
+        //The DAO only writes breed ids, the bulk writer looks them up itself
+        database.breeds().assignIds(pets);
+        long start = System.nanoTime();
+        for(PetEntry pet : pets){
+            pet.setId((int) dao.insertPet(pet));
+        }
+        long singleInsert = System.nanoTime() - start;
+
+        renamePets(pets);
+        start = System.nanoTime();
+        for(PetEntry pet : pets){
+            dao.updatePet(pet);
+        }
+        long singleUpdate = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        for(PetEntry pet : pets){
+            dao.deletePet(pet.getId());
+        }
+        long singleDelete = System.nanoTime() - start;
+
+        //Bulk path: one transaction per chunk
+        pets = makePets(rows);
+        start = System.nanoTime();
+        long[] ids = bulkWriter.insertPets(pets);
+        long bulkInsert = System.nanoTime() - start;
+
+        List<Integer> idList = new ArrayList<>(ids.length);
+        for(int i = 0; i < ids.length; i++){
+            pets.get(i).setId((int) ids[i]);
+            idList.add((int) ids[i]);
+        }
+        renamePets(pets);
+        start = System.nanoTime();
+        bulkWriter.updatePets(pets);
+        long bulkUpdate = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        bulkWriter.deletePetsByIds(idList);
+        long bulkDelete = System.nanoTime() - start;
+
+        appendLine(report, "insert", rows, singleInsert, bulkInsert);
+        appendLine(report, "update", rows, singleUpdate, bulkUpdate);
+        appendLine(report, "delete", rows, singleDelete, bulkDelete);
+        return report.toString();
+    }
+
+    private static void appendLine(StringBuilder report, String operation, int rows,
+                                   long singleNanos, long bulkNanos){
+        report.append(String.format(Locale.US,
+                "%-6s single: %8.0f rows/s  bulk: %8.0f rows/s  speedup: %.1fx%n",
+                operation,
+                rowsPerSecond(rows, singleNanos),
+                rowsPerSecond(rows, bulkNanos),
+                (double) singleNanos / Math.max(bulkNanos, 1)));
+    }
+
+    private static double rowsPerSecond(int rows, long nanos){
+        return rows * 1e9 / Math.max(nanos, 1);
+    }
+
+    static List<PetEntry> makePets(int rows){
+        List<PetEntry> pets = new ArrayList<>(rows);
+        for(int i = 0; i < rows; i++){
+            pets.add(new PetEntry("Pet " + i, "Breed " + (i % 100), i % 3, i % 50));
+        }
+        return pets;
+    }
+
+    private static void renamePets(List<PetEntry> pets){
+        for(PetEntry pet : pets){
+            pet.setName(pet.getName() + " (updated)");
+        }
+    }
+}
@@ -0,0 +1,153 @@
+package com.example.android.pets.benchmark;
+
+import android.arch.persistence.room.RoomDatabase;
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.pets.data.PetBulkWriter;
+import com.example.android.pets.data.PetEntry;
+import com.example.android.pets.data.PetsDatabase;
+import com.example.android.pets.data.PetsDatabaseConfig;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Locale;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Measures how each PetsDatabaseConfig setting changes a read-while-write workload on the pet
+ * table: one thread commits single-row updates while another keeps reading catalog pages.
+ *
+ * For every config the report gives the writer's commits per second, the reader's pages per
+ * second and the reader's median and 99th percentile page latency.
+ */
+public final class DatabaseConfigBenchmark {
+
+    public static final int DEFAULT_ROWS = 20000;
+    public static final int DEFAULT_WRITES = 1000;
+
+    private static final String DATABASE_NAME = "benchmark_database_config";
+    private static final int PAGE_SIZE = 50;
+
+    private DatabaseConfigBenchmark(){
+    }
+
+    @WorkerThread
+    public static String run(Context context, int rows, int writes){
+        StringBuilder report = new StringBuilder();
+        report.append(String.format(Locale.US,
+                "Read-while-write benchmark, %d rows, %d single-row updates%n", rows, writes));
+
+        PetsDatabaseConfig wal = new PetsDatabaseConfig.Builder()
+                .setJournalMode(RoomDatabase.JournalMode.WRITE_AHEAD_LOGGING)
+                .build();
+        PetsDatabaseConfig[] configs = {
+                new PetsDatabaseConfig.Builder()
+                        .setJournalMode(RoomDatabase.JournalMode.TRUNCATE)
+                        .build(),
+                wal,
+                new PetsDatabaseConfig.Builder(wal)
+                        .setSynchronous(PetsDatabaseConfig.SYNCHRONOUS_FULL)
+                        .build(),
+                new PetsDatabaseConfig.Builder(wal)
+                        .setSynchronous(PetsDatabaseConfig.SYNCHRONOUS_NORMAL)
+                        .build(),
+                new PetsDatabaseConfig.Builder(wal)
+                        .setCacheSizeKib(8 * 1024)
+                        .build(),
+                new PetsDatabaseConfig.Builder(wal)
+                        .setMmapSizeBytes(64L * 1024 * 1024)
+                        .build(),
+                new PetsDatabaseConfig.Builder(wal)
+                        .setWalAutoCheckpointPages(100)
+                        .build(),
+                new PetsDatabaseConfig.Builder(wal)
+                        .setWalAutoCheckpointPages(10000)
+                        .build(),
+        };
+
+        for(PetsDatabaseConfig config : configs){
+            report.append(runConfig(context, config, rows, writes)).append('\n');
+        }
+        return report.toString();
+    }
+
+    private static String runConfig(Context context, PetsDatabaseConfig config, int rows, int writes){
+        context.deleteDatabase(DATABASE_NAME);
+        final PetsDatabase database = PetsDatabase.create(context, DATABASE_NAME, config);
+        try {
+            final long[] ids = new PetBulkWriter(database).insertPets(BulkWriteBenchmark.makePets(rows));
+            final AtomicBoolean writing = new AtomicBoolean(true);
+            final List<Long> readLatencies = new ArrayList<>();
+            final CountDownLatch readerDone = new CountDownLatch(1);
+
+            Thread reader = new Thread(new Runnable() {
+                @Override
+                public void run() {
+                    Random random = new Random(1);
+                    Object[] args = new Object[1];
+                    while(writing.get()){
+                        args[0] = ids[random.nextInt(ids.length)];
+                        long start = System.nanoTime();
+                        Cursor cursor = database.query(
+                                "SELECT id, name, breed_id, weight, photo_path FROM pet WHERE id > ? ORDER BY id LIMIT " + PAGE_SIZE, args);
+                        try {
+                            while(cursor.moveToNext()){
+                                cursor.getString(1);
+                            }
+                        } finally {
+                            cursor.close();
+                        }
+                        readLatencies.add(System.nanoTime() - start);
+                    }
+                    readerDone.countDown();
+                }
+            });
+            reader.start();
+
+            Random random = new Random(2);
+            long start = System.nanoTime();
+            for(int i = 0; i < writes; i++){
+                PetEntry pet = new PetEntry((int) ids[random.nextInt(ids.length)],
+                        "Updated " + i, "Breed " + (i % 100), i % 3, i % 50);
+                database.breeds().assignId(pet);
+                database.petDao().updatePet(pet);
+            }
+            long writeNanos = System.nanoTime() - start;
+            writing.set(false);
+            readerDone.await();
+
+            long[] latencies = new long[readLatencies.size()];
+            for(int i = 0; i < latencies.length; i++){
+                latencies[i] = readLatencies.get(i);
+            }
+            Arrays.sort(latencies);
+
+            return String.format(Locale.US,
+                    "%s%n  writes: %7.0f/s  reads: %7.0f pages/s  read p50: %6.2f ms  p99: %6.2f ms",
+                    config,
+                    writes * 1e9 / writeNanos,
+                    latencies.length * 1e9 / writeNanos,
+                    percentile(latencies, 0.50) / 1e6,
+                    percentile(latencies, 0.99) / 1e6);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            return config + " interrupted";
+        } finally {
+            database.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    private static long percentile(long[] sorted, double fraction){
+        if(sorted.length == 0){
+            return 0;
+        }
+        int index = (int) Math.min(sorted.length - 1, Math.round(fraction * (sorted.length - 1)));
+        return sorted[index];
+    }
+}
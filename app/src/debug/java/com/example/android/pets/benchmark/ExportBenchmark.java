@@ -0,0 +1,73 @@
+package com.example.android.pets.benchmark;
+
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.pets.data.PetBulkWriter;
+import com.example.android.pets.data.PetExporter;
+import com.example.android.pets.data.PetFileFormat;
+import com.example.android.pets.data.PetsDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Exports a scratch table of pets in every format and reports the rows per second, the file
+ * size and how far the heap grew during the export, which should stay flat whatever the rows.
+ */
+public final class ExportBenchmark {
+
+    public static final int DEFAULT_ROWS = 100000;
+
+    private static final String DATABASE_NAME = "benchmark_export";
+
+    private ExportBenchmark(){
+    }
+
+    @WorkerThread
+    public static String run(Context context, int rows){
+        context.deleteDatabase(DATABASE_NAME);
+        PetsDatabase database = PetsDatabase.create(context, DATABASE_NAME);
+        try {
+            new PetBulkWriter(database).insertPets(BulkWriteBenchmark.makePets(rows));
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "Export benchmark, %d rows%n", rows));
+            report.append(runExport(context, database, PetFileFormat.FORMAT_CSV, false, "pets.csv"));
+            report.append(runExport(context, database, PetFileFormat.FORMAT_CSV, true, "pets.csv.gz"));
+            report.append(runExport(context, database, PetFileFormat.FORMAT_JSON_LINES, false, "pets.jsonl"));
+            report.append(runExport(context, database, PetFileFormat.FORMAT_JSON_LINES, true, "pets.jsonl.gz"));
+            return report.toString();
+        } catch (IOException e){
+            return "Export failed: " + e;
+        } finally {
+            database.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    private static String runExport(Context context, PetsDatabase database, int format,
+                                    boolean gzip, String fileName) throws IOException {
+        File file = new File(context.getCacheDir(), fileName);
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long heapBefore = runtime.totalMemory() - runtime.freeMemory();
+        final long[] peakHeap = {heapBefore};
+
+        long start = System.nanoTime();
+        long rows = new PetExporter(database).export(file, format, gzip, new PetExporter.ProgressListener() {
+            @Override
+            public void onProgress(long exportedRows, long totalRows) {
+                Runtime runtime = Runtime.getRuntime();
+                peakHeap[0] = Math.max(peakHeap[0], runtime.totalMemory() - runtime.freeMemory());
+            }
+        });
+        long nanos = System.nanoTime() - start;
+        long size = file.length();
+        file.delete();
+
+        return String.format(Locale.US, "%-14s %8.0f rows/s  %7d KiB  heap growth %5d KiB%n",
+                fileName, rows * 1e9 / Math.max(nanos, 1), size / 1024,
+                (peakHeap[0] - heapBefore) / 1024);
+    }
+}
@@ -0,0 +1,67 @@
+package com.example.android.pets.benchmark;
+
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.pets.data.PetBulkWriter;
+import com.example.android.pets.data.PetExporter;
+import com.example.android.pets.data.PetFileFormat;
+import com.example.android.pets.data.PetImporter;
+import com.example.android.pets.data.PetsDatabase;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Exports a scratch table in each format, empties it and imports the file back, reporting the
+ * import rate in rows per second.
+ */
+public final class ImportBenchmark {
+
+    public static final int DEFAULT_ROWS = 100000;
+
+    private static final String DATABASE_NAME = "benchmark_import";
+
+    private ImportBenchmark(){
+    }
+
+    @WorkerThread
+    public static String run(Context context, int rows){
+        context.deleteDatabase(DATABASE_NAME);
+        PetsDatabase database = PetsDatabase.create(context, DATABASE_NAME);
+        try {
+            new PetBulkWriter(database).insertPets(BulkWriteBenchmark.makePets(rows));
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "Import benchmark, %d rows%n", rows));
+            report.append(runImport(context, database, PetFileFormat.FORMAT_CSV, "pets.csv"));
+            report.append(runImport(context, database, PetFileFormat.FORMAT_CSV, "pets.csv.gz"));
+            report.append(runImport(context, database, PetFileFormat.FORMAT_JSON_LINES, "pets.jsonl"));
+            report.append(runImport(context, database, PetFileFormat.FORMAT_JSON_LINES, "pets.jsonl.gz"));
+            return report.toString();
+        } catch (IOException e){
+            return "Import failed: " + e;
+        } finally {
+            database.close();
+            context.deleteDatabase(DATABASE_NAME);
+        }
+    }
+
+    //Leaves the table holding the imported pets, ready for the next format
+    private static String runImport(Context context, PetsDatabase database, int format,
+                                    String fileName) throws IOException {
+        File file = new File(context.getCacheDir(), fileName);
+        boolean gzip = fileName.endsWith(".gz");
+        new PetExporter(database).export(file, format, gzip, null);
+        database.petDao().deleteAllPets();
+
+        long start = System.nanoTime();
+        PetImporter.Result result = new PetImporter(database).importFile(file, format, 0, null);
+        long nanos = System.nanoTime() - start;
+        file.delete();
+
+        return String.format(Locale.US, "%-14s %8.0f rows/s  %d imported, %d failed%n",
+                fileName, result.getImportedRows() * 1e9 / Math.max(nanos, 1),
+                result.getImportedRows(), result.getFailedRows());
+    }
+}
@@ -0,0 +1,224 @@
+package com.example.android.pets.benchmark;
+
+import android.util.Log;
+
+import com.example.android.pets.data.PetSyncCodec;
+import com.example.android.pets.data.RemotePet;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.InetAddress;
+import java.net.ServerSocket;
+import java.net.Socket;
+import java.net.SocketException;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * An in-process stand-in for a sync backend, speaking the HTTP protocol of HttpPetSyncBackend on
+ * the loopback interface, so sync can be measured end to end without a network.
+ *
+ * It keeps every pet in memory with a version from one counter, tombstones included, and counts
+ * the bytes that cross the socket, HTTP headers included. One request per connection, served one
+ * at a time, which is all a sync needs.
+ */
+public class LocalSyncServer {
+
+    private static final String LOG_TAG = LocalSyncServer.class.getSimpleName();
+
+    private static final Charset ASCII = Charset.forName("US-ASCII");
+
+    private final ServerSocket mServerSocket;
+    private final Thread mThread;
+
+    //Guarded by this
+    private final Map<String, RemotePet> mPets = new HashMap<>();
+    private final TreeMap<Long, String> mKeysByVersion = new TreeMap<>();
+    private long mVersion = 0;
+    private long mWireBytesIn = 0;
+    private long mWireBytesOut = 0;
+
+    public LocalSyncServer() throws IOException {
+        mServerSocket = new ServerSocket(0, 50, InetAddress.getByName("127.0.0.1"));
+        mThread = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                serve();
+            }
+        }, "local-sync-server");
+        mThread.start();
+    }
+
+    public String getBaseUrl(){
+        return "http://127.0.0.1:" + mServerSocket.getLocalPort();
+    }
+
+    public synchronized long getWireBytesIn() {
+        return mWireBytesIn;
+    }
+
+    public synchronized long getWireBytesOut() {
+        return mWireBytesOut;
+    }
+
+    public synchronized int getPetCount(){
+        return mPets.size();
+    }
+
+    public void close(){
+        try {
+            mServerSocket.close();
+            mThread.join();
+        } catch (IOException e){
+            Log.w(LOG_TAG, "Closing the server failed", e);
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private void serve(){
+        while(true){
+            Socket socket;
+            try {
+                socket = mServerSocket.accept();
+            } catch (SocketException e){
+                //Closed
+                return;
+            } catch (IOException e){
+                Log.w(LOG_TAG, "Accept failed", e);
+                return;
+            }
+            try {
+                handle(socket);
+            } catch (IOException | RuntimeException e){
+                Log.w(LOG_TAG, "Request failed", e);
+            } finally {
+                try {
+                    socket.close();
+                } catch (IOException e){
+                    //Nothing left to do with it
+                }
+            }
+        }
+    }
+
+    private void handle(Socket socket) throws IOException {
+        InputStream in = new BufferedInputStream(socket.getInputStream());
+        String requestLine = readLine(in);
+        long bytesIn = requestLine.length() + 2;
+        int contentLength = 0;
+        String line;
+        while(!(line = readLine(in)).isEmpty()){
+            bytesIn += line.length() + 2;
+            int colon = line.indexOf(':');
+            if(colon > 0 && line.substring(0, colon).trim().equalsIgnoreCase("Content-Length")){
+                contentLength = Integer.parseInt(line.substring(colon + 1).trim());
+            }
+        }
+        bytesIn += 2;
+        byte[] body = new byte[contentLength];
+        int read = 0;
+        while(read < contentLength){
+            int count = in.read(body, read, contentLength - read);
+            if(count == -1){
+                throw new IOException("Request body cut short");
+            }
+            read += count;
+        }
+        bytesIn += contentLength;
+
+        String[] parts = requestLine.split(" ");
+        byte[] response;
+        int status = 200;
+        if(parts.length >= 2 && parts[0].equals("POST") && parts[1].equals("/pets/push")){
+            response = PetSyncCodec.encodePushResults(push(PetSyncCodec.decodePets(body)));
+        }else if(parts.length >= 2 && parts[0].equals("GET") && parts[1].startsWith("/pets/changes")){
+            Map<String, String> query = parseQuery(parts[1]);
+            response = PetSyncCodec.encodePets(changes(Long.parseLong(query.get("since")),
+                    Integer.parseInt(query.get("limit"))));
+        }else{
+            status = 404;
+            response = new byte[0];
+        }
+
+        String headers = String.format(Locale.US, "HTTP/1.1 %d %s\r\nContent-Type: %s\r\n"
+                        + "Content-Encoding: gzip\r\nContent-Length: %d\r\nConnection: close\r\n\r\n",
+                status, status == 200 ? "OK" : "Not Found", PetSyncCodec.CONTENT_TYPE, response.length);
+        OutputStream out = socket.getOutputStream();
+        byte[] headerBytes = headers.getBytes(ASCII);
+        out.write(headerBytes);
+        out.write(response);
+        out.flush();
+        synchronized (this){
+            mWireBytesIn += bytesIn;
+            mWireBytesOut += headerBytes.length + response.length;
+        }
+    }
+
+    //Accepts a pet only if it was based on the current version
+    private synchronized List<PetSyncCodec.PushResult> push(List<RemotePet> pets){
+        List<PetSyncCodec.PushResult> results = new ArrayList<>(pets.size());
+        for(RemotePet pet : pets){
+            RemotePet current = mPets.get(pet.getKey());
+            long currentVersion = current == null ? 0 : current.getVersion();
+            if(current != null && pet.getVersion() != currentVersion){
+                results.add(PetSyncCodec.PushResult.conflict(pet.getKey(), current));
+                continue;
+            }
+            long version = ++mVersion;
+            if(current != null){
+                mKeysByVersion.remove(currentVersion);
+            }
+            mPets.put(pet.getKey(), pet.withVersion(version));
+            mKeysByVersion.put(version, pet.getKey());
+            results.add(PetSyncCodec.PushResult.accepted(pet.getKey(), version));
+        }
+        return results;
+    }
+
+    private synchronized List<RemotePet> changes(long since, int limit){
+        List<RemotePet> changes = new ArrayList<>();
+        for(String key : mKeysByVersion.tailMap(since, false).values()){
+            if(changes.size() == limit){
+                break;
+            }
+            changes.add(mPets.get(key));
+        }
+        return changes;
+    }
+
+    private static Map<String, String> parseQuery(String path){
+        Map<String, String> query = new HashMap<>();
+        int start = path.indexOf('?');
+        if(start == -1){
+            return query;
+        }
+        for(String pair : path.substring(start + 1).split("&")){
+            int equals = pair.indexOf('=');
+            if(equals > 0){
+                query.put(pair.substring(0, equals), pair.substring(equals + 1));
+            }
+        }
+        return query;
+    }
+
+    //HTTP header lines are ASCII and end in CRLF
+    private static String readLine(InputStream in) throws IOException {
+        ByteArrayOutputStream line = new ByteArrayOutputStream();
+        int b;
+        while((b = in.read()) != -1 && b != '\n'){
+            if(b != '\r'){
+                line.write(b);
+            }
+        }
+        return new String(line.toByteArray(), ASCII);
+    }
+}
@@ -0,0 +1,80 @@
+package com.example.android.pets.benchmark;
+
+import android.content.Context;
+import android.database.Cursor;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.pets.data.PetBulkWriter;
+import com.example.android.pets.data.PetsDatabase;
+import com.example.android.pets.data.PetsDatabaseConfig;
+import com.example.android.pets.data.PetsDatabaseSeed;
+
+import java.util.Locale;
+
+/**
+ * Compares two ways of starting a new database with the same pets: inserting them through
+ * PetBulkWriter, and copying a seed database that already holds them (see PetsDatabaseSeed).
+ * Both are timed from building the database to the pets being readable, so the seed includes its
+ * copy, version check and Room's schema check.
+ */
+public final class SeedBenchmark {
+
+    public static final int DEFAULT_ROWS = 100000;
+
+    private static final String SOURCE_NAME = "benchmark_seed_source";
+    private static final String INSERTED_NAME = "benchmark_seed_inserted";
+    private static final String SEEDED_NAME = "benchmark_seed_copied";
+
+    private SeedBenchmark(){
+    }
+
+    @WorkerThread
+    public static String run(Context context, int rows){
+        deleteDatabases(context);
+        try {
+            long start = System.nanoTime();
+            PetsDatabase inserted = PetsDatabase.create(context, INSERTED_NAME);
+            new PetBulkWriter(inserted).insertPets(BulkWriteBenchmark.makePets(rows));
+            int insertedCount = countPets(inserted);
+            long insertNanos = System.nanoTime() - start;
+            //Closing the last connection checkpoints the WAL, so the file alone holds every pet
+            inserted.close();
+            context.getDatabasePath(INSERTED_NAME).renameTo(context.getDatabasePath(SOURCE_NAME));
+
+            start = System.nanoTime();
+            PetsDatabaseConfig config = new PetsDatabaseConfig.Builder()
+                    .setSeed(PetsDatabaseSeed.fromFile(context.getDatabasePath(SOURCE_NAME)))
+                    .build();
+            PetsDatabase seeded = PetsDatabase.create(context, SEEDED_NAME, config);
+            int seededCount = countPets(seeded);
+            long seedNanos = System.nanoTime() - start;
+            seeded.close();
+
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "Seed benchmark, %d rows, %d KiB%n",
+                    rows, context.getDatabasePath(SOURCE_NAME).length() / 1024));
+            report.append(String.format(Locale.US, "bulk insert  %8.1f ms  %d pets%n",
+                    insertNanos / 1e6, insertedCount));
+            report.append(String.format(Locale.US, "seed copy    %8.1f ms  %d pets%n",
+                    seedNanos / 1e6, seededCount));
+            return report.toString();
+        } finally {
+            deleteDatabases(context);
+        }
+    }
+
+    private static int countPets(PetsDatabase database){
+        Cursor cursor = database.query("SELECT COUNT(*) FROM pet", null);
+        try {
+            return cursor.moveToFirst() ? cursor.getInt(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void deleteDatabases(Context context){
+        context.deleteDatabase(SOURCE_NAME);
+        context.deleteDatabase(INSERTED_NAME);
+        context.deleteDatabase(SEEDED_NAME);
+    }
+}
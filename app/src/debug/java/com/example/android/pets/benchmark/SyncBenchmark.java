@@ -0,0 +1,97 @@
+package com.example.android.pets.benchmark;
+
+import android.content.Context;
+import android.support.annotation.WorkerThread;
+
+import com.example.android.pets.data.HttpPetSyncBackend;
+import com.example.android.pets.data.PetBulkWriter;
+import com.example.android.pets.data.PetSyncEngine;
+import com.example.android.pets.data.PetsDatabase;
+
+import java.io.IOException;
+import java.util.Locale;
+
+/**
+ * Syncs two scratch databases through a {@link LocalSyncServer}: a full push from one, a full
+ * pull into the other, then a small edit going across, then the same pets edited on both sides
+ * to force conflicts. Reports the rate and the bytes on the wire of every step.
+ */
+public final class SyncBenchmark {
+
+    public static final int DEFAULT_ROWS = 20000;
+
+    //Share of the pets edited between syncs
+    private static final int EDIT_EVERY = 10;
+
+    private static final String DATABASE_A = "benchmark_sync_a";
+    private static final String DATABASE_B = "benchmark_sync_b";
+    private static final String BACKEND = "local";
+
+    private SyncBenchmark(){
+    }
+
+    @WorkerThread
+    public static String run(Context context, int rows){
+        context.deleteDatabase(DATABASE_A);
+        context.deleteDatabase(DATABASE_B);
+        PetsDatabase first = PetsDatabase.create(context, DATABASE_A);
+        PetsDatabase second = PetsDatabase.create(context, DATABASE_B);
+        LocalSyncServer server = null;
+        try {
+            server = new LocalSyncServer();
+            HttpPetSyncBackend backend = new HttpPetSyncBackend(server.getBaseUrl());
+            new PetBulkWriter(first).insertPets(BulkWriteBenchmark.makePets(rows));
+
+            StringBuilder report = new StringBuilder();
+            report.append(String.format(Locale.US, "Sync benchmark, %d rows%n", rows));
+            report.append(runSync("full push", first, backend, server));
+            report.append(runSync("full pull", second, backend, server));
+
+            editEvery(first, EDIT_EVERY, rows, 1);
+            report.append(runSync("edit push", first, backend, server));
+            report.append(runSync("edit pull", second, backend, server));
+
+            //Both sides edit the same pets, the one that syncs last loses its edits
+            editEvery(first, EDIT_EVERY, rows, 2);
+            editEvery(second, EDIT_EVERY, rows, 3);
+            report.append(runSync("conflict A", first, backend, server));
+            report.append(runSync("conflict B", second, backend, server));
+
+            report.append(String.format(Locale.US, "Server holds %d pets%n", server.getPetCount()));
+            return report.toString();
+        } catch (IOException e){
+            return "Sync failed: " + e;
+        } finally {
+            if(server != null){
+                server.close();
+            }
+            first.close();
+            second.close();
+            context.deleteDatabase(DATABASE_A);
+            context.deleteDatabase(DATABASE_B);
+        }
+    }
+
+    private static String runSync(String name, PetsDatabase database, HttpPetSyncBackend backend,
+                                  LocalSyncServer server) throws IOException {
+        long wireIn = server.getWireBytesIn();
+        long wireOut = server.getWireBytesOut();
+        PetSyncEngine.Result result = new PetSyncEngine(database, backend, BACKEND).sync();
+        int pets = result.getPushed() + result.getPulled() + result.getConflicts();
+        return String.format(Locale.US, "%-10s %8.0f pets/s  %s, wire %d KiB up %d KiB down%n",
+                name, pets * 1000.0 / Math.max(result.getDurationMs(), 1), result,
+                (server.getWireBytesIn() - wireIn) / 1024, (server.getWireBytesOut() - wireOut) / 1024);
+    }
+
+    //The full pull inserts the pets in the order they were pushed, so both sides number them alike
+    private static void editEvery(final PetsDatabase database, final int every, final int rows, final int weight){
+        database.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for(int id = 1; id <= rows; id += every){
+                    database.petDao().updatePetWeight(id, weight);
+                }
+            }
+        });
+    }
+}
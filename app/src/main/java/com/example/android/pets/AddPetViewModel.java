@@ -19,7 +19,8 @@ public class AddPetViewModel extends ViewModel {
     private LiveData<PetEntry> pet;
 
     public AddPetViewModel(PetsDatabase database, int petId){
-        pet = database.petDao().loadPetById(petId);
+        //Pets the editor opened recently come straight from memory
+        pet = database.petCache().loadPetById(petId);
     }
 
     public LiveData<PetEntry> getPet(){
@@ -26,37 +26,44 @@ import android.content.Intent;
 import android.content.Loader;
 import android.database.Cursor;
 import android.net.Uri;
-import android.os.AsyncTask;
 import android.os.Bundle;
 import android.support.annotation.Nullable;
 import android.support.design.widget.FloatingActionButton;
 import android.support.v7.app.AppCompatActivity;
+import android.support.v7.widget.LinearLayoutManager;
+import android.support.v7.widget.RecyclerView;
+import android.support.v7.widget.SearchView;
 import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.View;
-import android.widget.AdapterView;
-import android.widget.ListView;
 
+import com.example.android.pets.data.PetCatalogQuery;
 import com.example.android.pets.data.PetEntry;
+import com.example.android.pets.data.PetListItem;
+import com.example.android.pets.data.PetWriteQueue;
 import com.example.android.pets.data.PetsDatabase;
 
-import java.lang.ref.WeakReference;
-import java.util.ArrayList;
 import java.util.List;
 
 /**
  * Displays list of pets that were entered and stored in the app.
  */
-public class CatalogActivity extends AppCompatActivity {
+public class CatalogActivity extends AppCompatActivity implements PetAdapter.ItemClickListener {
+
+    //How many rows from either edge of the loaded window we start fetching the next page
+    private static final int PREFETCH_DISTANCE = 10;
 
     PetAdapter mAdapter;
     PetsDatabase mDb;
-    ListView petListView;
+    RecyclerView petRecyclerView;
+    View mEmptyView;
+    PagedCatalogViewModel mViewModel;
 
     @Override
     protected void onCreate(Bundle savedInstanceState) {
         super.onCreate(savedInstanceState);
+        StartupTimer.mark(StartupTimer.CATALOG_CREATED);
         setContentView(R.layout.activity_catalog);
 
         // Setup FAB to open EditorActivity
@@ -69,29 +76,33 @@ public class CatalogActivity extends AppCompatActivity {
             }
         });
 
-        //Find the ListView which will be populated with the pet data
-        petListView = (ListView) findViewById(R.id.list);
+        //Find the RecyclerView which will be populated with the pet data
+        petRecyclerView = (RecyclerView) findViewById(R.id.list);
+        final LinearLayoutManager layoutManager = new LinearLayoutManager(this);
+        petRecyclerView.setLayoutManager(layoutManager);
 
-        //Find and set empty view on the ListView, so that it only shows when the list has 0 items
-        View emptyView = findViewById(R.id.empty_view);
-        petListView.setEmptyView(emptyView);
+        //The empty view is shown by hand, since RecyclerView has no setEmptyView
+        mEmptyView = findViewById(R.id.empty_view);
 
-        // Setup an Adapter to create a list item for each row of pet data.
-        // There is no pet data yet, so pass in a empty array list.
-        mAdapter = new PetAdapter(this, new ArrayList<com.example.android.pets.data.PetEntry>());
-        petListView.setAdapter(mAdapter);
+        // The adapter is created once and kept. Every new list of pets is diffed against the
+        // current one, so recycled views and the scroll position survive updates.
+        mAdapter = new PetAdapter(this, this);
+        petRecyclerView.setAdapter(mAdapter);
 
-        //Setup the item Click Listener
-        //Sending intent with the ID of the pet selected.
-        petListView.setOnItemClickListener(new AdapterView.OnItemClickListener() {
+        //Load the next or previous page once the user gets close to an edge of the window
+        petRecyclerView.addOnScrollListener(new RecyclerView.OnScrollListener() {
             @Override
-            public void onItemClick(AdapterView<?> adapterView, View view, int position, long id) {
-                Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
-
-                PetEntry petSelected = (PetEntry) adapterView.getItemAtPosition(position);
-                intent.putExtra(EditorActivity.EXTRA_PET_ID, petSelected.getId());
-
-                startActivity(intent);
+            public void onScrolled(RecyclerView recyclerView, int dx, int dy) {
+                int totalItemCount = mAdapter.getItemCount();
+                if(mViewModel == null || totalItemCount == 0){
+                    return;
+                }
+                if(layoutManager.findLastVisibleItemPosition() >= totalItemCount - 1 - PREFETCH_DISTANCE){
+                    mViewModel.loadMore();
+                }
+                if(layoutManager.findFirstVisibleItemPosition() <= PREFETCH_DISTANCE){
+                    mViewModel.loadPrevious();
+                }
             }
         });
 
@@ -100,21 +111,87 @@ public class CatalogActivity extends AppCompatActivity {
     }
 
     private void setUpViewModel(){
-        CatalogViewModel viewModel = ViewModelProviders.of(this).get(CatalogViewModel.class);
-        viewModel.getPets().observe((LifecycleOwner) this, new Observer<List<com.example.android.pets.data.PetEntry>>() {
+        mViewModel = ViewModelProviders.of(this).get(PagedCatalogViewModel.class);
+        mViewModel.getPets().observe((LifecycleOwner) this, new Observer<List<PetListItem>>() {
+            @Override
+            public void onChanged(@Nullable List<PetListItem> petListItems) {
+                StartupTimer.mark(StartupTimer.CATALOG_FIRST_DATA);
+                mAdapter.submitPets(petListItems);
+                boolean empty = petListItems == null || petListItems.isEmpty();
+                mEmptyView.setVisibility(empty ? View.VISIBLE : View.GONE);
+            }
+        });
+        //A new sort order or filter starts the list over from its first page
+        mViewModel.getCatalogQuery().observe((LifecycleOwner) this, new Observer<PetCatalogQuery>() {
             @Override
-            public void onChanged(@Nullable List<com.example.android.pets.data.PetEntry> petEntries) {
-                mAdapter = new PetAdapter(getApplicationContext(), petEntries);
-                petListView.setAdapter(mAdapter);
+            public void onChanged(@Nullable PetCatalogQuery query) {
+                petRecyclerView.scrollToPosition(0);
             }
         });
     }
 
+    //Sending intent with the ID of the pet selected.
+    @Override
+    public void onItemClickListener(int petId) {
+        Intent intent = new Intent(CatalogActivity.this, EditorActivity.class);
+        intent.putExtra(EditorActivity.EXTRA_PET_ID, petId);
+        startActivity(intent);
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_catalog.xml file.
         // This adds menu items to the app bar.
         getMenuInflater().inflate(R.menu.menu_catalog, menu);
+
+        //Search as you type, the view model debounces the keystrokes
+        SearchView searchView = (SearchView) menu.findItem(R.id.action_search).getActionView();
+        searchView.setOnQueryTextListener(new SearchView.OnQueryTextListener() {
+            @Override
+            public boolean onQueryTextSubmit(String query) {
+                mViewModel.setSearchQuery(query);
+                return true;
+            }
+
+            @Override
+            public boolean onQueryTextChange(String newText) {
+                mViewModel.setSearchQuery(newText);
+                return true;
+            }
+        });
+        return true;
+    }
+
+    //Checks the sort order and gender filter the catalog is currently using
+    @Override
+    public boolean onPrepareOptionsMenu(Menu menu) {
+        super.onPrepareOptionsMenu(menu);
+        PetCatalogQuery query = mViewModel.getCatalogQuery().getValue();
+        if(query == null){
+            return true;
+        }
+        switch (query.getSortBy()){
+            case PetCatalogQuery.SORT_BY_NAME:
+                menu.findItem(R.id.action_sort_by_name).setChecked(true);
+                break;
+            case PetCatalogQuery.SORT_BY_BREED:
+                menu.findItem(R.id.action_sort_by_breed).setChecked(true);
+                break;
+            case PetCatalogQuery.SORT_BY_WEIGHT:
+                menu.findItem(R.id.action_sort_by_weight).setChecked(true);
+                break;
+            default:
+                menu.findItem(R.id.action_sort_by_date_added).setChecked(true);
+                break;
+        }
+        Integer gender = query.getGender();
+        if(gender == null){
+            menu.findItem(R.id.action_filter_gender_all).setChecked(true);
+        }else if(gender == PetEntry.GENDER_MALE){
+            menu.findItem(R.id.action_filter_gender_male).setChecked(true);
+        }else if(gender == PetEntry.GENDER_FEMALE){
+            menu.findItem(R.id.action_filter_gender_female).setChecked(true);
+        }
         return true;
     }
 
@@ -122,6 +199,28 @@ public class CatalogActivity extends AppCompatActivity {
     public boolean onOptionsItemSelected(MenuItem item) {
         // User clicked on a menu option in the app bar overflow menu
         switch (item.getItemId()) {
+            // Sorting and filtering run in SQLite, the view model just swaps the query
+            case R.id.action_sort_by_date_added:
+                mViewModel.setSortBy(PetCatalogQuery.SORT_BY_ID);
+                return true;
+            case R.id.action_sort_by_name:
+                mViewModel.setSortBy(PetCatalogQuery.SORT_BY_NAME);
+                return true;
+            case R.id.action_sort_by_breed:
+                mViewModel.setSortBy(PetCatalogQuery.SORT_BY_BREED);
+                return true;
+            case R.id.action_sort_by_weight:
+                mViewModel.setSortBy(PetCatalogQuery.SORT_BY_WEIGHT);
+                return true;
+            case R.id.action_filter_gender_all:
+                mViewModel.setGenderFilter(null);
+                return true;
+            case R.id.action_filter_gender_male:
+                mViewModel.setGenderFilter(PetEntry.GENDER_MALE);
+                return true;
+            case R.id.action_filter_gender_female:
+                mViewModel.setGenderFilter(PetEntry.GENDER_FEMALE);
+                return true;
             // Respond to a click on the "Insert dummy data" menu option
             case R.id.action_insert_dummy_data:
                 insertPet();
@@ -137,44 +236,12 @@ public class CatalogActivity extends AppCompatActivity {
     }
 
     private void insertPet(){
-        new InsertPetTask(getApplicationContext()).execute();
+        PetEntry dummyEntry = new PetEntry("Toto", "Terrior", 1, 7);
+        PetWriteQueue.getInstance(getApplicationContext()).insertPet(dummyEntry, null);
     }
 
     private void deleteAllPets(){
-        new DeleteAllTask(getApplicationContext()).execute();
-    }
-
-    private static class InsertPetTask extends AsyncTask<Void, Void, Void>{
-        final PetEntry dummyEntry = new PetEntry("Toto", "Terrior", 1, 7);
-
-        private final WeakReference<Context> weakAppContext;
-
-        InsertPetTask(Context appContext){
-            this.weakAppContext = new WeakReference<>(appContext);
-        }
-
-        @Override
-        protected Void doInBackground(Void... voids){
-            PetsDatabase database = PetsDatabase.getInstance(weakAppContext.get());
-            database.petDao().insertPet(dummyEntry);
-            return null;
-        }
-    }
-
-    private static class DeleteAllTask extends AsyncTask<Void, Void, Void>{
-
-        private final WeakReference<Context> weakAppContext;
-
-        DeleteAllTask(Context appContext){
-            this.weakAppContext = new WeakReference<>(appContext);
-        }
-
-        @Override
-        protected Void doInBackground(Void... voids){
-            PetsDatabase database = PetsDatabase.getInstance(weakAppContext.get());
-            database.petDao().deleteAllPets();
-            return null;
-        }
+        PetWriteQueue.getInstance(getApplicationContext()).deleteAllPets(null);
     }
 
 }
\ No newline at end of file
@@ -35,6 +35,7 @@ import android.support.annotation.Nullable;
 import android.support.v4.app.NavUtils;
 import android.support.v7.app.AppCompatActivity;
 import android.text.TextUtils;
+import android.util.Log;
 import android.view.Menu;
 import android.view.MenuItem;
 import android.view.MotionEvent;
@@ -42,23 +43,35 @@ import android.view.View;
 import android.widget.AdapterView;
 import android.widget.ArrayAdapter;
 import android.widget.EditText;
+import android.widget.ImageView;
 import android.widget.Spinner;
 import android.widget.Toast;
 
+import com.example.android.pets.data.PetChanges;
 import com.example.android.pets.data.PetEntry;
+import com.example.android.pets.data.PetPhotos;
+import com.example.android.pets.data.PetWriteQueue;
 import com.example.android.pets.data.PetsDatabase;
 
-import java.lang.ref.WeakReference;
+import java.io.IOException;
 
 /**
  * Allows user to create a new pet or edit an existing one.
  */
 public class EditorActivity extends AppCompatActivity {
 
+    private static final String LOG_TAG = EditorActivity.class.getSimpleName();
+
     public static final String EXTRA_PET_ID = "extraPetId";
 
     public static final String INSTANCE_PET_ID = "instancePetid";
 
+    public static final String INSTANCE_PHOTO_PATH = "instancePhotoPath";
+
+    public static final String INSTANCE_PHOTO_CHANGED = "instancePhotoChanged";
+
+    private static final int REQUEST_PICK_PHOTO = 1;
+
     private static final int DEFAULT_PET_ID = -1;
 
     private int mPetId = DEFAULT_PET_ID;
@@ -68,6 +81,10 @@ public class EditorActivity extends AppCompatActivity {
     //CHecking if the user has saved after changing or not
     private boolean mPetHasChanged = false;
 
+    //The pet as it was loaded, compared field by field with the inputs on save so only what
+    //changed is written. Null for a new pet, or until the pet has loaded.
+    private PetEntry mOriginalPet;
+
     //Setting an onTouchListener to check if changes have been made
     private View.OnTouchListener mTouchListener = new View.OnTouchListener(){
         @Override
@@ -90,6 +107,15 @@ public class EditorActivity extends AppCompatActivity {
     /** EditText field to enter the pet's gender */
     private Spinner mGenderSpinner;
 
+    /** ImageView showing the pet's photo, tapped to pick another one */
+    private ImageView mPhotoImageView;
+
+    //Path of the photo shown, see PetPhotos. Null while the pet has none.
+    private String mPhotoPath;
+
+    //Whether the user picked a photo, which a pet still loading must not replace
+    private boolean mPhotoChanged = false;
+
     /**
      * Gender of the pet. The possible valid values are in the PetEntry.java file:
      * {@link PetEntry#GENDER_UNKNOWN}, {@link PetEntry#GENDER_MALE}, or
@@ -113,6 +139,11 @@ public class EditorActivity extends AppCompatActivity {
         if(savedInstanceState != null && savedInstanceState.containsKey(INSTANCE_PET_ID)){
             mPetId = savedInstanceState.getInt(INSTANCE_PET_ID, DEFAULT_PET_ID);
         }
+        if(savedInstanceState != null){
+            mPhotoPath = savedInstanceState.getString(INSTANCE_PHOTO_PATH);
+            mPhotoChanged = savedInstanceState.getBoolean(INSTANCE_PHOTO_CHANGED, false);
+            showPhoto();
+        }
 
         //Examine the intent that used to launch this activity
         Intent intent = getIntent();
@@ -122,23 +153,29 @@ public class EditorActivity extends AppCompatActivity {
 
             setTitle(getString(R.string.editor_activity_title_edit_pet));
 
-            //mPedId is initiated to DEFAULT_PET_ID at onCreate().
-            if(mPetId == DEFAULT_PET_ID){
-                //Populate the UI
+            //mPedId is initiated to DEFAULT_PET_ID at onCreate(), it is only set here if the
+            //activity was recreated, and then the views already hold what the user typed.
+            final boolean populate = mPetId == DEFAULT_PET_ID;
+            if(populate){
                 mPetId = intent.getIntExtra(EXTRA_PET_ID, DEFAULT_PET_ID);
-                //Sent argument in factory here
-                AddPetViewModelFactory factory = new AddPetViewModelFactory(mDb, mPetId);
-                final AddPetViewModel viewModel =
-                        ViewModelProviders.of(EditorActivity.this,
-                                factory).get(AddPetViewModel.class);
-                viewModel.getPet().observe((LifecycleOwner) EditorActivity.this, new Observer<PetEntry>() {
-                    @Override
-                    public void onChanged(@Nullable PetEntry petEntry) {
-                        viewModel.getPet().removeObserver(this);
+            }
+            //Sent argument in factory here. The ViewModel outlives a recreation, so the original
+            //pet is still known afterwards.
+            AddPetViewModelFactory factory = new AddPetViewModelFactory(mDb, mPetId);
+            final AddPetViewModel viewModel =
+                    ViewModelProviders.of(EditorActivity.this,
+                            factory).get(AddPetViewModel.class);
+            viewModel.getPet().observe((LifecycleOwner) EditorActivity.this, new Observer<PetEntry>() {
+                @Override
+                public void onChanged(@Nullable PetEntry petEntry) {
+                    viewModel.getPet().removeObserver(this);
+                    mOriginalPet = petEntry;
+                    if(populate){
+                        //Populate the UI
                         populateUI(petEntry);
                     }
-                });
-            }
+                }
+            });
         }else{
             //This is a new pet, so change the app bar to say "Add a Pet"
             setTitle(getString(R.string.editor_activity_title_new_pet));
@@ -153,6 +190,8 @@ public class EditorActivity extends AppCompatActivity {
     @Override
     protected void onSaveInstanceState(Bundle outState){
         outState.putInt(INSTANCE_PET_ID, mPetId);
+        outState.putString(INSTANCE_PHOTO_PATH, mPhotoPath);
+        outState.putBoolean(INSTANCE_PHOTO_CHANGED, mPhotoChanged);
         super.onSaveInstanceState(outState);
     }
 
@@ -163,6 +202,7 @@ public class EditorActivity extends AppCompatActivity {
         mBreedEditText = (EditText) findViewById(R.id.edit_pet_breed);
         mWeightEditText = (EditText) findViewById(R.id.edit_pet_weight);
         mGenderSpinner = (Spinner) findViewById(R.id.spinner_gender);
+        mPhotoImageView = (ImageView) findViewById(R.id.edit_pet_photo);
 
         //Setting onTouchListener on editTexts
         mNameEditText.setOnTouchListener(mTouchListener);
@@ -170,6 +210,72 @@ public class EditorActivity extends AppCompatActivity {
         mWeightEditText.setOnTouchListener(mTouchListener);
         mGenderSpinner.setOnTouchListener(mTouchListener);
 
+        mPhotoImageView.setOnClickListener(new View.OnClickListener() {
+            @Override
+            public void onClick(View view) {
+                pickPhoto();
+            }
+        });
+
+    }
+
+    private void pickPhoto(){
+        Intent intent = new Intent(Intent.ACTION_GET_CONTENT);
+        intent.setType("image/*");
+        intent.addCategory(Intent.CATEGORY_OPENABLE);
+        if(intent.resolveActivity(getPackageManager()) != null){
+            startActivityForResult(intent, REQUEST_PICK_PHOTO);
+        }
+    }
+
+    @Override
+    protected void onActivityResult(int requestCode, int resultCode, Intent data){
+        super.onActivityResult(requestCode, resultCode, data);
+        if(requestCode != REQUEST_PICK_PHOTO || resultCode != RESULT_OK
+                || data == null || data.getData() == null){
+            return;
+        }
+        //The picked photo may be large or remote, so it is copied in the background
+        final Uri uri = data.getData();
+        final Context appContext = getApplicationContext();
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                String photoPath = null;
+                try {
+                    photoPath = PetPhotos.save(appContext, uri);
+                } catch (IOException | SecurityException e){
+                    Log.e(LOG_TAG, "Could not save photo " + uri, e);
+                }
+                final String savedPath = photoPath;
+                runOnUiThread(new Runnable() {
+                    @Override
+                    public void run() {
+                        onPhotoSaved(savedPath);
+                    }
+                });
+            }
+        });
+    }
+
+    private void onPhotoSaved(@Nullable String photoPath){
+        if(isFinishing()){
+            return;
+        }
+        if(photoPath == null){
+            Toast.makeText(this, R.string.editor_photo_failed, Toast.LENGTH_SHORT).show();
+            return;
+        }
+        mPhotoPath = photoPath;
+        mPhotoChanged = true;
+        mPetHasChanged = true;
+        showPhoto();
+    }
+
+    //The editor's photo goes through the same thumbnail caches as the catalog
+    private void showPhoto(){
+        PetThumbnailLoader.getInstance(this).load(mPhotoPath, mPhotoImageView,
+                getResources().getDimensionPixelSize(R.dimen.editor_photo_size));
     }
 
 
@@ -187,6 +293,11 @@ public class EditorActivity extends AppCompatActivity {
         mBreedEditText.setText(breed);
         mWeightEditText.setText(Integer.toString(weight));
 
+        if(!mPhotoChanged){
+            mPhotoPath = pet.getPhotoPath();
+            showPhoto();
+        }
+
         switch (gender){
             case PetEntry.GENDER_MALE:
                 mGenderSpinner.setSelection(1);
@@ -305,7 +416,7 @@ public class EditorActivity extends AppCompatActivity {
         String weightString = mWeightEditText.getText().toString().trim();
 
         //Checking if null values are inserted
-        if(mPetId == DEFAULT_PET_ID && TextUtils.isEmpty(nameString)&&TextUtils.isEmpty(breedString)&&TextUtils.isEmpty(weightString)&&mGender==PetEntry.GENDER_UNKNOWN){
+        if(mPetId == DEFAULT_PET_ID && TextUtils.isEmpty(nameString)&&TextUtils.isEmpty(breedString)&&TextUtils.isEmpty(weightString)&&mGender==PetEntry.GENDER_UNKNOWN&&mPhotoPath==null){
             return;
         }
 
@@ -314,20 +425,69 @@ public class EditorActivity extends AppCompatActivity {
         }
 
         PetEntry petEntry = new PetEntry(nameString, breedString, mGender, weight);
+        petEntry.setPhotoPath(mPhotoPath);
 
+        PetWriteQueue writeQueue = PetWriteQueue.getInstance(getApplicationContext());
         if(mPetId == DEFAULT_PET_ID){
             //This is a NEW PET
-            new InsertPetTask(getApplicationContext()).execute(petEntry);
-              // Show a toast message depending on whether or not the insertion was successful
+            // Show a toast message depending on whether or not the insertion was successful
+            writeQueue.insertPet(petEntry, new ResultToast(getApplicationContext(),
+                    R.string.editor_insert_pet_successful, R.string.editor_insert_pet_failed,
+                    Toast.LENGTH_LONG));
+        }else if(mOriginalPet == null){
+            //Saved before the pet loaded, so there is nothing to compare with. Every field the
+            //editor shows is written, and the rest of the row, like its external key, is kept.
+            PetChanges changes = new PetChanges(mPetId)
+                    .setName(nameString)
+                    .setBreed(breedString)
+                    .setGender(mGender)
+                    .setWeight(weight);
+            if(mPhotoChanged){
+                changes.setPhotoPath(mPhotoPath);
+            }
+            writeQueue.updatePetFields(changes, new ResultToast(getApplicationContext(),
+                    R.string.editor_update_pet_successful, R.string.editor_update_pet_failed,
+                    Toast.LENGTH_SHORT));
         }else {
-            //Otherwise this is an Existing pet
-            petEntry.setId(mPetId);
-            new UpdatePetTask(getApplicationContext()).execute(petEntry);
+            //Otherwise this is an Existing pet, only the fields that changed are written and an
+            //unchanged pet isn't written at all
+            PetChanges changes = findChanges(mOriginalPet, petEntry);
+            if(!changes.isEmpty()){
+                writeQueue.updatePetFields(changes, new ResultToast(getApplicationContext(),
+                        R.string.editor_update_pet_successful, R.string.editor_update_pet_failed,
+                        Toast.LENGTH_SHORT));
+            }
         }
 
         finish();
     }
 
+    //A missing name or breed reads back as an empty input, so the two count as the same
+    private PetChanges findChanges(PetEntry original, PetEntry edited){
+        PetChanges changes = new PetChanges(mPetId);
+        if(!TextUtils.equals(emptyIfNull(original.getName()), edited.getName())){
+            changes.setName(edited.getName());
+        }
+        if(!TextUtils.equals(emptyIfNull(original.getBreed()), edited.getBreed())){
+            changes.setBreed(edited.getBreed());
+        }
+        if(original.getGender() != edited.getGender()){
+            changes.setGender(edited.getGender());
+        }
+        if(original.getWeight() != edited.getWeight()){
+            changes.setWeight(edited.getWeight());
+        }
+        //Only a picked photo is written, the path restored after a recreation may predate the load
+        if(mPhotoChanged && !TextUtils.equals(original.getPhotoPath(), edited.getPhotoPath())){
+            changes.setPhotoPath(edited.getPhotoPath());
+        }
+        return changes;
+    }
+
+    private static String emptyIfNull(@Nullable String value){
+        return value == null ? "" : value;
+    }
+
     @Override
     public boolean onCreateOptionsMenu(Menu menu) {
         // Inflate the menu options from the res/menu/menu_editor.xml file.
@@ -426,91 +586,35 @@ public class EditorActivity extends AppCompatActivity {
     private void deletePet(){
 // Only perform the delete if this is an existing pet.
         if (mPetId != DEFAULT_PET_ID) {
-            new DeletePetTask(getApplicationContext()).execute(mPetId);
+            PetWriteQueue.getInstance(getApplicationContext()).deletePet(mPetId,
+                    new ResultToast(getApplicationContext(), R.string.editor_delete_pet_successful,
+                            R.string.editor_delete_pet_failed, Toast.LENGTH_SHORT));
         }
         finish();
     }
 
-    private static class InsertPetTask extends AsyncTask<PetEntry, Void, Long>{
-        private final WeakReference<Context> weakAppContext;
-
-        InsertPetTask(Context appContext){
-            this.weakAppContext = new WeakReference<>(appContext);
-        }
-
-        @Override
-        protected Long doInBackground(PetEntry... petEntries){
-            PetsDatabase database = PetsDatabase.getInstance(weakAppContext.get());
-            return database.petDao().insertPet(petEntries[0]);
-        }
-
-        @Override
-        protected void onPostExecute(Long result){
-            if(result != (long) -1){
-                Toast.makeText(weakAppContext.get(), weakAppContext.get().getString(R.string.editor_insert_pet_successful), Toast.LENGTH_LONG).show();
-            }else{
-                Toast.makeText(weakAppContext.get(), weakAppContext.get().getString(R.string.editor_insert_pet_failed), Toast.LENGTH_LONG).show();
-            }
-        }
-    }
-
-    private static class UpdatePetTask extends AsyncTask<PetEntry, Void, Integer> {
-
-        private final WeakReference<Context> weakAppContext;
-
-        UpdatePetTask(Context AppContext) {
-            this.weakAppContext = new WeakReference<>(AppContext);
-        }
-
-        @Override
-        protected Integer doInBackground(PetEntry... petEntries) {
-            PetsDatabase database = PetsDatabase.getInstance(weakAppContext.get());
-            return database.petDao().updatePet(petEntries[0]);
-        }
-
-        @Override
-        protected void onPostExecute(Integer result) {
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (result == 0) {
-                // If no rows were affected, then there was an error with the update.
-                Toast.makeText(weakAppContext.get(), weakAppContext.get().getString(R.string.editor_update_pet_failed),
-                        Toast.LENGTH_SHORT).show();
-
-            } else {
-                // Otherwise, the update was successful and we can display a toast.
-                Toast.makeText(weakAppContext.get(), weakAppContext.get().getString(R.string.editor_update_pet_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
-        }
-    }
-
-    private static class DeletePetTask extends AsyncTask<Integer, Void, Integer> {
-
-        private final WeakReference<Context> weakAppContext;
-
-        DeletePetTask(Context AppContext) {
-            this.weakAppContext = new WeakReference<>(AppContext);
-        }
-
-        @Override
-        protected Integer doInBackground(Integer... ids) {
-            PetsDatabase database = PetsDatabase.getInstance(weakAppContext.get());
-            return database.petDao().deletePet(ids[0]);
+    /**
+     * Shows a toast once the write queue reports the result of a write. Results above zero are
+     * a new id or a count of affected rows, anything else means nothing was written.
+     */
+    private static class ResultToast implements PetWriteQueue.WriteCallback {
+
+        private final Context appContext;
+        private final int successMessage;
+        private final int failedMessage;
+        private final int duration;
+
+        ResultToast(Context appContext, int successMessage, int failedMessage, int duration){
+            this.appContext = appContext;
+            this.successMessage = successMessage;
+            this.failedMessage = failedMessage;
+            this.duration = duration;
         }
 
         @Override
-        protected void onPostExecute(Integer result) {
-            // Show a toast message depending on whether or not the insertion was successful.
-            if (result == 0) {
-                // If no rows were affected, then there was an error with the delete.
-                Toast.makeText(weakAppContext.get(), weakAppContext.get().getString(R.string.editor_delete_pet_failed),
-                        Toast.LENGTH_SHORT).show();
-
-            } else {
-                // Otherwise, the delete was successful and we can display a toast.
-                Toast.makeText(weakAppContext.get(), weakAppContext.get().getString(R.string.editor_delete_pet_successful),
-                        Toast.LENGTH_SHORT).show();
-            }
+        public void onWriteComplete(long result){
+            int message = result > 0 ? successMessage : failedMessage;
+            Toast.makeText(appContext, appContext.getString(message), duration).show();
         }
     }
 
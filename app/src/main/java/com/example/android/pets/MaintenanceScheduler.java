@@ -0,0 +1,136 @@
+package com.example.android.pets;
+
+import android.app.Activity;
+import android.app.Application;
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Bundle;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import com.example.android.pets.data.PetPhotos;
+import com.example.android.pets.data.PetsDatabase;
+import com.example.android.pets.data.PetsMaintenance;
+
+/**
+ * Runs {@link PetsMaintenance} when the app goes idle: once no activity has been started for
+ * IDLE_DELAY_MS, and at most once every MIN_INTERVAL_MS. Coming back to the app before the
+ * delay is up postpones it to the next idle period. Photo files no pet refers to any more are
+ * deleted in the same run, see {@link PetPhotos#deleteUnreferenced}.
+ *
+ * The time of the last run and its report are kept in shared preferences.
+ */
+public class MaintenanceScheduler implements Application.ActivityLifecycleCallbacks {
+
+    private static final String LOG_TAG = MaintenanceScheduler.class.getSimpleName();
+
+    private static final long IDLE_DELAY_MS = 10 * 1000;
+    private static final long MIN_INTERVAL_MS = 24 * 60 * 60 * 1000;
+
+    private static final String PREFERENCES_NAME = "maintenance";
+    private static final String KEY_LAST_RUN = "last_run";
+    private static final String KEY_LAST_REPORT = "last_report";
+
+    private final Context mAppContext;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+    private int mStartedActivities = 0;
+    private boolean mRunning = false;
+
+    private final Runnable mRunMaintenance = new Runnable() {
+        @Override
+        public void run() {
+            runIfDue();
+        }
+    };
+
+    public MaintenanceScheduler(Context context){
+        mAppContext = context.getApplicationContext();
+    }
+
+    public void register(Application application){
+        application.registerActivityLifecycleCallbacks(this);
+    }
+
+    /**
+     * @return the report of the last run, or null if maintenance never ran.
+     */
+    public String getLastReport(){
+        return preferences().getString(KEY_LAST_REPORT, null);
+    }
+
+    private void runIfDue(){
+        final SharedPreferences preferences = preferences();
+        if(mRunning || System.currentTimeMillis() - preferences.getLong(KEY_LAST_RUN, 0) < MIN_INTERVAL_MS){
+            return;
+        }
+        mRunning = true;
+        Thread maintenance = new Thread(new Runnable() {
+            @Override
+            public void run() {
+                Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                try {
+                    PetsDatabase database = PetsDatabase.getInstance(mAppContext);
+                    PetsMaintenance.Report report = new PetsMaintenance(database).run();
+                    Log.i(LOG_TAG, report.toString());
+                    int photosDeleted = PetPhotos.deleteUnreferenced(mAppContext, database);
+                    Log.i(LOG_TAG, "Deleted " + photosDeleted + " unreferenced photos");
+                    preferences.edit()
+                            .putLong(KEY_LAST_RUN, System.currentTimeMillis())
+                            .putString(KEY_LAST_REPORT, report.toString())
+                            .apply();
+                } catch (RuntimeException e){
+                    //Nothing depends on maintenance, try again next time the app is idle
+                    Log.e(LOG_TAG, "Maintenance failed", e);
+                } finally {
+                    mMainHandler.post(new Runnable() {
+                        @Override
+                        public void run() {
+                            mRunning = false;
+                        }
+                    });
+                }
+            }
+        }, "pets-database-maintenance");
+        maintenance.start();
+    }
+
+    private SharedPreferences preferences(){
+        return mAppContext.getSharedPreferences(PREFERENCES_NAME, Context.MODE_PRIVATE);
+    }
+
+    @Override
+    public void onActivityStarted(Activity activity) {
+        mStartedActivities++;
+        mMainHandler.removeCallbacks(mRunMaintenance);
+    }
+
+    @Override
+    public void onActivityStopped(Activity activity) {
+        mStartedActivities--;
+        if(mStartedActivities == 0){
+            mMainHandler.postDelayed(mRunMaintenance, IDLE_DELAY_MS);
+        }
+    }
+
+    @Override
+    public void onActivityCreated(Activity activity, Bundle savedInstanceState) {
+    }
+
+    @Override
+    public void onActivityResumed(Activity activity) {
+    }
+
+    @Override
+    public void onActivityPaused(Activity activity) {
+    }
+
+    @Override
+    public void onActivitySaveInstanceState(Activity activity, Bundle outState) {
+    }
+
+    @Override
+    public void onActivityDestroyed(Activity activity) {
+    }
+}
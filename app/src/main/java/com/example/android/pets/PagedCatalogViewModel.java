@@ -0,0 +1,194 @@
+package com.example.android.pets;
+
+import android.app.Application;
+import android.arch.core.util.Function;
+import android.arch.lifecycle.AndroidViewModel;
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.lifecycle.Observer;
+import android.arch.lifecycle.Transformations;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.text.TextUtils;
+
+import com.example.android.pets.data.PetCatalogQuery;
+import com.example.android.pets.data.PetListItem;
+import com.example.android.pets.data.PetPager;
+import com.example.android.pets.data.PetSearchIndex;
+import com.example.android.pets.data.PetsDatabase;
+
+import java.util.List;
+
+/**
+ * Holds the catalog's pets for {@link CatalogActivity}. Instead of the whole pet table it holds
+ * a bounded window of pages that the catalog grows in either direction as the user scrolls.
+ *
+ * The sort order and filters live in a {@link PetCatalogQuery} that the pager runs in SQLite, so
+ * the catalog never sorts or filters in memory.
+ *
+ * It also has a search mode. While there is a search query the catalog shows the full-text
+ * search results instead of the paged window.
+ */
+public class PagedCatalogViewModel extends AndroidViewModel {
+
+    //How long the user has to stop typing before we run the search
+    private static final long SEARCH_DEBOUNCE_MILLIS = 300;
+
+    //Search results are not paged, so cap them
+    private static final int SEARCH_RESULT_LIMIT = 200;
+
+    private final PetsDatabase database;
+    private final PetPager pager;
+
+    private final Handler handler = new Handler(Looper.getMainLooper());
+    private final MutableLiveData<PetCatalogQuery> catalogQuery = new MutableLiveData<>();
+    private final MutableLiveData<String> searchQuery = new MutableLiveData<>();
+    private final MediatorLiveData<List<PetListItem>> pets = new MediatorLiveData<>();
+    private final LiveData<List<PetListItem>> searchResults;
+    private Runnable pendingSearch;
+
+    public PagedCatalogViewModel(@NonNull Application application) {
+        super(application);
+        database = PetsDatabase.getInstance(this.getApplication());
+        pager = new PetPager(database);
+        catalogQuery.setValue(PetCatalogQuery.DEFAULT);
+        pager.loadAfter();
+
+        //switchMap drops the previous query's LiveData as soon as a new query comes in, so a
+        //slow search that finishes after a newer one can never overwrite its results.
+        searchResults = Transformations.switchMap(searchQuery, new Function<String, LiveData<List<PetListItem>>>() {
+            @Override
+            public LiveData<List<PetListItem>> apply(String query) {
+                SupportSQLiteQuery search = PetSearchIndex.buildSearchQuery(query, SEARCH_RESULT_LIMIT);
+                if(search == null){
+                    return new MutableLiveData<>();
+                }
+                return database.breeds().withItemNames(database.petDao().searchPets(search));
+            }
+        });
+
+        pets.addSource(pager.getPets(), new Observer<List<PetListItem>>() {
+            @Override
+            public void onChanged(@Nullable List<PetListItem> window) {
+                if(!isSearching()){
+                    pets.setValue(window);
+                }
+            }
+        });
+        pets.addSource(searchResults, new Observer<List<PetListItem>>() {
+            @Override
+            public void onChanged(@Nullable List<PetListItem> results) {
+                if(isSearching()){
+                    pets.setValue(results);
+                }
+            }
+        });
+    }
+
+    /**
+     * @return the pets to show: the paged window, or the search results while searching.
+     */
+    public LiveData<List<PetListItem>> getPets(){
+        return pets;
+    }
+
+    /**
+     * @return the current sort order and filters of the catalog.
+     */
+    public LiveData<PetCatalogQuery> getCatalogQuery(){
+        return catalogQuery;
+    }
+
+    /**
+     * @param sortBy one of the PetCatalogQuery.SORT_BY_* constants
+     */
+    public void setSortBy(int sortBy){
+        setCatalogQuery(catalogQuery.getValue().withSortBy(sortBy));
+    }
+
+    /**
+     * @param gender one of the PetEntry.GENDER_* constants, or null to show every gender
+     */
+    public void setGenderFilter(@Nullable Integer gender){
+        setCatalogQuery(catalogQuery.getValue().withGender(gender));
+    }
+
+    /**
+     * Only shows pets within the weight range, null bounds are open.
+     */
+    public void setWeightRange(@Nullable Integer minWeight, @Nullable Integer maxWeight){
+        setCatalogQuery(catalogQuery.getValue().withWeightRange(minWeight, maxWeight));
+    }
+
+    private void setCatalogQuery(PetCatalogQuery query){
+        if(query.equals(catalogQuery.getValue())){
+            return;
+        }
+        catalogQuery.setValue(query);
+        pager.setQuery(query);
+    }
+
+    //Called when the user scrolls close to the bottom of the loaded pets
+    public void loadMore(){
+        if(!isSearching()){
+            pager.loadAfter();
+        }
+    }
+
+    //Called when the user scrolls close to the top of the loaded pets
+    public void loadPrevious(){
+        if(!isSearching()){
+            pager.loadBefore();
+        }
+    }
+
+    /**
+     * Searches names and breeds for what the user typed, once they pause typing. An empty query
+     * goes back to the paged catalog straight away.
+     */
+    public void setSearchQuery(final String query){
+        if(pendingSearch != null){
+            handler.removeCallbacks(pendingSearch);
+            pendingSearch = null;
+        }
+        if(TextUtils.isEmpty(query) || TextUtils.getTrimmedLength(query) == 0){
+            applySearchQuery(null);
+            return;
+        }
+        pendingSearch = new Runnable() {
+            @Override
+            public void run() {
+                pendingSearch = null;
+                applySearchQuery(query);
+            }
+        };
+        handler.postDelayed(pendingSearch, SEARCH_DEBOUNCE_MILLIS);
+    }
+
+    private void applySearchQuery(String query){
+        if(TextUtils.equals(query, searchQuery.getValue())){
+            return;
+        }
+        searchQuery.setValue(query);
+        if(query == null){
+            pets.setValue(pager.getPets().getValue());
+        }
+    }
+
+    private boolean isSearching(){
+        return searchQuery.getValue() != null;
+    }
+
+    @Override
+    protected void onCleared() {
+        if(pendingSearch != null){
+            handler.removeCallbacks(pendingSearch);
+        }
+        pager.close();
+        super.onCleared();
+    }
+}
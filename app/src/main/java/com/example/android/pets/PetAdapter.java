@@ -1,68 +1,228 @@
 package com.example.android.pets;
 
 import android.content.Context;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
 import android.support.annotation.NonNull;
 import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.text.PrecomputedTextCompat;
+import android.support.v4.widget.TextViewCompat;
+import android.support.v7.recyclerview.extensions.ListAdapter;
+import android.support.v7.util.DiffUtil;
+import android.support.v7.widget.RecyclerView;
 import android.text.TextUtils;
+import android.util.SparseArray;
 import android.view.LayoutInflater;
 import android.view.View;
 import android.view.ViewGroup;
-import android.widget.ArrayAdapter;
+import android.widget.ImageView;
 import android.widget.TextView;
 
-import com.example.android.pets.data.PetEntry;
+import com.example.android.pets.data.PetListItem;
 
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.List;
 
-public class PetAdapter extends ArrayAdapter<PetEntry> {
+/**
+ * RecyclerView adapter for the catalog. New lists are diffed against the current one on a
+ * background thread, and only the rows that were inserted, removed or changed get notified.
+ * Photo thumbnails are loaded by {@link PetThumbnailLoader}, and a row's pending load is
+ * cancelled once the row is recycled.
+ *
+ * Binding a row does no work besides setting it on the views. Each list of pets is turned into
+ * {@link PetRow}s in the background first: their text is built once, and measured with
+ * {@link PrecomputedTextCompat} so the main thread doesn't lay out glyphs during a fling.
+ */
+public class PetAdapter extends ListAdapter<PetRow, PetAdapter.PetViewHolder> {
+
+    /**
+     * Rows are the same pet when their ids match, and need rebinding only when some column
+     * changed.
+     */
+    private static final DiffUtil.ItemCallback<PetRow> DIFF_CALLBACK =
+            new DiffUtil.ItemCallback<PetRow>() {
+                @Override
+                public boolean areItemsTheSame(@NonNull PetRow oldRow, @NonNull PetRow newRow) {
+                    return oldRow.getId() == newRow.getId();
+                }
+
+                @Override
+                public boolean areContentsTheSame(@NonNull PetRow oldRow, @NonNull PetRow newRow) {
+                    return oldRow.getItem().equals(newRow.getItem());
+                }
+            };
+
+    private final Context mContext;
+    private final ItemClickListener mItemClickListener;
+    private final PetThumbnailLoader mThumbnailLoader;
+    private final int mPhotoSize;
+    private final String mUnknownBreed;
+    //How the row's text views draw, read from a row inflated once. Text measured with other
+    //params can't be set on them.
+    private final PrecomputedTextCompat.Params mNameParams;
+    private final PrecomputedTextCompat.Params mSummaryParams;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //Only touched on the main thread: the rows last submitted, and which list of pets is the
+    //latest, as a list built in the background may arrive after a newer one
+    private List<PetRow> mRows = Collections.emptyList();
+    private int mGeneration = 0;
 
     /**
      * Constructs a new {@link PetAdapter}.
      *
-     * @param context The context
+     * @param context  The context
+     * @param listener Called with the id of the pet when a row is clicked
+     */
+    public PetAdapter(Context context, ItemClickListener listener){
+        super(DIFF_CALLBACK);
+        mContext = context;
+        mItemClickListener = listener;
+        mThumbnailLoader = PetThumbnailLoader.getInstance(context);
+        mPhotoSize = context.getResources().getDimensionPixelSize(R.dimen.list_item_photo_size);
+        mUnknownBreed = context.getResources().getString(R.string.unknown_breed);
+        View prototype = LayoutInflater.from(context).inflate(R.layout.list_item, null, false);
+        mNameParams = TextViewCompat.getTextMetricsParams((TextView) prototype.findViewById(R.id.name));
+        mSummaryParams = TextViewCompat.getTextMetricsParams((TextView) prototype.findViewById(R.id.summary));
+    }
+
+    /**
+     * Shows a new list of pets. The rows are built in the background and then diffed against
+     * the current ones, so the list shows up a little later than with a plain submitList.
      */
-    public PetAdapter(Context context, List<PetEntry> petEntries){
-        super(context, 0, petEntries);
+    @MainThread
+    public void submitPets(@Nullable final List<PetListItem> pets){
+        final int generation = ++mGeneration;
+        if(pets == null){
+            mRows = Collections.emptyList();
+            submitList(null);
+            return;
+        }
+        final List<PetRow> previous = mRows;
+        //One list at a time, the text paints of the prototype row aren't safe to measure with
+        //from two threads
+        AsyncTask.SERIAL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                final List<PetRow> rows = buildRows(pets, previous);
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        if(generation == mGeneration){
+                            mRows = rows;
+                            submitList(rows);
+                        }
+                    }
+                });
+            }
+        });
+    }
+
+    //Pets that didn't change keep their row from the previous list, with its text already measured
+    @WorkerThread
+    private List<PetRow> buildRows(List<PetListItem> pets, List<PetRow> previous){
+        SparseArray<PetRow> previousById = new SparseArray<>(previous.size());
+        for(PetRow row : previous){
+            previousById.put(row.getId(), row);
+        }
+        List<PetRow> rows = new ArrayList<>(pets.size());
+        for(PetListItem pet : pets){
+            PetRow row = previousById.get(pet.getId());
+            if(row == null || !row.getItem().equals(pet)){
+                row = buildRow(pet);
+            }
+            rows.add(row);
+        }
+        return rows;
+    }
+
+    @WorkerThread
+    private PetRow buildRow(PetListItem pet){
+        String name = pet.getName() == null ? "" : pet.getName();
+        String breed = pet.getBreed();
+        // If the pet breed is empty string or null, then use some default text
+        // that says "Unknown breed", so the TextView isn't blank.
+        if(TextUtils.isEmpty(breed)){
+            breed = mUnknownBreed;
+        }
+        return new PetRow(pet, PrecomputedTextCompat.create(name, mNameParams),
+                PrecomputedTextCompat.create(breed, mSummaryParams));
     }
 
+    @NonNull
+    @Override
+    public PetViewHolder onCreateViewHolder(@NonNull ViewGroup parent, int viewType) {
+        View listItemView = LayoutInflater.from(mContext).inflate(
+                R.layout.list_item, parent, false);
+        return new PetViewHolder(listItemView);
+    }
 
     /**
-     * Get a View that displays the data at the specified position in the data set.
+     * Binds the pet at the given position to the row.
      *
-     * @param position    Existing view, returned earlier by newView() method
-     * @param convertView app context
-     * @param parent  The cursor from which to get the data. The cursor is already moved to the
-     *                correct row.
+     * @param holder   The row to update
+     * @param position Position of the pet in the current list
      */
-    @NonNull
     @Override
-    public View getView(int position, @Nullable View convertView, @NonNull ViewGroup parent) {
-        View listItemView = convertView;
-        if(listItemView == null){
-            listItemView = LayoutInflater.from(getContext()).inflate(
-                    R.layout.list_item, parent, false);
+    public void onBindViewHolder(@NonNull PetViewHolder holder, int position) {
+        PetRow row = getItem(position);
+
+        //Update the TextViews with the text built for the current pet
+        setText(holder.nameTextView, row.getName());
+        setText(holder.summaryTextView, row.getSummary());
+        mThumbnailLoader.load(row.getItem().getPhotoPath(), holder.photoImageView, mPhotoSize);
+    }
+
+    //The row scrolled away, so its thumbnail is no longer worth decoding
+    @Override
+    public void onViewRecycled(@NonNull PetViewHolder holder) {
+        mThumbnailLoader.cancel(holder.photoImageView);
+    }
+
+    private static void setText(TextView textView, CharSequence text){
+        if(text instanceof PrecomputedTextCompat){
+            try {
+                TextViewCompat.setPrecomputedText(textView, (PrecomputedTextCompat) text);
+            } catch (IllegalArgumentException e){
+                //The view draws differently from the prototype row, e.g. in a right-to-left
+                //layout, so the text is laid out here after all
+                textView.setText(text.toString());
+            }
+        }else{
+            textView.setText(text);
         }
+    }
 
-        PetEntry pet = getItem(position);
+    public interface ItemClickListener {
+        void onItemClickListener(int petId);
+    }
 
-        //Find individual views that we want to modify in the list item layout
-        TextView nameTextView = (TextView)listItemView.findViewById(R.id.name);
-        TextView summaryTextVIew = (TextView)listItemView.findViewById(R.id.summary);
+    class PetViewHolder extends RecyclerView.ViewHolder implements View.OnClickListener {
 
-        //Read the pet attributes from the current pet
-        String petName = pet.getName();
-        String petBreed = pet.getBreed();
+        TextView nameTextView;
+        TextView summaryTextView;
+        ImageView photoImageView;
 
-        // If the pet breed is empty string or null, then use some default text
-        // that says "Unknown breed", so the TextView isn't blank.
-        if (TextUtils.isEmpty(petBreed)){
-            petBreed = getContext().getResources().getString(R.string.unknown_breed);
+        PetViewHolder(View itemView){
+            super(itemView);
+            //Find individual views that we want to modify in the list item layout
+            nameTextView = (TextView) itemView.findViewById(R.id.name);
+            summaryTextView = (TextView) itemView.findViewById(R.id.summary);
+            photoImageView = (ImageView) itemView.findViewById(R.id.photo);
+            itemView.setOnClickListener(this);
         }
 
-        //Update the TextViews with the attributes for the current pet
-        nameTextView.setText(petName);
-        summaryTextVIew.setText(petBreed);
-
-        return listItemView;
+        @Override
+        public void onClick(View view) {
+            int position = getAdapterPosition();
+            if(position == RecyclerView.NO_POSITION){
+                return;
+            }
+            mItemClickListener.onItemClickListener(getItem(position).getId());
+        }
     }
 }
@@ -0,0 +1,39 @@
+package com.example.android.pets;
+
+import com.example.android.pets.data.PetListItem;
+
+/**
+ * One row of the catalog, ready to bind: the pet, and the text its row shows.
+ *
+ * The text is built once per list of pets the catalog receives, fallbacks like the unknown breed
+ * included, and usually already measured, see {@link PetAdapter#submitPets(java.util.List)}. A
+ * pet that didn't change between two lists keeps its row, so only new or edited pets are built.
+ */
+final class PetRow {
+
+    private final PetListItem item;
+    private final CharSequence name;
+    private final CharSequence summary;
+
+    PetRow(PetListItem item, CharSequence name, CharSequence summary){
+        this.item = item;
+        this.name = name;
+        this.summary = summary;
+    }
+
+    int getId() {
+        return item.getId();
+    }
+
+    PetListItem getItem() {
+        return item;
+    }
+
+    CharSequence getName() {
+        return name;
+    }
+
+    CharSequence getSummary() {
+        return summary;
+    }
+}
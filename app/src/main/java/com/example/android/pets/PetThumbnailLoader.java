@@ -0,0 +1,277 @@
+package com.example.android.pets;
+
+import android.app.ActivityManager;
+import android.content.Context;
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.graphics.Matrix;
+import android.media.ExifInterface;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.support.v4.util.LruCache;
+import android.widget.ImageView;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.UnsupportedEncodingException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Loads pet photos into image views as small square thumbnails, without ever decoding on the main
+ * thread or holding a full-size photo in memory.
+ *
+ * A thumbnail is looked for in three places, cheapest first:
+ * - A memory LRU of decoded thumbnails, bounded to a share of the app's heap. It is checked on
+ *   the main thread, so rows scrolling back into view are filled at once.
+ * - A disk cache of pre-scaled thumbnails, see {@link ThumbnailDiskCache}.
+ * - The photo itself, decoded with a sample size so only about the thumbnail's pixels get
+ *   allocated, then cropped, scaled and stored in both caches.
+ * The last two run on a small pool of background threads. An image view has at most one load
+ * pending: loading into it again, or {@link #cancel(ImageView)} once its row is recycled, cancels
+ * the previous one. A cancelled load is skipped if it hasn't started, and never touches the view
+ * if it has.
+ *
+ * Photo files are never overwritten (see PetPhotos), so cached thumbnails never go stale.
+ */
+public class PetThumbnailLoader {
+
+    private static final String DISK_CACHE_DIRECTORY = "pet_thumbnails";
+    private static final long DISK_CACHE_BYTES = 20L * 1024 * 1024;
+
+    //The memory cache gets this fraction of the heap the system gives the app
+    private static final int MEMORY_CACHE_DIVISOR = 8;
+
+    //Decoding is mostly CPU, two threads keep up with a fling without taking every core from the UI
+    private static final int DECODER_THREADS = 2;
+
+    private static final Object LOCK = new Object();
+    private static volatile PetThumbnailLoader INSTANCE;
+
+    public static PetThumbnailLoader getInstance(Context context){
+        if(INSTANCE == null){
+            synchronized (LOCK){
+                if(INSTANCE == null){
+                    INSTANCE = new PetThumbnailLoader(context.getApplicationContext());
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final LruCache<String, Bitmap> mMemoryCache;
+    private final ThumbnailDiskCache mDiskCache;
+    private final ExecutorService mDecoder;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    PetThumbnailLoader(Context context){
+        ActivityManager activityManager = (ActivityManager) context.getSystemService(Context.ACTIVITY_SERVICE);
+        int memoryCacheBytes = activityManager.getMemoryClass() * 1024 * 1024 / MEMORY_CACHE_DIVISOR;
+        mMemoryCache = new LruCache<String, Bitmap>(memoryCacheBytes) {
+            @Override
+            protected int sizeOf(String key, Bitmap bitmap) {
+                return bitmap.getRowBytes() * bitmap.getHeight();
+            }
+        };
+        mDiskCache = new ThumbnailDiskCache(new File(context.getCacheDir(), DISK_CACHE_DIRECTORY),
+                DISK_CACHE_BYTES);
+        mDecoder = Executors.newFixedThreadPool(DECODER_THREADS, new ThreadFactory() {
+            private final AtomicInteger mCount = new AtomicInteger();
+
+            @Override
+            public Thread newThread(final Runnable runnable) {
+                return new Thread(new Runnable() {
+                    @Override
+                    public void run() {
+                        Process.setThreadPriority(Process.THREAD_PRIORITY_BACKGROUND);
+                        runnable.run();
+                    }
+                }, "pet-thumbnails-" + mCount.incrementAndGet());
+            }
+        });
+    }
+
+    /**
+     * Shows the thumbnail of a photo in the view, right away if it is in memory and once it is
+     * loaded otherwise. The view is left empty meanwhile, and for a pet without a photo.
+     *
+     * @param photoPath the pet's photo path, may be null
+     * @param sizePx    width and height of the thumbnail
+     */
+    @MainThread
+    public void load(@Nullable String photoPath, ImageView imageView, int sizePx){
+        cancel(imageView);
+        if(photoPath == null){
+            imageView.setImageDrawable(null);
+            return;
+        }
+        String key = cacheKey(photoPath, sizePx);
+        Bitmap cached = mMemoryCache.get(key);
+        if(cached != null){
+            imageView.setImageBitmap(cached);
+            return;
+        }
+        imageView.setImageDrawable(null);
+        Load load = new Load(key, photoPath, sizePx, imageView);
+        imageView.setTag(R.id.thumbnail_load, load);
+        load.mFuture = mDecoder.submit(load);
+    }
+
+    /**
+     * Cancels the load pending for the view, if any, e.g. because its row was recycled.
+     */
+    @MainThread
+    public void cancel(ImageView imageView){
+        Load load = (Load) imageView.getTag(R.id.thumbnail_load);
+        if(load != null){
+            load.cancel();
+            imageView.setTag(R.id.thumbnail_load, null);
+        }
+    }
+
+    /**
+     * Decodes a photo into a square thumbnail of its center, turned upright.
+     *
+     * @return the thumbnail, or null if the photo is missing or can't be decoded.
+     */
+    @WorkerThread
+    @Nullable
+    static Bitmap decode(String photoPath, int sizePx){
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeFile(photoPath, options);
+        if(options.outWidth <= 0 || options.outHeight <= 0){
+            return null;
+        }
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = sampleSize(Math.min(options.outWidth, options.outHeight), sizePx);
+        //Photos have no transparency, and this halves the memory of every thumbnail
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap sampled = BitmapFactory.decodeFile(photoPath, options);
+        if(sampled == null){
+            return null;
+        }
+        int side = Math.min(sampled.getWidth(), sampled.getHeight());
+        float scale = Math.min(1f, (float) sizePx / side);
+        Matrix matrix = new Matrix();
+        matrix.setScale(scale, scale);
+        matrix.postRotate(rotationOf(photoPath));
+        Bitmap thumbnail = Bitmap.createBitmap(sampled, (sampled.getWidth() - side) / 2,
+                (sampled.getHeight() - side) / 2, side, side, matrix, true);
+        if(thumbnail != sampled){
+            sampled.recycle();
+        }
+        return thumbnail;
+    }
+
+    //The largest power of two that still leaves the short side at least sizePx, which is what the
+    //decoder can skip pixels by
+    static int sampleSize(int shortSide, int sizePx){
+        int sampleSize = 1;
+        while(shortSide / (sampleSize * 2) >= sizePx){
+            sampleSize *= 2;
+        }
+        return sampleSize;
+    }
+
+    //Camera photos are often stored sideways, with their orientation in the EXIF data
+    private static int rotationOf(String photoPath){
+        try {
+            int orientation = new ExifInterface(photoPath).getAttributeInt(
+                    ExifInterface.TAG_ORIENTATION, ExifInterface.ORIENTATION_NORMAL);
+            switch (orientation){
+                case ExifInterface.ORIENTATION_ROTATE_90:
+                    return 90;
+                case ExifInterface.ORIENTATION_ROTATE_180:
+                    return 180;
+                case ExifInterface.ORIENTATION_ROTATE_270:
+                    return 270;
+                default:
+                    return 0;
+            }
+        } catch (IOException e){
+            return 0;
+        }
+    }
+
+    //The path is hashed so any path makes a valid file name in the disk cache
+    private static String cacheKey(String photoPath, int sizePx){
+        try {
+            byte[] digest = MessageDigest.getInstance("MD5").digest(photoPath.getBytes("UTF-8"));
+            StringBuilder key = new StringBuilder(digest.length * 2 + 8);
+            for(byte b : digest){
+                key.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return key.append('_').append(sizePx).toString();
+        } catch (NoSuchAlgorithmException | UnsupportedEncodingException e){
+            //Every Android device has both
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private class Load implements Runnable {
+
+        private final String mKey;
+        private final String mPhotoPath;
+        private final int mSizePx;
+        //Only touched on the main thread
+        private final ImageView mImageView;
+        private Future<?> mFuture;
+        private volatile boolean mCancelled = false;
+
+        Load(String key, String photoPath, int sizePx, ImageView imageView){
+            mKey = key;
+            mPhotoPath = photoPath;
+            mSizePx = sizePx;
+            mImageView = imageView;
+        }
+
+        @MainThread
+        void cancel(){
+            mCancelled = true;
+            if(mFuture != null){
+                mFuture.cancel(false);
+            }
+        }
+
+        @Override
+        public void run() {
+            if(mCancelled){
+                return;
+            }
+            Bitmap bitmap = mDiskCache.get(mKey);
+            if(bitmap == null){
+                //Checked again, as reading the disk cache may have taken a while
+                if(mCancelled){
+                    return;
+                }
+                bitmap = decode(mPhotoPath, mSizePx);
+                if(bitmap == null){
+                    return;
+                }
+                mDiskCache.put(mKey, bitmap);
+            }
+            //Cached even if cancelled meanwhile, the row is likely to come back into view
+            mMemoryCache.put(mKey, bitmap);
+            final Bitmap thumbnail = bitmap;
+            mMainHandler.post(new Runnable() {
+                @Override
+                public void run() {
+                    if(!mCancelled){
+                        mImageView.setTag(R.id.thumbnail_load, null);
+                        mImageView.setImageBitmap(thumbnail);
+                    }
+                }
+            });
+        }
+    }
+}
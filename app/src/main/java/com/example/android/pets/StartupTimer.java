@@ -0,0 +1,63 @@
+package com.example.android.pets;
+
+import android.os.Build;
+import android.os.Process;
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.LinkedHashMap;
+import java.util.Map;
+
+/**
+ * Records how long after process start each step of app startup happened, so cold start changes
+ * can be measured. Every step is logged once under the StartupTimer tag, e.g.
+ * adb logcat -s StartupTimer
+ */
+public final class StartupTimer {
+
+    private static final String LOG_TAG = StartupTimer.class.getSimpleName();
+
+    public static final String APPLICATION_CREATED = "application_created";
+    public static final String DATABASE_OPENED = "database_opened";
+    public static final String DATABASE_PREWARMED = "database_prewarmed";
+    public static final String CATALOG_CREATED = "catalog_created";
+    public static final String CATALOG_FIRST_DATA = "catalog_first_data";
+
+    //Used when the platform can't tell us when the process started (before API 24)
+    private static final long CLASS_LOADED_AT = SystemClock.elapsedRealtime();
+
+    private static final Map<String, Long> sMarks = new LinkedHashMap<>();
+
+    private StartupTimer(){
+    }
+
+    /**
+     * Records the first time a step is reached. Later calls for the same step are ignored.
+     */
+    public static void mark(String step){
+        long sinceStart = SystemClock.elapsedRealtime() - processStart();
+        synchronized (sMarks){
+            if(sMarks.containsKey(step)){
+                return;
+            }
+            sMarks.put(step, sinceStart);
+        }
+        Log.i(LOG_TAG, step + " at +" + sinceStart + "ms");
+    }
+
+    /**
+     * @return every step recorded so far, in the order they happened, in ms since process start.
+     */
+    public static Map<String, Long> getMarks(){
+        synchronized (sMarks){
+            return new LinkedHashMap<>(sMarks);
+        }
+    }
+
+    private static long processStart(){
+        if(Build.VERSION.SDK_INT >= Build.VERSION_CODES.N){
+            return Process.getStartElapsedRealtime();
+        }
+        return CLASS_LOADED_AT;
+    }
+}
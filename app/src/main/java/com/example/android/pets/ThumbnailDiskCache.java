@@ -0,0 +1,157 @@
+package com.example.android.pets;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedOutputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+import java.util.Comparator;
+
+/**
+ * Pre-scaled thumbnails on disk, so a photo is decoded at full size once rather than every time
+ * its row comes into view after the memory cache or the whole process lost it.
+ *
+ * The files live in the cache directory, where the system may also delete them when storage runs
+ * low. Their total size is bounded: once a write takes it over the limit, the least recently used
+ * files are deleted until it is back to three quarters of it. Reading a file touches its
+ * modification time, which is what recently used goes by.
+ */
+class ThumbnailDiskCache {
+
+    private static final String LOG_TAG = ThumbnailDiskCache.class.getSimpleName();
+
+    private static final int JPEG_QUALITY = 85;
+
+    private final File mDirectory;
+    private final long mMaxBytes;
+
+    //Guarded by this, -1 until the directory is first scanned
+    private long mSizeBytes = -1;
+
+    ThumbnailDiskCache(File directory, long maxBytes){
+        mDirectory = directory;
+        mMaxBytes = maxBytes;
+    }
+
+    /**
+     * @return the thumbnail stored under the key, or null if there is none.
+     */
+    @WorkerThread
+    @Nullable
+    Bitmap get(String key){
+        File file = new File(mDirectory, key);
+        if(!file.isFile()){
+            return null;
+        }
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inPreferredConfig = Bitmap.Config.RGB_565;
+        Bitmap bitmap = BitmapFactory.decodeFile(file.getPath(), options);
+        if(bitmap == null){
+            //Cut short by a crash or a full disk, decode the photo again
+            delete(file);
+            return null;
+        }
+        file.setLastModified(System.currentTimeMillis());
+        return bitmap;
+    }
+
+    /**
+     * Stores a thumbnail under the key. Failing to write it only costs decoding the photo again
+     * next time, so errors are logged and otherwise ignored.
+     */
+    @WorkerThread
+    void put(String key, Bitmap bitmap){
+        if(!mDirectory.isDirectory() && !mDirectory.mkdirs()){
+            Log.w(LOG_TAG, "Could not create " + mDirectory);
+            return;
+        }
+        File file = new File(mDirectory, key);
+        File temp = null;
+        try {
+            //Written aside and renamed, so a reader never sees half a file
+            temp = File.createTempFile(key, null, mDirectory);
+            OutputStream out = new BufferedOutputStream(new FileOutputStream(temp));
+            try {
+                bitmap.compress(Bitmap.CompressFormat.JPEG, JPEG_QUALITY, out);
+            } finally {
+                out.close();
+            }
+            if(!temp.renameTo(file)){
+                throw new IOException("Could not rename " + temp + " to " + file);
+            }
+        } catch (IOException e){
+            Log.w(LOG_TAG, "Could not write thumbnail " + key, e);
+            if(temp != null){
+                temp.delete();
+            }
+            return;
+        }
+        added(file.length());
+    }
+
+    private synchronized void added(long bytes){
+        if(mSizeBytes == -1){
+            mSizeBytes = sizeOf(listFiles());
+        }else{
+            mSizeBytes += bytes;
+        }
+        if(mSizeBytes > mMaxBytes){
+            trim();
+        }
+    }
+
+    //Deletes the least recently used files until the cache is back under three quarters of its limit
+    private void trim(){
+        File[] files = listFiles();
+        final long[] lastModified = new long[files.length];
+        Integer[] order = new Integer[files.length];
+        for(int i = 0; i < files.length; i++){
+            //Read once, a file touched while sorting would break the comparator
+            lastModified[i] = files[i].lastModified();
+            order[i] = i;
+        }
+        Arrays.sort(order, new Comparator<Integer>() {
+            @Override
+            public int compare(Integer a, Integer b) {
+                return lastModified[a] < lastModified[b] ? -1 : (lastModified[a] == lastModified[b] ? 0 : 1);
+            }
+        });
+        long size = sizeOf(files);
+        long target = mMaxBytes / 4 * 3;
+        for(int i = 0; i < order.length && size > target; i++){
+            File file = files[order[i]];
+            long length = file.length();
+            if(file.delete()){
+                size -= length;
+            }
+        }
+        mSizeBytes = size;
+    }
+
+    private synchronized void delete(File file){
+        long length = file.length();
+        if(file.delete() && mSizeBytes != -1){
+            mSizeBytes -= length;
+        }
+    }
+
+    private File[] listFiles(){
+        File[] files = mDirectory.listFiles();
+        return files == null ? new File[0] : files;
+    }
+
+    private static long sizeOf(File[] files){
+        long size = 0;
+        for(File file : files){
+            size += file.length();
+        }
+        return size;
+    }
+}
@@ -0,0 +1,76 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteOpenHelper;
+import android.support.annotation.NonNull;
+
+/**
+ * Wraps another open helper factory so every database it creates uses incremental auto-vacuum,
+ * see {@link PetsMaintenance}. SQLite only takes the mode before the database's first table, and
+ * only with a VACUUM once the file has a header, which turning on WAL already writes. Room's
+ * onCreate callback is too late, Room has created its tables by then, and it and the migrations
+ * run in a transaction, where VACUUM can't. So a new database is switched in onConfigure, which
+ * runs before them. By then Android has only created its android_metadata table, which is all
+ * the VACUUM has to copy. A new database is told apart by its user version, which is 0 until
+ * onCreate sets it. An existing database is left as it is for maintenance to convert.
+ */
+public class AutoVacuumOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+
+    private final SupportSQLiteOpenHelper.Factory mDelegate;
+
+    public AutoVacuumOpenHelperFactory(SupportSQLiteOpenHelper.Factory delegate){
+        mDelegate = delegate;
+    }
+
+    @Override
+    public SupportSQLiteOpenHelper create(SupportSQLiteOpenHelper.Configuration configuration) {
+        return mDelegate.create(SupportSQLiteOpenHelper.Configuration.builder(configuration.context)
+                .name(configuration.name)
+                .callback(new AutoVacuumCallback(configuration.callback))
+                .build());
+    }
+
+    private static class AutoVacuumCallback extends SupportSQLiteOpenHelper.Callback {
+
+        private final SupportSQLiteOpenHelper.Callback mDelegate;
+
+        AutoVacuumCallback(SupportSQLiteOpenHelper.Callback delegate){
+            super(delegate.version);
+            mDelegate = delegate;
+        }
+
+        @Override
+        public void onConfigure(SupportSQLiteDatabase db) {
+            if(db.getVersion() == 0){
+                PetsDatabaseConfig.pragma(db, "auto_vacuum = INCREMENTAL");
+                db.execSQL("VACUUM");
+            }
+            mDelegate.onConfigure(db);
+        }
+
+        @Override
+        public void onCreate(SupportSQLiteDatabase db) {
+            mDelegate.onCreate(db);
+        }
+
+        @Override
+        public void onUpgrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            mDelegate.onUpgrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onDowngrade(SupportSQLiteDatabase db, int oldVersion, int newVersion) {
+            mDelegate.onDowngrade(db, oldVersion, newVersion);
+        }
+
+        @Override
+        public void onOpen(SupportSQLiteDatabase db) {
+            mDelegate.onOpen(db);
+        }
+
+        @Override
+        public void onCorruption(@NonNull SupportSQLiteDatabase db) {
+            mDelegate.onCorruption(db);
+        }
+    }
+}
@@ -0,0 +1,242 @@
+package com.example.android.pets.data;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.Observer;
+import android.os.AsyncTask;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.MainThread;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.SparseArray;
+
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * In-memory copy of the breed table, mapping breed ids to names and back.
+ *
+ * A shelter has a few hundred breeds shared by any number of pets, so the pet table stores a
+ * breed id and every pet read through here gets the one String instance held for its breed,
+ * rather than a fresh copy read from each row. Writes look their breed up here to get its id,
+ * and add it to the breed table the first time it is seen. A missing breed is stored as the
+ * empty breed, which the app already treats the same way.
+ *
+ * Breeds are never deleted, so a cached entry stays right for the life of the database. Only
+ * breeds read or added outside a transaction are cached, as one inside it might still be rolled
+ * back; those are looked up again until they show up committed.
+ */
+public class BreedDictionary {
+
+    private final PetsDatabase mDb;
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //Guarded by this
+    private final SparseArray<String> mNames = new SparseArray<>();
+    private final Map<String, Integer> mIds = new HashMap<>();
+    private boolean mLoaded = false;
+
+    BreedDictionary(PetsDatabase database){
+        mDb = database;
+    }
+
+    /**
+     * @return SQL for the breed name of a pet row, e.g. NEW or OLD in a trigger on pet.
+     */
+    static String nameSql(String pet){
+        return "(SELECT name FROM breed WHERE id = " + pet + ".breed_id)";
+    }
+
+    /**
+     * Reads the whole breed table, so that names can be filled in on the main thread afterwards.
+     * Does nothing the second time.
+     */
+    @WorkerThread
+    public void load(){
+        synchronized (this){
+            if(mLoaded){
+                return;
+            }
+        }
+        List<BreedEntry> breeds = mDb.petDao().loadBreeds();
+        synchronized (this){
+            for(BreedEntry breed : breeds){
+                put(breed.getId(), breed.getName());
+            }
+            mLoaded = true;
+        }
+    }
+
+    /**
+     * @return the id of the breed, added to the breed table if it isn't there yet.
+     */
+    @WorkerThread
+    public int idOf(@Nullable String breed){
+        String name = breed == null ? "" : breed;
+        synchronized (this){
+            Integer id = mIds.get(name);
+            if(id != null){
+                return id;
+            }
+        }
+        PetDao dao = mDb.petDao();
+        long id = dao.insertBreed(new BreedEntry(0, name));
+        if(id == -1){
+            id = dao.loadBreedIdByName(name);
+        }
+        cacheIfCommitted((int) id, name);
+        return (int) id;
+    }
+
+    /**
+     * @return the name of the breed, or null if there is no breed with that id.
+     */
+    @WorkerThread
+    @Nullable
+    public String nameOf(int id){
+        synchronized (this){
+            String name = mNames.get(id);
+            if(name != null){
+                return name;
+            }
+        }
+        BreedEntry breed = mDb.petDao().loadBreedById(id);
+        if(breed == null){
+            return null;
+        }
+        return cacheIfCommitted(breed.getId(), breed.getName());
+    }
+
+    /**
+     * Sets the breed id of each pet from its breed name, before the pets are written.
+     */
+    @WorkerThread
+    public void assignIds(List<PetEntry> petEntries){
+        for(PetEntry petEntry : petEntries){
+            assignId(petEntry);
+        }
+    }
+
+    @WorkerThread
+    public void assignId(PetEntry petEntry){
+        petEntry.setBreedId(idOf(petEntry.getBreed()));
+    }
+
+    /**
+     * Sets the breed name of each catalog row read from the database.
+     */
+    @WorkerThread
+    public void nameItems(List<PetListItem> items){
+        nameItems(items, false);
+    }
+
+    /**
+     * Fills in the breed names of every list a catalog query emits. Names come from memory on
+     * the main thread when they are all known, which after {@link #load()} is the normal case,
+     * and are read from the database in the background otherwise.
+     */
+    @MainThread
+    public LiveData<List<PetListItem>> withItemNames(LiveData<List<PetListItem>> source){
+        return withNames(source, new Namer<List<PetListItem>>() {
+            @Override
+            public boolean name(List<PetListItem> items, boolean cachedOnly) {
+                return nameItems(items, cachedOnly);
+            }
+        });
+    }
+
+    /**
+     * Fills in the breed name of a pet every time the source emits it.
+     */
+    @MainThread
+    public LiveData<PetEntry> withPetName(LiveData<PetEntry> source){
+        return withNames(source, new Namer<PetEntry>() {
+            @Override
+            public boolean name(PetEntry petEntry, boolean cachedOnly) {
+                String breed = cachedOnly ? cachedName(petEntry.getBreedId()) : nameOf(petEntry.getBreedId());
+                if(breed == null){
+                    return false;
+                }
+                petEntry.setBreed(breed);
+                return true;
+            }
+        });
+    }
+
+    //Returns whether every item got its name, which only cachedOnly can prevent
+    private boolean nameItems(List<PetListItem> items, boolean cachedOnly){
+        boolean complete = true;
+        for(PetListItem item : items){
+            String breed = cachedOnly ? cachedName(item.getBreedId()) : nameOf(item.getBreedId());
+            if(breed == null){
+                complete = false;
+            }else{
+                item.setBreed(breed);
+            }
+        }
+        return complete;
+    }
+
+    private <T> LiveData<T> withNames(LiveData<T> source, final Namer<T> namer){
+        final MediatorLiveData<T> result = new MediatorLiveData<>();
+        //Only the latest emission is delivered, one named in the background may arrive late
+        final int[] latest = new int[1];
+        result.addSource(source, new Observer<T>() {
+            @Override
+            public void onChanged(@Nullable final T value) {
+                final int emission = ++latest[0];
+                if(value == null || namer.name(value, true)){
+                    result.setValue(value);
+                    return;
+                }
+                AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        namer.name(value, false);
+                        mMainHandler.post(new Runnable() {
+                            @Override
+                            public void run() {
+                                if(emission == latest[0]){
+                                    result.setValue(value);
+                                }
+                            }
+                        });
+                    }
+                });
+            }
+        });
+        return result;
+    }
+
+    @Nullable
+    private synchronized String cachedName(int id){
+        return mNames.get(id);
+    }
+
+    //Returns the instance every pet with this breed shares from now on
+    private String cacheIfCommitted(int id, String name){
+        if(mDb.inTransaction()){
+            return name;
+        }
+        synchronized (this){
+            String cached = mNames.get(id);
+            if(cached != null){
+                return cached;
+            }
+            put(id, name);
+            return name;
+        }
+    }
+
+    private void put(int id, String name){
+        mNames.put(id, name);
+        mIds.put(name, id);
+    }
+
+    private interface Namer<T> {
+        //Returns whether every name was found
+        boolean name(T value, boolean cachedOnly);
+    }
+}
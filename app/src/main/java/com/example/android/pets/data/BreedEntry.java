@@ -0,0 +1,34 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+/**
+ * One distinct breed name. Pets refer to their breed by id, so each name is stored once however
+ * many pets share it. Rows are never deleted, which keeps the ids cached by
+ * {@link BreedDictionary} valid for the life of the database.
+ */
+@Entity(tableName = "breed", indices = {@Index(value = "name", unique = true)})
+public class BreedEntry {
+
+    @PrimaryKey(autoGenerate = true)
+    private final int id;
+    @NonNull
+    private final String name;
+
+    public BreedEntry(int id, @NonNull String name){
+        this.id = id;
+        this.name = name;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.pets.data;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.HttpURLConnection;
+import java.net.URL;
+
+/**
+ * A {@link PetSyncBackend} over plain HTTP:
+ * - POST {baseUrl}/pets/push with the pushed pets as the body
+ * - GET {baseUrl}/pets/changes?since={version}&limit={n}
+ *
+ * Bodies go both ways as gzip compressed JSON Lines. Asking for gzip explicitly keeps
+ * HttpURLConnection from decompressing responses on its own, so they reach the codec as sent.
+ */
+public class HttpPetSyncBackend implements PetSyncBackend {
+
+    private static final int CONNECT_TIMEOUT_MS = 15000;
+    private static final int READ_TIMEOUT_MS = 30000;
+
+    private final String mBaseUrl;
+
+    /**
+     * @param baseUrl e.g. https://shelter.example.com/api, without a trailing slash
+     */
+    public HttpPetSyncBackend(String baseUrl){
+        mBaseUrl = baseUrl;
+    }
+
+    @Override
+    public byte[] push(byte[] body) throws IOException {
+        HttpURLConnection connection = open(new URL(mBaseUrl + "/pets/push"));
+        try {
+            connection.setRequestMethod("POST");
+            connection.setDoOutput(true);
+            connection.setFixedLengthStreamingMode(body.length);
+            connection.setRequestProperty("Content-Type", PetSyncCodec.CONTENT_TYPE);
+            connection.setRequestProperty("Content-Encoding", "gzip");
+            OutputStream out = connection.getOutputStream();
+            try {
+                out.write(body);
+            } finally {
+                out.close();
+            }
+            return readResponse(connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    @Override
+    public byte[] pull(long sinceVersion, int limit) throws IOException {
+        HttpURLConnection connection = open(new URL(
+                mBaseUrl + "/pets/changes?since=" + sinceVersion + "&limit=" + limit));
+        try {
+            return readResponse(connection);
+        } finally {
+            connection.disconnect();
+        }
+    }
+
+    private static HttpURLConnection open(URL url) throws IOException {
+        HttpURLConnection connection = (HttpURLConnection) url.openConnection();
+        connection.setConnectTimeout(CONNECT_TIMEOUT_MS);
+        connection.setReadTimeout(READ_TIMEOUT_MS);
+        connection.setRequestProperty("Accept", PetSyncCodec.CONTENT_TYPE);
+        connection.setRequestProperty("Accept-Encoding", "gzip");
+        return connection;
+    }
+
+    private static byte[] readResponse(HttpURLConnection connection) throws IOException {
+        int code = connection.getResponseCode();
+        if(code / 100 != 2){
+            throw new IOException("Sync backend answered " + code + " " + connection.getResponseMessage());
+        }
+        InputStream in = connection.getInputStream();
+        try {
+            ByteArrayOutputStream body = new ByteArrayOutputStream();
+            byte[] buffer = new byte[8192];
+            int read;
+            while((read = in.read(buffer)) != -1){
+                body.write(buffer, 0, read);
+            }
+            return body.toByteArray();
+        } finally {
+            in.close();
+        }
+    }
+}
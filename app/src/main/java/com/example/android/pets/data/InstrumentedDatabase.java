@@ -0,0 +1,355 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteStatement;
+import android.content.ContentValues;
+import android.database.Cursor;
+import android.database.CursorWrapper;
+import android.database.SQLException;
+import android.database.sqlite.SQLiteTransactionListener;
+import android.os.Build;
+import android.os.CancellationSignal;
+import android.support.annotation.RequiresApi;
+import android.util.Pair;
+
+import java.io.IOException;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * A SupportSQLiteDatabase that times everything it forwards to the real one and reports it to
+ * a {@link QueryMetrics}.
+ *
+ * A query is timed from the call until its cursor is closed, since SQLite only runs it as the
+ * cursor is read, and its row count is the cursor's. A transaction is timed from its outermost
+ * begin to its end, and the time spent inside that begin is the wait for the database lock.
+ */
+class InstrumentedDatabase implements SupportSQLiteDatabase {
+
+    private final SupportSQLiteDatabase mDelegate;
+    private final QueryMetrics mMetrics;
+
+    //Transactions nest, only the outermost one is timed. Tracked even while disabled, so turning
+    //metrics on in the middle of a transaction can't unbalance it.
+    private final ThreadLocal<long[]> mTransaction = new ThreadLocal<long[]>() {
+        @Override
+        protected long[] initialValue() {
+            //depth, start time or 0 if the outermost begin wasn't timed
+            return new long[2];
+        }
+    };
+
+    InstrumentedDatabase(SupportSQLiteDatabase delegate, QueryMetrics metrics){
+        mDelegate = delegate;
+        mMetrics = metrics;
+    }
+
+    boolean wraps(SupportSQLiteDatabase database){
+        return mDelegate == database;
+    }
+
+    @Override
+    public SupportSQLiteStatement compileStatement(String sql) {
+        return new InstrumentedStatement(mDelegate.compileStatement(sql), sql, mMetrics);
+    }
+
+    @Override
+    public void beginTransaction() {
+        long start = beforeBegin();
+        mDelegate.beginTransaction();
+        afterBegin(start);
+    }
+
+    @Override
+    public void beginTransactionNonExclusive() {
+        long start = beforeBegin();
+        mDelegate.beginTransactionNonExclusive();
+        afterBegin(start);
+    }
+
+    @Override
+    public void beginTransactionWithListener(SQLiteTransactionListener transactionListener) {
+        long start = beforeBegin();
+        mDelegate.beginTransactionWithListener(transactionListener);
+        afterBegin(start);
+    }
+
+    @Override
+    public void beginTransactionWithListenerNonExclusive(SQLiteTransactionListener transactionListener) {
+        long start = beforeBegin();
+        mDelegate.beginTransactionWithListenerNonExclusive(transactionListener);
+        afterBegin(start);
+    }
+
+    //Returns the time the begin started, or 0 if this begin isn't timed
+    private long beforeBegin(){
+        return mTransaction.get()[0] == 0 && mMetrics.isEnabled() ? System.nanoTime() : 0;
+    }
+
+    private void afterBegin(long start){
+        long[] transaction = mTransaction.get();
+        if(transaction[0]++ == 0 && start != 0){
+            long now = System.nanoTime();
+            mMetrics.recordLockWait(now - start);
+            transaction[1] = now;
+        }
+    }
+
+    @Override
+    public void endTransaction() {
+        try {
+            mDelegate.endTransaction();
+        } finally {
+            long[] transaction = mTransaction.get();
+            if(--transaction[0] == 0 && transaction[1] != 0){
+                if(mMetrics.isEnabled()){
+                    mMetrics.recordTransaction(System.nanoTime() - transaction[1]);
+                }
+                transaction[1] = 0;
+            }
+        }
+    }
+
+    @Override
+    public void setTransactionSuccessful() {
+        mDelegate.setTransactionSuccessful();
+    }
+
+    @Override
+    public boolean inTransaction() {
+        return mDelegate.inTransaction();
+    }
+
+    @Override
+    public boolean isDbLockedByCurrentThread() {
+        return mDelegate.isDbLockedByCurrentThread();
+    }
+
+    @Override
+    public boolean yieldIfContendedSafely() {
+        return mDelegate.yieldIfContendedSafely();
+    }
+
+    @Override
+    public boolean yieldIfContendedSafely(long sleepAfterYieldDelay) {
+        return mDelegate.yieldIfContendedSafely(sleepAfterYieldDelay);
+    }
+
+    @Override
+    public int getVersion() {
+        return mDelegate.getVersion();
+    }
+
+    @Override
+    public void setVersion(int version) {
+        mDelegate.setVersion(version);
+    }
+
+    @Override
+    public long getMaximumSize() {
+        return mDelegate.getMaximumSize();
+    }
+
+    @Override
+    public long setMaximumSize(long numBytes) {
+        return mDelegate.setMaximumSize(numBytes);
+    }
+
+    @Override
+    public long getPageSize() {
+        return mDelegate.getPageSize();
+    }
+
+    @Override
+    public void setPageSize(long numBytes) {
+        mDelegate.setPageSize(numBytes);
+    }
+
+    @Override
+    public Cursor query(String query) {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.query(query);
+        }
+        long start = System.nanoTime();
+        return new TimedCursor(mDelegate.query(query), query, start);
+    }
+
+    @Override
+    public Cursor query(String query, Object[] bindArgs) {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.query(query, bindArgs);
+        }
+        long start = System.nanoTime();
+        return new TimedCursor(mDelegate.query(query, bindArgs), query, start);
+    }
+
+    @Override
+    public Cursor query(SupportSQLiteQuery query) {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.query(query);
+        }
+        long start = System.nanoTime();
+        return new TimedCursor(mDelegate.query(query), query.getSql(), start);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public Cursor query(SupportSQLiteQuery query, CancellationSignal cancellationSignal) {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.query(query, cancellationSignal);
+        }
+        long start = System.nanoTime();
+        return new TimedCursor(mDelegate.query(query, cancellationSignal), query.getSql(), start);
+    }
+
+    @Override
+    public long insert(String table, int conflictAlgorithm, ContentValues values) throws SQLException {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.insert(table, conflictAlgorithm, values);
+        }
+        long start = System.nanoTime();
+        long id = mDelegate.insert(table, conflictAlgorithm, values);
+        mMetrics.recordStatement("INSERT INTO " + table, System.nanoTime() - start, id == -1 ? 0 : 1);
+        return id;
+    }
+
+    @Override
+    public int delete(String table, String whereClause, Object[] whereArgs) {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.delete(table, whereClause, whereArgs);
+        }
+        long start = System.nanoTime();
+        int deleted = mDelegate.delete(table, whereClause, whereArgs);
+        mMetrics.recordStatement(String.format(Locale.US, "DELETE FROM %s WHERE %s", table, whereClause),
+                System.nanoTime() - start, deleted);
+        return deleted;
+    }
+
+    @Override
+    public int update(String table, int conflictAlgorithm, ContentValues values, String whereClause,
+                      Object[] whereArgs) {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.update(table, conflictAlgorithm, values, whereClause, whereArgs);
+        }
+        long start = System.nanoTime();
+        int updated = mDelegate.update(table, conflictAlgorithm, values, whereClause, whereArgs);
+        mMetrics.recordStatement(String.format(Locale.US, "UPDATE %s WHERE %s", table, whereClause),
+                System.nanoTime() - start, updated);
+        return updated;
+    }
+
+    @Override
+    public void execSQL(String sql) throws SQLException {
+        if(!mMetrics.isEnabled()){
+            mDelegate.execSQL(sql);
+            return;
+        }
+        long start = System.nanoTime();
+        mDelegate.execSQL(sql);
+        mMetrics.recordStatement(sql, System.nanoTime() - start, -1);
+    }
+
+    @Override
+    public void execSQL(String sql, Object[] bindArgs) throws SQLException {
+        if(!mMetrics.isEnabled()){
+            mDelegate.execSQL(sql, bindArgs);
+            return;
+        }
+        long start = System.nanoTime();
+        mDelegate.execSQL(sql, bindArgs);
+        mMetrics.recordStatement(sql, System.nanoTime() - start, -1);
+    }
+
+    @Override
+    public boolean isReadOnly() {
+        return mDelegate.isReadOnly();
+    }
+
+    @Override
+    public boolean isOpen() {
+        return mDelegate.isOpen();
+    }
+
+    @Override
+    public boolean needUpgrade(int newVersion) {
+        return mDelegate.needUpgrade(newVersion);
+    }
+
+    @Override
+    public String getPath() {
+        return mDelegate.getPath();
+    }
+
+    @Override
+    public void setLocale(Locale locale) {
+        mDelegate.setLocale(locale);
+    }
+
+    @Override
+    public void setMaxSqlCacheSize(int cacheSize) {
+        mDelegate.setMaxSqlCacheSize(cacheSize);
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void setForeignKeyConstraintsEnabled(boolean enable) {
+        mDelegate.setForeignKeyConstraintsEnabled(enable);
+    }
+
+    @Override
+    public boolean enableWriteAheadLogging() {
+        return mDelegate.enableWriteAheadLogging();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public void disableWriteAheadLogging() {
+        mDelegate.disableWriteAheadLogging();
+    }
+
+    @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+    @Override
+    public boolean isWriteAheadLoggingEnabled() {
+        return mDelegate.isWriteAheadLoggingEnabled();
+    }
+
+    @Override
+    public List<Pair<String, String>> getAttachedDbs() {
+        return mDelegate.getAttachedDbs();
+    }
+
+    @Override
+    public boolean isDatabaseIntegrityOk() {
+        return mDelegate.isDatabaseIntegrityOk();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDelegate.close();
+    }
+
+    //Records the query when it is closed, once SQLite has actually run it
+    private class TimedCursor extends CursorWrapper {
+
+        private final String mSql;
+        private final long mStart;
+        private boolean mRecorded = false;
+
+        TimedCursor(Cursor cursor, String sql, long start){
+            super(cursor);
+            mSql = sql;
+            mStart = start;
+        }
+
+        @Override
+        public void close() {
+            if(!mRecorded && !isClosed()){
+                mRecorded = true;
+                //Room has read every row by now, so the count is already known
+                mMetrics.recordStatement(mSql, System.nanoTime() - mStart, getCount());
+            }
+            super.close();
+        }
+    }
+}
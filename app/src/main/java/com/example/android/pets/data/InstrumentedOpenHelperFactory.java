@@ -0,0 +1,75 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteOpenHelper;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+
+/**
+ * Wraps another open helper factory so every database it opens reports to a
+ * {@link QueryMetrics}. Room sends all of its queries, writes and transactions through the
+ * helper's database, so this sees everything the DAOs do.
+ */
+public class InstrumentedOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+
+    private final SupportSQLiteOpenHelper.Factory mDelegate;
+    private final QueryMetrics mMetrics;
+
+    public InstrumentedOpenHelperFactory(SupportSQLiteOpenHelper.Factory delegate, QueryMetrics metrics){
+        mDelegate = delegate;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public SupportSQLiteOpenHelper create(SupportSQLiteOpenHelper.Configuration configuration) {
+        return new InstrumentedOpenHelper(mDelegate.create(configuration), mMetrics);
+    }
+
+    private static class InstrumentedOpenHelper implements SupportSQLiteOpenHelper {
+
+        private final SupportSQLiteOpenHelper mDelegate;
+        private final QueryMetrics mMetrics;
+        //The helper hands out the same database every time, so wrap it once
+        private volatile InstrumentedDatabase mDatabase;
+
+        InstrumentedOpenHelper(SupportSQLiteOpenHelper delegate, QueryMetrics metrics){
+            mDelegate = delegate;
+            mMetrics = metrics;
+        }
+
+        @Override
+        public String getDatabaseName() {
+            return mDelegate.getDatabaseName();
+        }
+
+        @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+        @Override
+        public void setWriteAheadLoggingEnabled(boolean enabled) {
+            mDelegate.setWriteAheadLoggingEnabled(enabled);
+        }
+
+        @Override
+        public SupportSQLiteDatabase getWritableDatabase() {
+            return wrap(mDelegate.getWritableDatabase());
+        }
+
+        @Override
+        public SupportSQLiteDatabase getReadableDatabase() {
+            return wrap(mDelegate.getReadableDatabase());
+        }
+
+        @Override
+        public void close() {
+            mDelegate.close();
+        }
+
+        private SupportSQLiteDatabase wrap(SupportSQLiteDatabase database){
+            InstrumentedDatabase wrapped = mDatabase;
+            if(wrapped == null || !wrapped.wraps(database)){
+                wrapped = new InstrumentedDatabase(database, mMetrics);
+                mDatabase = wrapped;
+            }
+            return wrapped;
+        }
+    }
+}
@@ -0,0 +1,113 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteStatement;
+
+import java.io.IOException;
+
+/**
+ * A compiled statement that reports the latency of every execution to a {@link QueryMetrics}.
+ * Room compiles its inserts, updates and deletes once and executes them many times, so each
+ * execution is recorded under the statement's SQL.
+ */
+class InstrumentedStatement implements SupportSQLiteStatement {
+
+    private final SupportSQLiteStatement mDelegate;
+    private final String mSql;
+    private final QueryMetrics mMetrics;
+
+    InstrumentedStatement(SupportSQLiteStatement delegate, String sql, QueryMetrics metrics){
+        mDelegate = delegate;
+        mSql = sql;
+        mMetrics = metrics;
+    }
+
+    @Override
+    public void execute() {
+        if(!mMetrics.isEnabled()){
+            mDelegate.execute();
+            return;
+        }
+        long start = System.nanoTime();
+        mDelegate.execute();
+        mMetrics.recordStatement(mSql, System.nanoTime() - start, -1);
+    }
+
+    @Override
+    public int executeUpdateDelete() {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.executeUpdateDelete();
+        }
+        long start = System.nanoTime();
+        int rows = mDelegate.executeUpdateDelete();
+        mMetrics.recordStatement(mSql, System.nanoTime() - start, rows);
+        return rows;
+    }
+
+    @Override
+    public long executeInsert() {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.executeInsert();
+        }
+        long start = System.nanoTime();
+        long id = mDelegate.executeInsert();
+        mMetrics.recordStatement(mSql, System.nanoTime() - start, id == -1 ? 0 : 1);
+        return id;
+    }
+
+    @Override
+    public long simpleQueryForLong() {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.simpleQueryForLong();
+        }
+        long start = System.nanoTime();
+        long result = mDelegate.simpleQueryForLong();
+        mMetrics.recordStatement(mSql, System.nanoTime() - start, 1);
+        return result;
+    }
+
+    @Override
+    public String simpleQueryForString() {
+        if(!mMetrics.isEnabled()){
+            return mDelegate.simpleQueryForString();
+        }
+        long start = System.nanoTime();
+        String result = mDelegate.simpleQueryForString();
+        mMetrics.recordStatement(mSql, System.nanoTime() - start, 1);
+        return result;
+    }
+
+    @Override
+    public void bindNull(int index) {
+        mDelegate.bindNull(index);
+    }
+
+    @Override
+    public void bindLong(int index, long value) {
+        mDelegate.bindLong(index, value);
+    }
+
+    @Override
+    public void bindDouble(int index, double value) {
+        mDelegate.bindDouble(index, value);
+    }
+
+    @Override
+    public void bindString(int index, String value) {
+        mDelegate.bindString(index, value);
+    }
+
+    @Override
+    public void bindBlob(int index, byte[] value) {
+        mDelegate.bindBlob(index, value);
+    }
+
+    @Override
+    public void clearBindings() {
+        mDelegate.clearBindings();
+    }
+
+    @Override
+    public void close() throws IOException {
+        mDelegate.close();
+    }
+}
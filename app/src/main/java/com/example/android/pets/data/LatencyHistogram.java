@@ -0,0 +1,76 @@
+package com.example.android.pets.data;
+
+import java.util.Locale;
+
+/**
+ * Latency histogram with power-of-two microsecond buckets: bucket 0 counts everything under 1us,
+ * bucket i everything from 2^(i-1) up to 2^i us. Recording is a few arithmetic operations and
+ * the memory is fixed, at the cost of percentiles only being known to within a factor of two.
+ *
+ * Not thread safe, {@link QueryMetrics} guards every histogram with a lock.
+ */
+final class LatencyHistogram {
+
+    //The last bucket also takes everything over 2^30 us, about 18 minutes
+    private static final int BUCKETS = 32;
+
+    private final long[] mCounts = new long[BUCKETS];
+    private long mCount;
+    private long mTotalNanos;
+    private long mMaxNanos;
+
+    void record(long nanos){
+        long micros = nanos / 1000;
+        int bucket = micros == 0 ? 0 : Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKETS - 1);
+        mCounts[bucket]++;
+        mCount++;
+        mTotalNanos += nanos;
+        mMaxNanos = Math.max(mMaxNanos, nanos);
+    }
+
+    long getCount(){
+        return mCount;
+    }
+
+    long getTotalNanos(){
+        return mTotalNanos;
+    }
+
+    /**
+     * @return the upper bound, in microseconds, of the bucket holding the given percentile.
+     */
+    long percentileMicros(double percentile){
+        if(mCount == 0){
+            return 0;
+        }
+        long rank = (long) Math.ceil(percentile / 100 * mCount);
+        long seen = 0;
+        for(int bucket = 0; bucket < BUCKETS; bucket++){
+            seen += mCounts[bucket];
+            if(seen >= rank){
+                return 1L << bucket;
+            }
+        }
+        return 1L << (BUCKETS - 1);
+    }
+
+    void clear(){
+        for(int i = 0; i < BUCKETS; i++){
+            mCounts[i] = 0;
+        }
+        mCount = 0;
+        mTotalNanos = 0;
+        mMaxNanos = 0;
+    }
+
+    //count, mean, p50, p90, p99 and max, all but the count in milliseconds
+    String summary(){
+        return String.format(Locale.US, "n=%d mean=%.2fms p50<=%.2fms p90<=%.2fms p99<=%.2fms max=%.2fms",
+                mCount,
+                mCount == 0 ? 0 : mTotalNanos / 1e6 / mCount,
+                percentileMicros(50) / 1e3,
+                percentileMicros(90) / 1e3,
+                percentileMicros(99) / 1e3,
+                mMaxNanos / 1e6);
+    }
+}
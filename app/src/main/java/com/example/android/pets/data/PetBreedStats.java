@@ -0,0 +1,34 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+/**
+ * Number of pets of one breed, with pets without a breed counted under "". Maintained by the
+ * triggers in {@link PetStatsTriggers}, which also drop a breed once it has no pets left.
+ */
+@Entity(tableName = "pet_stats_breed")
+public class PetBreedStats {
+
+    @PrimaryKey
+    @NonNull
+    private final String breed;
+    @ColumnInfo(name = "pet_count")
+    private final long petCount;
+
+    public PetBreedStats(@NonNull String breed, long petCount){
+        this.breed = breed;
+        this.petCount = petCount;
+    }
+
+    @NonNull
+    public String getBreed() {
+        return breed;
+    }
+
+    public long getPetCount() {
+        return petCount;
+    }
+}
@@ -0,0 +1,168 @@
+package com.example.android.pets.data;
+
+import android.support.annotation.WorkerThread;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Writes many pets at once through the bulk {@link PetDao} methods.
+ *
+ * Inputs are split into chunks of at most chunkSize rows. Each chunk is committed in its own
+ * transaction, which keeps the number of commits low while letting other writers in between
+ * chunks. The chunk size also keeps deletes under SQLite's limit of 999 bound variables. Breed
+ * ids are looked up for the whole input first, outside the chunks' transactions, so a new breed
+ * is added once and cached right away.
+ *
+ * Updated and deleted pets are dropped from the {@link PetCache} as each chunk commits, rather
+ * than written through, so a large import doesn't flush everything else out of it.
+ */
+public class PetBulkWriter {
+
+    /**
+     * What an upsert did with each pet it was given.
+     */
+    public static class UpsertResult {
+
+        private final int inserted;
+        private final int updated;
+        private final int unchanged;
+
+        UpsertResult(int inserted, int updated, int unchanged){
+            this.inserted = inserted;
+            this.updated = updated;
+            this.unchanged = unchanged;
+        }
+
+        public int getInserted() {
+            return inserted;
+        }
+
+        public int getUpdated() {
+            return updated;
+        }
+
+        //Pets whose key existed with exactly the same values, nothing was written for them
+        public int getUnchanged() {
+            return unchanged;
+        }
+
+        @Override
+        public String toString() {
+            return "UpsertResult{inserted=" + inserted + ", updated=" + updated + ", unchanged=" + unchanged + "}";
+        }
+    }
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    private static final int MAX_CHUNK_SIZE = 999;
+
+    private final PetsDatabase mDb;
+    private final int mChunkSize;
+
+    public PetBulkWriter(PetsDatabase database){
+        this(database, DEFAULT_CHUNK_SIZE);
+    }
+
+    public PetBulkWriter(PetsDatabase database, int chunkSize){
+        if(chunkSize <= 0 || chunkSize > MAX_CHUNK_SIZE){
+            throw new IllegalArgumentException("chunkSize must be between 1 and " + MAX_CHUNK_SIZE);
+        }
+        mDb = database;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * @return the generated id of every pet, in the same order as the input.
+     */
+    @WorkerThread
+    public long[] insertPets(List<PetEntry> petEntries){
+        mDb.breeds().assignIds(petEntries);
+        long[] ids = new long[petEntries.size()];
+        for(int start = 0; start < petEntries.size(); start += mChunkSize){
+            int end = Math.min(start + mChunkSize, petEntries.size());
+            long[] chunkIds = mDb.petDao().insertPets(petEntries.subList(start, end));
+            System.arraycopy(chunkIds, 0, ids, start, chunkIds.length);
+        }
+        return ids;
+    }
+
+    /**
+     * Inserts or updates pets by their external key, so feeding the same records in again is
+     * idempotent. Each chunk is inserted with INSERT OR IGNORE, and only the pets whose key
+     * already existed are then updated, in the same transaction and only if a value differs. No
+     * lookup runs before the inserts. Pets without an external key are always inserted.
+     */
+    @WorkerThread
+    public UpsertResult upsertPets(List<PetEntry> petEntries){
+        mDb.breeds().assignIds(petEntries);
+        final int[] counts = new int[3];
+        for(int start = 0; start < petEntries.size(); start += mChunkSize){
+            int end = Math.min(start + mChunkSize, petEntries.size());
+            final List<PetEntry> chunk = petEntries.subList(start, end);
+            final int[] chunkUpdated = new int[1];
+            mDb.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    PetDao dao = mDb.petDao();
+                    long[] ids = dao.insertPetsIfAbsent(chunk);
+                    List<PetEntry> existing = new ArrayList<>();
+                    for(int i = 0; i < ids.length; i++){
+                        if(ids[i] == -1){
+                            existing.add(chunk.get(i));
+                        }
+                    }
+                    counts[0] += ids.length - existing.size();
+                    for(PetEntry petEntry : existing){
+                        chunkUpdated[0] += dao.updatePetByExternalKeyIfChanged(petEntry.getExternalKey(),
+                                petEntry.getName(), petEntry.getBreedId(), petEntry.getGender(), petEntry.getWeight());
+                    }
+                    counts[2] += existing.size() - chunkUpdated[0];
+                }
+            });
+            counts[1] += chunkUpdated[0];
+            //Updated pets are only known by key here, the change log knows their ids
+            if(chunkUpdated[0] > 0){
+                mDb.petCache().evictChanged();
+            }
+        }
+        return new UpsertResult(counts[0], counts[1], counts[2]);
+    }
+
+    /**
+     * @return the number of rows updated.
+     * @throws android.database.sqlite.SQLiteConstraintException if a pet takes an external key
+     *         another pet already has. Chunks before the one it is in stay committed.
+     */
+    @WorkerThread
+    public int updatePets(List<PetEntry> petEntries){
+        mDb.breeds().assignIds(petEntries);
+        int updated = 0;
+        for(int start = 0; start < petEntries.size(); start += mChunkSize){
+            int end = Math.min(start + mChunkSize, petEntries.size());
+            List<PetEntry> chunk = petEntries.subList(start, end);
+            updated += mDb.petDao().updatePets(chunk);
+            for(PetEntry petEntry : chunk){
+                mDb.petCache().remove(petEntry.getId());
+            }
+        }
+        return updated;
+    }
+
+    /**
+     * @return the number of rows deleted.
+     */
+    @WorkerThread
+    public int deletePetsByIds(List<Integer> ids){
+        int deleted = 0;
+        for(int start = 0; start < ids.size(); start += mChunkSize){
+            int end = Math.min(start + mChunkSize, ids.size());
+            List<Integer> chunk = ids.subList(start, end);
+            deleted += mDb.petDao().deletePetsByIds(chunk);
+            for(Integer id : chunk){
+                mDb.petCache().remove(id);
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,213 @@
+package com.example.android.pets.data;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MediatorLiveData;
+import android.arch.lifecycle.Observer;
+import android.arch.persistence.room.InvalidationTracker;
+import android.os.AsyncTask;
+import android.support.annotation.MainThread;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.LruCache;
+
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Read-through LRU cache of full pets by id, in front of
+ * {@link PetDao#loadPetSnapshotById(int)}. Only whole pets are cached: the editor's reads and
+ * {@link PetWriteQueue}'s writes fill it, the catalog reads list items and doesn't.
+ *
+ * Each entry remembers the change log sequence number it is current at (see
+ * {@link PetSnapshot}), and that is what keeps it correct:
+ * - Whenever Room reports the pet table changed, whoever changed it, the pets the change log
+ *   recorded since the last time are evicted, unless their entry is already newer than the
+ *   change. Room only reports changes per table, the change log says which pets.
+ * - A pet read before a write committed has a number below that write's entry, so it is either
+ *   evicted when the write is processed or, arriving after that, not cached at all.
+ * - The app's own write paths evict or write through right after they commit. Invalidation is
+ *   delivered asynchronously after the commit, and this means a read in that gap never sees
+ *   the old row.
+ *
+ * Entries are copied in and out, so callers can't change what's cached.
+ */
+public class PetCache {
+
+    public static final int DEFAULT_MAX_SIZE = 100;
+
+    private static final String TABLE_PET = "pet";
+
+    //Changes read from the log at once while evicting
+    private static final int EVICT_BATCH_SIZE = 500;
+
+    //mSeq before the cache has read where the change log is
+    private static final long SEQ_UNKNOWN = -1;
+
+    private final PetsDatabase mDb;
+    //Guarded by this
+    private final LruCache<Integer, CachedPet> mCache;
+    //The change log entry up to which pets have been evicted, guarded by this
+    private long mSeq = SEQ_UNKNOWN;
+    //Held while reading the change log, so evictions are applied in order
+    private final Object mEvictLock = new Object();
+
+    private final InvalidationTracker.Observer mObserver =
+            new InvalidationTracker.Observer(new String[]{TABLE_PET}) {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    evictChanged();
+                }
+            };
+
+    PetCache(PetsDatabase database, int maxSize){
+        mDb = database;
+        mCache = new LruCache<>(maxSize);
+        //Both touch the database, so keep them off the calling thread
+        AsyncTask.THREAD_POOL_EXECUTOR.execute(new Runnable() {
+            @Override
+            public void run() {
+                synchronized (mEvictLock){
+                    Long latest = mDb.petDao().loadLatestChangeSeq();
+                    synchronized (PetCache.this){
+                        mSeq = latest == null ? 0 : latest;
+                    }
+                }
+                mDb.getInvalidationTracker().addObserver(mObserver);
+            }
+        });
+    }
+
+    /**
+     * Returns the pet with the given id, and again every time it changes. A cached pet is emitted
+     * straight away, without waiting for the database. The pet is loaded through the DAO either
+     * way, and cached when it arrives.
+     */
+    @MainThread
+    public LiveData<PetEntry> loadPetById(int id){
+        final MediatorLiveData<PetEntry> result = new MediatorLiveData<>();
+        PetEntry cached = get(id);
+        if(cached != null){
+            result.setValue(cached);
+        }
+        result.addSource(mDb.petDao().loadPetSnapshotById(id), new Observer<PetSnapshot>() {
+            @Override
+            public void onChanged(@Nullable PetSnapshot snapshot) {
+                if(snapshot == null){
+                    result.setValue(null);
+                    return;
+                }
+                Long seq = snapshot.getChangeSeq();
+                put(snapshot.getPet(), seq == null ? 0 : seq);
+                result.setValue(snapshot.getPet());
+            }
+        });
+        return mDb.breeds().withPetName(result);
+    }
+
+    @Nullable
+    private synchronized PetEntry get(int id){
+        CachedPet cached = mCache.get(id);
+        return cached == null ? null : new PetEntry(cached.pet);
+    }
+
+    /**
+     * Write-through for a pet that was just inserted or updated and committed.
+     *
+     * @param seq the newest change log entry when the write committed, read in its transaction
+     */
+    synchronized void put(PetEntry petEntry, long seq){
+        //A pet older than evictions already made may have missed one of them
+        if(mSeq == SEQ_UNKNOWN || seq < mSeq){
+            return;
+        }
+        mCache.put(petEntry.getId(), new CachedPet(new PetEntry(petEntry), seq));
+    }
+
+    /**
+     * Write-through for a pet that was just deleted, or changed in a way not worth caching.
+     */
+    synchronized void remove(int id){
+        mCache.remove(id);
+    }
+
+    /**
+     * Write-through for a write that emptied the table.
+     */
+    synchronized void clear(){
+        mCache.evictAll();
+    }
+
+    /**
+     * Evicts every pet the change log recorded a write for since the last call. Called when Room
+     * reports the table changed, and by write paths that changed pets they only know by key
+     * right after they commit.
+     */
+    @WorkerThread
+    void evictChanged(){
+        synchronized (mEvictLock){
+            long seq;
+            synchronized (this){
+                seq = mSeq;
+            }
+            if(seq == SEQ_UNKNOWN){
+                return;
+            }
+            List<PetChangeLogEntry> changes;
+            do {
+                changes = mDb.petDao().loadChangesSince(seq, EVICT_BATCH_SIZE);
+                if(changes.isEmpty()){
+                    return;
+                }
+                synchronized (this){
+                    if(changes.get(0).getSeq() > seq + 1){
+                        //Entries this cache never read were pruned, any pet may have changed
+                        mCache.evictAll();
+                    }else{
+                        for(PetChangeLogEntry change : changes){
+                            evictOlderThan(change.getPetId(), change.getSeq());
+                        }
+                    }
+                    seq = changes.get(changes.size() - 1).getSeq();
+                    mSeq = seq;
+                }
+            } while(changes.size() == EVICT_BATCH_SIZE);
+        }
+    }
+
+    //Guarded by this
+    private void evictOlderThan(int id, long seq){
+        CachedPet cached = mCache.remove(id);
+        if(cached != null && cached.seq >= seq){
+            //Already written through with this change or a later one
+            mCache.put(id, cached);
+        }
+    }
+
+    public synchronized int getHitCount(){
+        return mCache.hitCount();
+    }
+
+    public synchronized int getMissCount(){
+        return mCache.missCount();
+    }
+
+    public synchronized int getSize(){
+        return mCache.size();
+    }
+
+    public int getMaxSize(){
+        return mCache.maxSize();
+    }
+
+    private static final class CachedPet {
+
+        final PetEntry pet;
+        final long seq;
+
+        CachedPet(PetEntry pet, long seq){
+            this.pet = pet;
+            this.seq = seq;
+        }
+    }
+}
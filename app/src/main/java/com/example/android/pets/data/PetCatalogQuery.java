@@ -0,0 +1,285 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.support.annotation.Nullable;
+import android.support.v4.util.ObjectsCompat;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Sort order and filters of the catalog, turned into SQL so SQLite does the sorting and filtering
+ * through the indexes declared on {@link PetEntry}.
+ *
+ * Pages are fetched with keyset paging on (sort column, id): the next page starts right after
+ * the last row already loaded. Its condition leads with a plain bound on the sort column, so
+ * SQLite seeks the column's index to the anchor instead of scanning every row before it, and a
+ * deep page costs about the same as the first one. Instances are immutable, use the with*
+ * methods to derive a changed query.
+ *
+ * Sorting by breed sorts by the breed's name, joined in from the breed table. The join is only
+ * made for that sort order, the others read the pet table alone.
+ */
+public final class PetCatalogQuery {
+
+    /**
+     * Possible sort orders of the catalog. Sorting by id lists pets in the order they were added.
+     */
+    public static final int SORT_BY_ID = 0;
+    public static final int SORT_BY_NAME = 1;
+    public static final int SORT_BY_BREED = 2;
+    public static final int SORT_BY_WEIGHT = 3;
+
+    public static final PetCatalogQuery DEFAULT = new PetCatalogQuery(SORT_BY_ID, null, null, null);
+
+    //Columns are qualified, as the breed sort joins a table that also has an id and a name
+    private static final String SELECT = "SELECT pet.id, pet.name, pet.breed_id, pet.weight, pet.photo_path FROM pet";
+    private static final String JOIN_BREED = " JOIN breed ON breed.id = pet.breed_id";
+
+    //Which side of the anchor row a page is read from
+    private static final int PAGE_FIRST = 0;
+    private static final int PAGE_AFTER = 1;
+    private static final int PAGE_BEFORE = 2;
+    private static final int PAGE_FROM = 3;
+
+    private final int sortBy;
+    private final Integer gender;
+    private final Integer minWeight;
+    private final Integer maxWeight;
+
+    private PetCatalogQuery(int sortBy, Integer gender, Integer minWeight, Integer maxWeight){
+        this.sortBy = sortBy;
+        this.gender = gender;
+        this.minWeight = minWeight;
+        this.maxWeight = maxWeight;
+    }
+
+    public int getSortBy() {
+        return sortBy;
+    }
+
+    /**
+     * @return the gender pets must have, or null to show every gender.
+     */
+    @Nullable
+    public Integer getGender() {
+        return gender;
+    }
+
+    @Nullable
+    public Integer getMinWeight() {
+        return minWeight;
+    }
+
+    @Nullable
+    public Integer getMaxWeight() {
+        return maxWeight;
+    }
+
+    public PetCatalogQuery withSortBy(int sortBy){
+        if(sortBy < SORT_BY_ID || sortBy > SORT_BY_WEIGHT){
+            throw new IllegalArgumentException("Unknown sort order " + sortBy);
+        }
+        return new PetCatalogQuery(sortBy, gender, minWeight, maxWeight);
+    }
+
+    public PetCatalogQuery withGender(@Nullable Integer gender){
+        return new PetCatalogQuery(sortBy, gender, minWeight, maxWeight);
+    }
+
+    /**
+     * @param minWeight lowest weight to show, inclusive, or null for no lower bound
+     * @param maxWeight highest weight to show, inclusive, or null for no upper bound
+     */
+    public PetCatalogQuery withWeightRange(@Nullable Integer minWeight, @Nullable Integer maxWeight){
+        return new PetCatalogQuery(sortBy, gender, minWeight, maxWeight);
+    }
+
+    /**
+     * @return the first page of the catalog.
+     */
+    SupportSQLiteQuery first(int limit){
+        return build(PAGE_FIRST, null, limit);
+    }
+
+    /**
+     * @return the page that follows the given row.
+     */
+    SupportSQLiteQuery after(PetListItem last, int limit){
+        return build(PAGE_AFTER, last, limit);
+    }
+
+    /**
+     * @return the page that precedes the given row, in reverse order.
+     */
+    SupportSQLiteQuery before(PetListItem first, int limit){
+        return build(PAGE_BEFORE, first, limit);
+    }
+
+    /**
+     * @return the page that starts with the given row, included.
+     */
+    SupportSQLiteQuery from(PetListItem first, int limit){
+        return build(PAGE_FROM, first, limit);
+    }
+
+    private SupportSQLiteQuery build(int page, @Nullable PetListItem anchor, int limit){
+        List<String> filters = new ArrayList<>();
+        List<Object> filterArgs = new ArrayList<>();
+
+        if(gender != null){
+            filters.add("pet.gender = ?");
+            filterArgs.add(gender);
+        }
+        if(minWeight != null){
+            filters.add("pet.weight >= ?");
+            filterArgs.add(minWeight);
+        }
+        if(maxWeight != null){
+            filters.add("pet.weight <= ?");
+            filterArgs.add(maxWeight);
+        }
+        List<KeyRange> ranges = anchor != null
+                ? keyRanges(page, anchor)
+                : Collections.singletonList(new KeyRange(null));
+
+        //A page spanning two ranges reads each one through the index, and SQLite merges them in order
+        StringBuilder sql = new StringBuilder();
+        List<Object> args = new ArrayList<>();
+        for(int r = 0; r < ranges.size(); r++){
+            KeyRange range = ranges.get(r);
+            List<String> where = new ArrayList<>(filters);
+            if(range.condition != null){
+                where.add(range.condition);
+            }
+            if(r > 0){
+                sql.append(" UNION ALL ");
+            }
+            sql.append(SELECT);
+            if(sortBy == SORT_BY_BREED){
+                sql.append(JOIN_BREED);
+            }
+            for(int i = 0; i < where.size(); i++){
+                sql.append(i == 0 ? " WHERE " : " AND ").append(where.get(i));
+            }
+            args.addAll(filterArgs);
+            Collections.addAll(args, range.args);
+        }
+
+        //A compound select can only be ordered by its result columns, which aren't qualified
+        boolean compound = ranges.size() > 1;
+        String direction = page == PAGE_BEFORE ? " DESC" : "";
+        String column = sortColumn();
+        sql.append(" ORDER BY ");
+        if(column != null){
+            sql.append(compound ? "name" : column).append(direction).append(", ");
+        }
+        sql.append(compound ? "id" : "pet.id").append(direction).append(" LIMIT ?");
+        args.add(limit);
+
+        return new SimpleSQLiteQuery(sql.toString(), args.toArray());
+    }
+
+    //Rows strictly after, strictly before, or from the anchor in (sort column, id) order.
+    //Each range starts with a bound SQLite can seek the sort column's index to, an OR across
+    //the whole key would make it scan the index from the start instead. SQLite sorts NULL
+    //before every value, and only a pet's name can be NULL, so only the name sort has a second
+    //range for the NULL names.
+    private List<KeyRange> keyRanges(int page, PetListItem anchor){
+        String idOperator = page == PAGE_AFTER ? ">" : page == PAGE_BEFORE ? "<" : ">=";
+        String column = sortColumn();
+        if(column == null){
+            return Collections.singletonList(new KeyRange("pet.id " + idOperator + " ?", anchor.getId()));
+        }
+
+        Object value = sortValue(anchor);
+        boolean nullable = sortBy == SORT_BY_NAME;
+        if(value == null){
+            KeyRange nulls = new KeyRange(column + " IS NULL AND pet.id " + idOperator + " ?", anchor.getId());
+            if(page == PAGE_BEFORE){
+                return Collections.singletonList(nulls);
+            }
+            return Arrays.asList(nulls, new KeyRange(column + " IS NOT NULL"));
+        }
+
+        if(page == PAGE_BEFORE){
+            KeyRange values = new KeyRange(column + " <= ? AND (" + column + " < ? OR pet.id < ?)",
+                    value, value, anchor.getId());
+            if(nullable){
+                return Arrays.asList(values, new KeyRange(column + " IS NULL"));
+            }
+            return Collections.singletonList(values);
+        }
+        return Collections.singletonList(new KeyRange(
+                column + " >= ? AND (" + column + " > ? OR pet.id " + idOperator + " ?)",
+                value, value, anchor.getId()));
+    }
+
+    @Nullable
+    private String sortColumn(){
+        switch (sortBy){
+            case SORT_BY_NAME:
+                return "pet.name";
+            case SORT_BY_BREED:
+                return "breed.name";
+            case SORT_BY_WEIGHT:
+                return "pet.weight";
+            default:
+                return null;
+        }
+    }
+
+    @Nullable
+    private Object sortValue(PetListItem item){
+        switch (sortBy){
+            case SORT_BY_NAME:
+                return item.getName();
+            case SORT_BY_BREED:
+                return item.getBreed();
+            case SORT_BY_WEIGHT:
+                return item.getWeight();
+            default:
+                return item.getId();
+        }
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PetCatalogQuery other = (PetCatalogQuery) o;
+        return sortBy == other.sortBy
+                && ObjectsCompat.equals(gender, other.gender)
+                && ObjectsCompat.equals(minWeight, other.minWeight)
+                && ObjectsCompat.equals(maxWeight, other.maxWeight);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = sortBy;
+        result = 31 * result + (gender != null ? gender.hashCode() : 0);
+        result = 31 * result + (minWeight != null ? minWeight.hashCode() : 0);
+        result = 31 * result + (maxWeight != null ? maxWeight.hashCode() : 0);
+        return result;
+    }
+
+    //One range of rows a page is read from, and the args of its condition
+    private static final class KeyRange {
+
+        //Null for the whole table
+        final String condition;
+        final Object[] args;
+
+        KeyRange(@Nullable String condition, Object... args){
+            this.condition = condition;
+            this.args = args;
+        }
+    }
+}
@@ -0,0 +1,43 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+/**
+ * How far one named consumer has read the change log. The log is only pruned up to the oldest
+ * acknowledged change, or past it once changes get too old, in which case the consumers that
+ * missed them are told to resync. See {@link PetChangeFeed}.
+ */
+@Entity(tableName = "pet_changelog_consumer")
+public class PetChangeConsumer {
+
+    @PrimaryKey
+    @NonNull
+    private final String name;
+    @ColumnInfo(name = "acked_seq")
+    private final long ackedSeq;
+    //Set when the consumer has to read the whole pet table before it can follow the log again
+    @ColumnInfo(name = "resync_required")
+    private final boolean resyncRequired;
+
+    public PetChangeConsumer(@NonNull String name, long ackedSeq, boolean resyncRequired){
+        this.name = name;
+        this.ackedSeq = ackedSeq;
+        this.resyncRequired = resyncRequired;
+    }
+
+    @NonNull
+    public String getName() {
+        return name;
+    }
+
+    public long getAckedSeq() {
+        return ackedSeq;
+    }
+
+    public boolean isResyncRequired() {
+        return resyncRequired;
+    }
+}
@@ -0,0 +1,149 @@
+package com.example.android.pets.data;
+
+import android.support.annotation.WorkerThread;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.Callable;
+
+/**
+ * Reads the pet change log for one named consumer, so it only has to process what changed since
+ * it last looked instead of re-reading every pet.
+ *
+ * A consumer calls {@link #next(int)}, applies the changes, and acknowledges them with
+ * {@link #ack(Batch)}. Acknowledged changes are what {@link #compact(PetsDatabase, long)} may
+ * prune. A batch that asks for a resync means changes the consumer never read were pruned, or
+ * that the consumer is new: it has to read the whole pet table, then acknowledge the batch and
+ * carry on from there. Changes made while it reads the table are delivered again afterwards, so
+ * applying a change must be idempotent.
+ *
+ * {@link PetDao#observeLatestChangeSeq()} tells when there is something new to read.
+ */
+public class PetChangeFeed {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    //Consumers that don't read the log for this long have to resync
+    public static final long DEFAULT_MAX_AGE_MS = 7L * 24 * 60 * 60 * 1000;
+
+    /**
+     * The changes one call to {@link #next(int)} found, oldest first.
+     */
+    public static class Batch {
+
+        private final List<PetChangeLogEntry> changes;
+        private final boolean resyncRequired;
+        private final long ackSeq;
+
+        Batch(List<PetChangeLogEntry> changes, boolean resyncRequired, long ackSeq){
+            this.changes = changes;
+            this.resyncRequired = resyncRequired;
+            this.ackSeq = ackSeq;
+        }
+
+        //Empty when a resync is required
+        public List<PetChangeLogEntry> getChanges() {
+            return changes;
+        }
+
+        public boolean isResyncRequired() {
+            return resyncRequired;
+        }
+
+        /**
+         * @return the sequence number the consumer is at once it has processed this batch.
+         */
+        public long getAckSeq() {
+            return ackSeq;
+        }
+    }
+
+    private final PetsDatabase mDb;
+    private final String mConsumer;
+
+    public PetChangeFeed(PetsDatabase database, String consumer){
+        mDb = database;
+        mConsumer = consumer;
+    }
+
+    /**
+     * Returns up to limit changes after the last acknowledged one, without acknowledging them.
+     * Registers the consumer on its first call, which then asks for a resync.
+     */
+    @WorkerThread
+    public Batch next(final int limit){
+        return mDb.runInTransaction(new Callable<Batch>() {
+            @Override
+            public Batch call() {
+                PetDao dao = mDb.petDao();
+                PetChangeConsumer consumer = dao.loadChangeConsumer(mConsumer);
+                if(consumer == null){
+                    consumer = new PetChangeConsumer(mConsumer, latestSeq(dao), true);
+                    dao.insertChangeConsumer(consumer);
+                }
+                if(consumer.isResyncRequired()){
+                    //Everything up to now is covered by reading the table
+                    return new Batch(Collections.<PetChangeLogEntry>emptyList(), true, latestSeq(dao));
+                }
+                List<PetChangeLogEntry> changes = dao.loadChangesSince(consumer.getAckedSeq(), limit);
+                long ackSeq = changes.isEmpty()
+                        ? consumer.getAckedSeq() : changes.get(changes.size() - 1).getSeq();
+                return new Batch(changes, false, ackSeq);
+            }
+        });
+    }
+
+    /**
+     * Marks a batch as processed, or a resync as done.
+     */
+    @WorkerThread
+    public void ack(Batch batch){
+        if(batch.isResyncRequired()){
+            mDb.petDao().completeChangeResync(mConsumer, batch.getAckSeq());
+        }else{
+            //Leaves a resync that compaction asked for in the meantime in place
+            mDb.petDao().ackChanges(mConsumer, batch.getAckSeq());
+        }
+    }
+
+    /**
+     * Forgets the consumer, so it no longer holds back compaction.
+     */
+    @WorkerThread
+    public void unregister(){
+        mDb.petDao().deleteChangeConsumer(mConsumer);
+    }
+
+    /**
+     * Prunes the change log: every change all consumers acknowledged, and every change older than
+     * maxAgeMs whoever still needs it. Consumers that lose changes this way are asked to resync.
+     * The newest change is always kept, so sequence numbers keep growing.
+     *
+     * @return the number of changes pruned.
+     */
+    @WorkerThread
+    public static int compact(final PetsDatabase database, final long maxAgeMs){
+        return database.runInTransaction(new Callable<Integer>() {
+            @Override
+            public Integer call() {
+                PetDao dao = database.petDao();
+                int deleted = 0;
+                Long minAckedSeq = dao.loadMinAckedSeq();
+                if(minAckedSeq != null){
+                    deleted += dao.deleteChangesThrough(minAckedSeq);
+                }
+                Long expiredSeq = dao.loadLastChangeSeqBefore(System.currentTimeMillis() - maxAgeMs);
+                if(expiredSeq != null){
+                    dao.requireChangeResyncBefore(expiredSeq);
+                    deleted += dao.deleteChangesThrough(expiredSeq);
+                }
+                return deleted;
+            }
+        });
+    }
+
+    private static long latestSeq(PetDao dao){
+        Long seq = dao.loadLatestChangeSeq();
+        return seq == null ? 0 : seq;
+    }
+}
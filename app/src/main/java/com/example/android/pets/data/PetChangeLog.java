@@ -0,0 +1,46 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+
+/**
+ * Triggers that record every insert, update and delete on the pet table in pet_changelog, so
+ * consumers can read what changed instead of the whole table. Like the search index's and the
+ * statistics' triggers, every write path is recorded without knowing about it, and they are
+ * created from {@link PetsDatabase}'s callback and migrations.
+ */
+final class PetChangeLog {
+
+    static final String TABLE_NAME = "pet_changelog";
+
+    //Milliseconds since the epoch, SQLite has no direct way to get them
+    private static final String NOW_MILLIS = "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)";
+
+    private static final String CREATE_INSERT_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS pet_changelog_after_insert AFTER INSERT ON pet BEGIN "
+                    + record(PetChangeLogEntry.OP_INSERT, "NEW.id") + "END";
+
+    private static final String CREATE_UPDATE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS pet_changelog_after_update AFTER UPDATE ON pet BEGIN "
+                    + record(PetChangeLogEntry.OP_UPDATE, "NEW.id") + "END";
+
+    private static final String CREATE_DELETE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS pet_changelog_after_delete AFTER DELETE ON pet BEGIN "
+                    + record(PetChangeLogEntry.OP_DELETE, "OLD.id") + "END";
+
+    private PetChangeLog(){
+    }
+
+    private static String record(int op, String petId){
+        return "INSERT INTO " + TABLE_NAME + "(op, pet_id, changed_at) "
+                + "VALUES (" + op + ", " + petId + ", " + NOW_MILLIS + "); ";
+    }
+
+    /**
+     * Creates the triggers. The tables themselves are Room's.
+     */
+    static void create(SupportSQLiteDatabase db){
+        db.execSQL(CREATE_INSERT_TRIGGER);
+        db.execSQL(CREATE_UPDATE_TRIGGER);
+        db.execSQL(CREATE_DELETE_TRIGGER);
+    }
+}
@@ -0,0 +1,56 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * One write to the pet table, as recorded by the triggers in {@link PetChangeLog}.
+ *
+ * The sequence number only ever grows, also across pruning, so a consumer can remember the last
+ * one it processed and ask for everything after it. Read the feed through {@link PetChangeFeed}.
+ */
+@Entity(tableName = "pet_changelog")
+public class PetChangeLogEntry {
+
+    public static final int OP_INSERT = 1;
+    public static final int OP_UPDATE = 2;
+    public static final int OP_DELETE = 3;
+
+    @PrimaryKey(autoGenerate = true)
+    private final long seq;
+    private final int op;
+    @ColumnInfo(name = "pet_id")
+    private final int petId;
+    //Milliseconds since the epoch, UTC
+    @ColumnInfo(name = "changed_at")
+    private final long changedAt;
+
+    public PetChangeLogEntry(long seq, int op, int petId, long changedAt){
+        this.seq = seq;
+        this.op = op;
+        this.petId = petId;
+        this.changedAt = changedAt;
+    }
+
+    public long getSeq() {
+        return seq;
+    }
+
+    public int getOp() {
+        return op;
+    }
+
+    public int getPetId() {
+        return petId;
+    }
+
+    public long getChangedAt() {
+        return changedAt;
+    }
+
+    @Override
+    public String toString() {
+        return "PetChangeLogEntry{seq=" + seq + ", op=" + op + ", petId=" + petId + ", changedAt=" + changedAt + "}";
+    }
+}
@@ -0,0 +1,173 @@
+package com.example.android.pets.data;
+
+import android.content.ContentValues;
+import android.database.sqlite.SQLiteDatabase;
+import android.support.annotation.Nullable;
+
+/**
+ * The fields of one existing pet that were edited, with their new values.
+ *
+ * Written with {@link PetWriteQueue#updatePetFields(PetChanges, PetWriteQueue.WriteCallback)},
+ * which only updates the columns set here instead of replacing the whole row. Besides writing
+ * less, this keeps the triggers on pet that watch other columns from firing: a new weight leaves
+ * the search index alone, a new name leaves the statistics alone.
+ */
+public class PetChanges {
+
+    private static final String TABLE_PET = "pet";
+
+    private static final int FIELD_NAME = 1;
+    private static final int FIELD_BREED = 1 << 1;
+    private static final int FIELD_GENDER = 1 << 2;
+    private static final int FIELD_WEIGHT = 1 << 3;
+    private static final int FIELD_PHOTO_PATH = 1 << 4;
+
+    private final int mPetId;
+    //The FIELD_* flags of the fields that were set
+    private int mChanged = 0;
+    private String mName;
+    private String mBreed;
+    private int mGender;
+    private int mWeight;
+    private String mPhotoPath;
+
+    public PetChanges(int petId){
+        mPetId = petId;
+    }
+
+    public int getPetId() {
+        return mPetId;
+    }
+
+    public PetChanges setName(@Nullable String name){
+        mName = name;
+        mChanged |= FIELD_NAME;
+        return this;
+    }
+
+    public PetChanges setBreed(@Nullable String breed){
+        mBreed = breed;
+        mChanged |= FIELD_BREED;
+        return this;
+    }
+
+    public PetChanges setGender(int gender){
+        mGender = gender;
+        mChanged |= FIELD_GENDER;
+        return this;
+    }
+
+    public PetChanges setWeight(int weight){
+        mWeight = weight;
+        mChanged |= FIELD_WEIGHT;
+        return this;
+    }
+
+    public PetChanges setPhotoPath(@Nullable String photoPath){
+        mPhotoPath = photoPath;
+        mChanged |= FIELD_PHOTO_PATH;
+        return this;
+    }
+
+    /**
+     * @return true if no field was set, so there is nothing to write.
+     */
+    public boolean isEmpty(){
+        return mChanged == 0;
+    }
+
+    /**
+     * Takes over the fields set in newer changes to the same pet, which win over the ones set
+     * here.
+     */
+    void mergeFrom(PetChanges newer){
+        if((newer.mChanged & FIELD_NAME) != 0){
+            setName(newer.mName);
+        }
+        if((newer.mChanged & FIELD_BREED) != 0){
+            setBreed(newer.mBreed);
+        }
+        if((newer.mChanged & FIELD_GENDER) != 0){
+            setGender(newer.mGender);
+        }
+        if((newer.mChanged & FIELD_WEIGHT) != 0){
+            setWeight(newer.mWeight);
+        }
+        if((newer.mChanged & FIELD_PHOTO_PATH) != 0){
+            setPhotoPath(newer.mPhotoPath);
+        }
+    }
+
+    /**
+     * Sets the changed fields on a full pet, e.g. one whose full update is still waiting.
+     */
+    void applyTo(PetEntry petEntry){
+        if((mChanged & FIELD_NAME) != 0){
+            petEntry.setName(mName);
+        }
+        if((mChanged & FIELD_BREED) != 0){
+            petEntry.setBreed(mBreed);
+        }
+        if((mChanged & FIELD_GENDER) != 0){
+            petEntry.setGender(mGender);
+        }
+        if((mChanged & FIELD_WEIGHT) != 0){
+            petEntry.setWeight(mWeight);
+        }
+        if((mChanged & FIELD_PHOTO_PATH) != 0){
+            petEntry.setPhotoPath(mPhotoPath);
+        }
+    }
+
+    /**
+     * Runs a single UPDATE of the changed columns, so the triggers on pet fire once for the whole
+     * edit rather than once per column. Call it inside a transaction, e.g. PetWriteQueue's, so
+     * Room tells its observers about the change when it commits.
+     *
+     * @return the number of pets updated, 0 if the pet doesn't exist.
+     */
+    int writeTo(PetsDatabase database){
+        if(mChanged == 0){
+            return 0;
+        }
+        ContentValues values = new ContentValues();
+        if((mChanged & FIELD_NAME) != 0){
+            values.put("name", mName);
+        }
+        if((mChanged & FIELD_BREED) != 0){
+            values.put("breed_id", database.breeds().idOf(mBreed));
+        }
+        if((mChanged & FIELD_GENDER) != 0){
+            values.put("gender", mGender);
+        }
+        if((mChanged & FIELD_WEIGHT) != 0){
+            values.put("weight", mWeight);
+        }
+        if((mChanged & FIELD_PHOTO_PATH) != 0){
+            values.put("photo_path", mPhotoPath);
+        }
+        return database.getOpenHelper().getWritableDatabase().update(TABLE_PET,
+                SQLiteDatabase.CONFLICT_NONE, values, "id = ?", new Object[]{mPetId});
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder changes = new StringBuilder("PetChanges{id=").append(mPetId);
+        if((mChanged & FIELD_NAME) != 0){
+            changes.append(", name=").append(mName);
+        }
+        if((mChanged & FIELD_BREED) != 0){
+            changes.append(", breed=").append(mBreed);
+        }
+        if((mChanged & FIELD_GENDER) != 0){
+            changes.append(", gender=").append(mGender);
+        }
+        if((mChanged & FIELD_WEIGHT) != 0){
+            changes.append(", weight=").append(mWeight);
+        }
+        if((mChanged & FIELD_PHOTO_PATH) != 0){
+            changes.append(", photoPath=").append(mPhotoPath);
+        }
+        return changes.append('}').toString();
+    }
+}
@@ -1,10 +1,12 @@
 package com.example.android.pets.data;
 
 import android.arch.lifecycle.LiveData;
+import android.arch.persistence.db.SupportSQLiteQuery;
 import android.arch.persistence.room.Dao;
 import android.arch.persistence.room.Insert;
 import android.arch.persistence.room.OnConflictStrategy;
 import android.arch.persistence.room.Query;
+import android.arch.persistence.room.RawQuery;
 import android.arch.persistence.room.Update;
 
 import java.util.List;
@@ -20,12 +22,42 @@ public interface PetDao {
     @Insert
     long insertPet(PetEntry petEntry);
 
-    @Update(onConflict = OnConflictStrategy.REPLACE)
+    //Default ABORT strategy: REPLACE would delete another pet holding the same external_key,
+    //and that delete runs none of the pet table's triggers
+    @Update
     int updatePet(PetEntry petEntry);
 
     @Query("DELETE FROM pet WHERE id = :id")
     int deletePet(int id);
 
+    //Edits that only touched some fields are written by PetChanges, in one UPDATE of just those
+    //columns. This one changes a single column in place, e.g. for benchmarks editing many pets.
+    @Query("UPDATE pet SET weight = :weight WHERE id = :id")
+    int updatePetWeight(int id, int weight);
+
+    //Bulk variants. Room runs each of these calls in a single transaction, so a list of pets
+    //costs one commit instead of one per row. Use PetBulkWriter for large inputs, it splits
+    //them into chunks so the write lock is never held for too long.
+    @Insert
+    long[] insertPets(List<PetEntry> petEntries);
+
+    @Update
+    int updatePets(List<PetEntry> petEntries);
+
+    @Query("DELETE FROM pet WHERE id IN (:ids)")
+    int deletePetsByIds(List<Integer> ids);
+
+    //The two halves of an upsert by external_key, see PetBulkWriter.upsertPets. The insert
+    //returns -1 for every pet whose key already exists, and the update then only writes the pet
+    //if it differs, so re-reading an unchanged feed writes nothing.
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long[] insertPetsIfAbsent(List<PetEntry> petEntries);
+
+    @Query("UPDATE pet SET name = :name, breed_id = :breedId, gender = :gender, weight = :weight "
+            + "WHERE external_key = :externalKey "
+            + "AND (name IS NOT :name OR breed_id != :breedId OR gender != :gender OR weight != :weight)")
+    int updatePetByExternalKeyIfChanged(String externalKey, String name, int breedId, int gender, int weight);
+
 //    To get a Pet from a particular id, a list of PetEntries, delete by id, or delete all the PetEntries on the table, we need to use the @Query
 //    annotation, for example:
     @Query("SELECT * FROM pet")
@@ -34,6 +66,133 @@ public interface PetDao {
     @Query("SELECT * FROM pet WHERE id = :id")
     LiveData<PetEntry> loadPetById(int id);
 
+    //The same pet together with the newest change log entry, read in one statement so both are
+    //from the same snapshot. PetCache caches it with that sequence number.
+    @Query("SELECT *, (SELECT MAX(seq) FROM pet_changelog) AS change_seq FROM pet WHERE id = :id")
+    LiveData<PetSnapshot> loadPetSnapshotById(int id);
+
+    //One page of the sorted and filtered catalog, built by PetCatalogQuery. The catalog only
+    //shows name, breed and photo, so pages select a slim PetListItem instead of every column.
+    //Breeds are read as ids, BreedDictionary names them. Sorting and filtering run in SQLite on
+    //the pet indexes, and pages are keyset-paged instead of using an OFFSET. PetPager re-runs it
+    //when the pet table changes.
+    @RawQuery
+    List<PetListItem> loadPetListItemPage(SupportSQLiteQuery query);
+
     @Query("DELETE FROM pet")
-    void deleteAllPets();
+    int deleteAllPets();
+
+    //Full-text search over names and breeds. The pet_fts table isn't a Room entity, so the query
+    //is built by PetSearchIndex.buildSearchQuery and observes the pet table it mirrors.
+    @RawQuery(observedEntities = PetEntry.class)
+    LiveData<List<PetListItem>> searchPets(SupportSQLiteQuery query);
+
+    //Every photo file still in use, see PetPhotos.deleteUnreferenced
+    @Query("SELECT photo_path FROM pet WHERE photo_path IS NOT NULL")
+    List<String> loadPhotoPaths();
+
+    //The breed dictionary, see BreedDictionary
+    @Query("SELECT * FROM breed")
+    List<BreedEntry> loadBreeds();
+
+    @Query("SELECT * FROM breed WHERE id = :id")
+    BreedEntry loadBreedById(int id);
+
+    @Query("SELECT id FROM breed WHERE name = :name")
+    long loadBreedIdByName(String name);
+
+    //Returns -1 if the breed already exists
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    long insertBreed(BreedEntry breed);
+
+    //Dashboard statistics. The tables are kept up to date by PetStatsTriggers on every write to
+    //pet, so these read a handful of rows however many pets there are.
+    @Query("SELECT * FROM pet_stats_gender ORDER BY gender")
+    LiveData<List<PetGenderStats>> loadGenderStats();
+
+    @Query("SELECT * FROM pet_stats_breed ORDER BY pet_count DESC, breed LIMIT :limit")
+    LiveData<List<PetBreedStats>> loadTopBreeds(int limit);
+
+    @Query("SELECT * FROM pet_stats_weight ORDER BY bucket")
+    LiveData<List<PetWeightBucket>> loadWeightHistogram();
+
+    //The change log, filled by PetChangeLog's triggers and read through PetChangeFeed
+    @Query("SELECT * FROM pet_changelog WHERE seq > :afterSeq ORDER BY seq LIMIT :limit")
+    List<PetChangeLogEntry> loadChangesSince(long afterSeq, int limit);
+
+    @Query("SELECT MAX(seq) FROM pet_changelog")
+    Long loadLatestChangeSeq();
+
+    //Emits whenever a change is recorded, so consumers know when to read the feed
+    @Query("SELECT MAX(seq) FROM pet_changelog")
+    LiveData<Long> observeLatestChangeSeq();
+
+    @Query("SELECT MAX(seq) FROM pet_changelog WHERE changed_at < :time")
+    Long loadLastChangeSeqBefore(long time);
+
+    //Never deletes the newest change, which is what keeps MAX(seq) from going back
+    @Query("DELETE FROM pet_changelog WHERE seq <= :seq AND seq < (SELECT MAX(seq) FROM pet_changelog)")
+    int deleteChangesThrough(long seq);
+
+    @Query("SELECT * FROM pet_changelog_consumer WHERE name = :name")
+    PetChangeConsumer loadChangeConsumer(String name);
+
+    @Insert(onConflict = OnConflictStrategy.IGNORE)
+    void insertChangeConsumer(PetChangeConsumer consumer);
+
+    @Query("UPDATE pet_changelog_consumer SET acked_seq = MAX(acked_seq, :seq) WHERE name = :name")
+    int ackChanges(String name, long seq);
+
+    @Query("UPDATE pet_changelog_consumer SET acked_seq = :seq, resync_required = 0 WHERE name = :name")
+    int completeChangeResync(String name, long seq);
+
+    @Query("UPDATE pet_changelog_consumer SET resync_required = 1 WHERE acked_seq < :seq")
+    int requireChangeResyncBefore(long seq);
+
+    @Query("SELECT MIN(acked_seq) FROM pet_changelog_consumer")
+    Long loadMinAckedSeq();
+
+    @Query("DELETE FROM pet_changelog_consumer WHERE name = :name")
+    int deleteChangeConsumer(String name);
+
+    //Sync bookkeeping, see PetSyncEngine. pet_sync is kept up to date by PetSyncTriggers.
+    @Query("SELECT pet_sync.pet_id, pet_sync.external_key, pet_sync.remote_version, pet_sync.dirty, "
+            + "pet_sync.deleted, pet.name, pet.breed_id, pet.gender, pet.weight "
+            + "FROM pet_sync LEFT JOIN pet ON pet.id = pet_sync.pet_id "
+            + "WHERE pet_sync.dirty > 0 AND pet_sync.external_key IS NOT NULL "
+            + "AND pet_sync.pet_id > :afterPetId ORDER BY pet_sync.pet_id LIMIT :limit")
+    List<PetSyncRow> loadDirtyPets(int afterPetId, int limit);
+
+    @Query("SELECT pet_id FROM pet_sync WHERE dirty > 0 AND deleted = 0 AND external_key IS NULL LIMIT :limit")
+    List<Integer> loadDirtyPetIdsWithoutKey(int limit);
+
+    @Query("UPDATE pet SET external_key = :externalKey WHERE id = :id AND external_key IS NULL")
+    int assignPetExternalKey(int id, String externalKey);
+
+    //Pets deleted before they were ever pushed have nothing to delete remotely
+    @Query("DELETE FROM pet_sync WHERE deleted = 1 AND remote_version = 0")
+    int deleteUnpushedTombstones();
+
+    //A live pet before its tombstone, should a key have both
+    @Query("SELECT * FROM pet_sync WHERE external_key = :externalKey ORDER BY deleted LIMIT 1")
+    PetSyncState loadSyncStateByExternalKey(String externalKey);
+
+    @Query("UPDATE pet_sync SET remote_version = :version WHERE pet_id = :petId")
+    int setPetRemoteVersion(int petId, long version);
+
+    //Only if the pet wasn't written again since dirty was read
+    @Query("UPDATE pet_sync SET dirty = 0 WHERE pet_id = :petId AND dirty = :dirty")
+    int clearPetDirty(int petId, int dirty);
+
+    @Query("UPDATE pet_sync SET remote_version = :version, dirty = 0 WHERE pet_id = :petId")
+    int markPetSynced(int petId, long version);
+
+    @Query("DELETE FROM pet_sync WHERE pet_id = :petId")
+    int deletePetSyncState(int petId);
+
+    @Query("SELECT * FROM pet_sync_cursor WHERE backend = :backend")
+    PetSyncCursor loadSyncCursor(String backend);
+
+    @Insert(onConflict = OnConflictStrategy.REPLACE)
+    void saveSyncCursor(PetSyncCursor cursor);
 }
@@ -1,18 +1,38 @@
 package com.example.android.pets.data;
 
+import android.arch.persistence.room.ColumnInfo;
 import android.arch.persistence.room.Entity;
 import android.arch.persistence.room.Ignore;
+import android.arch.persistence.room.Index;
 import android.arch.persistence.room.PrimaryKey;
 
-@Entity(tableName = "pet")
+//The indexes back the sort orders and filters of the catalog (see PetCatalogQuery). Each one
+//also holds the id, so keyset paging on (column, id) walks the index without sorting. The unique
+//index on external_key is what upserts by key conflict on.
+//The breed is stored as the id of its row in the breed table. Room only reads and writes that id,
+//the name is filled in from the BreedDictionary, which also assigns the id before a write.
+@Entity(tableName = "pet",
+        indices = {@Index("name"), @Index("breed_id"), @Index("weight"), @Index({"gender", "weight"}),
+                @Index(value = "external_key", unique = true)})
 public class PetEntry {
 
     @PrimaryKey (autoGenerate = true)
     private int id;
     private String name;
+    @ColumnInfo(name = "breed_id")
+    private int breedId;
+    @Ignore
     private String breed;
     private int gender;
     private int weight;
+    //The pet's id in the feed it came from, if any. Pets without one are never matched on upsert,
+    //SQLite lets any number of rows share a NULL in a unique index.
+    @ColumnInfo(name = "external_key")
+    private String externalKey;
+    //Absolute path of the pet's photo in PetPhotos' directory, or null for a pet without one.
+    //Photo files are never overwritten, a new photo gets a new path.
+    @ColumnInfo(name = "photo_path")
+    private String photoPath;
 
     /**
      * Possible values for the gender of the pet
@@ -24,6 +44,15 @@ public class PetEntry {
     @Ignore
     public static final int GENDER_FEMALE = 2;
 
+    public PetEntry(int id, String name, int breedId, int gender, int weight){
+        this.id = id;
+        this.name = name;
+        this.breedId = breedId;
+        this.gender = gender;
+        this.weight = weight;
+    }
+
+    @Ignore
     public PetEntry(int id, String name, String breed, int gender, int weight){
         this.id = id;
         this.name = name;
@@ -41,6 +70,15 @@ public class PetEntry {
         this.weight = weight;
     }
 
+    //Copy of another pet, for code that hands out pets it must keep unchanged
+    @Ignore
+    public PetEntry(PetEntry other){
+        this(other.id, other.name, other.breed, other.gender, other.weight);
+        this.breedId = other.breedId;
+        this.externalKey = other.externalKey;
+        this.photoPath = other.photoPath;
+    }
+
     public int getId() {
         return id;
     }
@@ -57,6 +95,16 @@ public class PetEntry {
         this.name = name;
     }
 
+    public int getBreedId() {
+        return breedId;
+    }
+
+    public void setBreedId(int breedId) {
+        this.breedId = breedId;
+    }
+
+    //Null on a pet fresh from Room until the BreedDictionary names it. A pet without a breed
+    //reads back with the empty breed.
     public String getBreed() {
         return breed;
     }
@@ -81,5 +129,20 @@ public class PetEntry {
         this.weight = weight;
     }
 
+    public String getExternalKey() {
+        return externalKey;
+    }
+
+    public void setExternalKey(String externalKey) {
+        this.externalKey = externalKey;
+    }
+
+    public String getPhotoPath() {
+        return photoPath;
+    }
+
+    public void setPhotoPath(String photoPath) {
+        this.photoPath = photoPath;
+    }
 
 }
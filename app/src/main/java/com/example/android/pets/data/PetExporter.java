@@ -0,0 +1,238 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.io.BufferedOutputStream;
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.Locale;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * Writes the whole pet table to a CSV or JSON Lines file, optionally gzip compressed.
+ *
+ * Rows are read in keyset pages of PAGE_SIZE straight from a raw Cursor and written to a
+ * buffered stream as they are read, so no PetEntry is ever built and the heap stays flat
+ * whatever the size of the table. Reading in pages also means a long export doesn't hold a read
+ * transaction open, and rows written while it runs may or may not make it into the file.
+ *
+ * The file is written under a temporary name and only renamed into place once complete, so a
+ * failed or cancelled export never leaves a truncated file behind. One exporter runs one export,
+ * {@link #cancel()} may be called from any thread.
+ */
+public class PetExporter {
+
+    /**
+     * Receives progress on the exporting thread, after every page.
+     */
+    public interface ProgressListener {
+        void onProgress(long exportedRows, long totalRows);
+    }
+
+    private static final int PAGE_SIZE = 1000;
+
+    private static final String COUNT_QUERY = "SELECT COUNT(*) FROM pet";
+
+    //The column order matches the indexes used when writing a row. The export writes every breed
+    //name out anyway, so it is joined in rather than looked up.
+    private static final String PAGE_QUERY =
+            "SELECT pet.id, pet.name, breed.name, pet.gender, pet.weight FROM pet "
+                    + "JOIN breed ON breed.id = pet.breed_id WHERE pet.id > ? ORDER BY pet.id LIMIT ?";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private final PetsDatabase mDb;
+    private volatile boolean mCancelled = false;
+
+    public PetExporter(PetsDatabase database){
+        mDb = database;
+    }
+
+    /**
+     * Stops the export at the next page. The export then throws a CancellationException.
+     */
+    public void cancel(){
+        mCancelled = true;
+    }
+
+    /**
+     * @param format one of the PetFileFormat.FORMAT_* constants
+     * @return the number of pets written.
+     * @throws CancellationException if {@link #cancel()} was called before the export finished
+     */
+    @WorkerThread
+    public long export(File file, int format, boolean gzip, @Nullable ProgressListener listener)
+            throws IOException {
+        PetFileFormat.checkFormat(format);
+        File partial = new File(file.getPath() + ".partial");
+        boolean complete = false;
+        try {
+            OutputStream stream = new BufferedOutputStream(new FileOutputStream(partial), PetFileFormat.BUFFER_SIZE);
+            if(gzip){
+                stream = new GZIPOutputStream(stream, PetFileFormat.BUFFER_SIZE);
+            }
+            Writer writer = new BufferedWriter(new OutputStreamWriter(stream, UTF_8), PetFileFormat.BUFFER_SIZE);
+            long exported;
+            try {
+                exported = export(writer, format, listener);
+            } finally {
+                writer.close();
+            }
+            if(!partial.renameTo(file)){
+                throw new IOException("Could not move the export to " + file);
+            }
+            complete = true;
+            return exported;
+        } finally {
+            if(!complete){
+                //Best effort, the next export to this file overwrites it anyway
+                partial.delete();
+            }
+        }
+    }
+
+    private long export(Writer writer, int format, @Nullable ProgressListener listener) throws IOException {
+        long total = countPets();
+        if(format == PetFileFormat.FORMAT_CSV){
+            writer.write(PetFileFormat.CSV_HEADER);
+            writer.write('\n');
+        }
+
+        long exported = 0;
+        int lastId = 0;
+        while(true){
+            if(mCancelled){
+                throw new CancellationException("Export cancelled after " + exported + " pets");
+            }
+            Cursor cursor = mDb.query(new SimpleSQLiteQuery(PAGE_QUERY, new Object[]{lastId, PAGE_SIZE}));
+            int rows = 0;
+            try {
+                while(cursor.moveToNext()){
+                    lastId = cursor.getInt(0);
+                    if(format == PetFileFormat.FORMAT_CSV){
+                        writeCsvRow(writer, cursor);
+                    }else{
+                        writeJsonRow(writer, cursor);
+                    }
+                    rows++;
+                }
+            } finally {
+                cursor.close();
+            }
+            exported += rows;
+            if(listener != null){
+                //Pets inserted during the export can take it past the count taken at the start
+                listener.onProgress(exported, Math.max(total, exported));
+            }
+            if(rows < PAGE_SIZE){
+                return exported;
+            }
+        }
+    }
+
+    private long countPets(){
+        Cursor cursor = mDb.query(COUNT_QUERY, null);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void writeCsvRow(Writer writer, Cursor cursor) throws IOException {
+        writer.write(Integer.toString(cursor.getInt(0)));
+        writer.write(',');
+        writeCsvField(writer, cursor.getString(1));
+        writer.write(',');
+        writeCsvField(writer, cursor.getString(2));
+        writer.write(',');
+        writer.write(Integer.toString(cursor.getInt(3)));
+        writer.write(',');
+        writer.write(Integer.toString(cursor.getInt(4)));
+        writer.write('\n');
+    }
+
+    //A null and an empty string both come out as an empty field, they mean the same to the app
+    private static void writeCsvField(Writer writer, @Nullable String value) throws IOException {
+        if(value == null || value.isEmpty()){
+            return;
+        }
+        boolean quote = false;
+        for(int i = 0; i < value.length() && !quote; i++){
+            char c = value.charAt(i);
+            quote = c == ',' || c == '"' || c == '\n' || c == '\r';
+        }
+        if(!quote){
+            writer.write(value);
+            return;
+        }
+        writer.write('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"'){
+                writer.write('"');
+            }
+            writer.write(c);
+        }
+        writer.write('"');
+    }
+
+    private static void writeJsonRow(Writer writer, Cursor cursor) throws IOException {
+        writer.write("{\"" + PetFileFormat.COLUMN_ID + "\":");
+        writer.write(Integer.toString(cursor.getInt(0)));
+        writer.write(",\"" + PetFileFormat.COLUMN_NAME + "\":");
+        writeJsonString(writer, cursor.getString(1));
+        writer.write(",\"" + PetFileFormat.COLUMN_BREED + "\":");
+        writeJsonString(writer, cursor.getString(2));
+        writer.write(",\"" + PetFileFormat.COLUMN_GENDER + "\":");
+        writer.write(Integer.toString(cursor.getInt(3)));
+        writer.write(",\"" + PetFileFormat.COLUMN_WEIGHT + "\":");
+        writer.write(Integer.toString(cursor.getInt(4)));
+        writer.write("}\n");
+    }
+
+    private static void writeJsonString(Writer writer, @Nullable String value) throws IOException {
+        if(value == null){
+            writer.write("null");
+            return;
+        }
+        writer.write('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            switch (c){
+                case '"':
+                    writer.write("\\\"");
+                    break;
+                case '\\':
+                    writer.write("\\\\");
+                    break;
+                case '\n':
+                    writer.write("\\n");
+                    break;
+                case '\r':
+                    writer.write("\\r");
+                    break;
+                case '\t':
+                    writer.write("\\t");
+                    break;
+                default:
+                    if(c < 0x20){
+                        writer.write(String.format(Locale.US, "\\u%04x", (int) c));
+                    }else{
+                        writer.write(c);
+                    }
+            }
+        }
+        writer.write('"');
+    }
+}
@@ -0,0 +1,37 @@
+package com.example.android.pets.data;
+
+/**
+ * File formats pets can be exported to and imported from.
+ *
+ * CSV has a header row followed by one pet per line, quoted as in RFC 4180. JSON Lines has one
+ * JSON object per line. Both carry the columns below, with the gender as its GENDER_* value.
+ * Either one may be gzip compressed, which is recognised on import by the .gz extension.
+ */
+public final class PetFileFormat {
+
+    public static final int FORMAT_CSV = 0;
+    public static final int FORMAT_JSON_LINES = 1;
+
+    static final String COLUMN_ID = "id";
+    static final String COLUMN_NAME = "name";
+    static final String COLUMN_BREED = "breed";
+    static final String COLUMN_GENDER = "gender";
+    static final String COLUMN_WEIGHT = "weight";
+
+    static final String CSV_HEADER = COLUMN_ID + "," + COLUMN_NAME + "," + COLUMN_BREED + ","
+            + COLUMN_GENDER + "," + COLUMN_WEIGHT;
+
+    static final String GZIP_EXTENSION = ".gz";
+
+    //Large enough that the disk sees few, big writes
+    static final int BUFFER_SIZE = 64 * 1024;
+
+    private PetFileFormat(){
+    }
+
+    static void checkFormat(int format){
+        if(format != FORMAT_CSV && format != FORMAT_JSON_LINES){
+            throw new IllegalArgumentException("Unknown format " + format);
+        }
+    }
+}
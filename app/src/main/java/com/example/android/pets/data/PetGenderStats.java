@@ -0,0 +1,53 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+
+import java.util.List;
+
+/**
+ * Number of pets and their total weight for one gender. Maintained by the triggers in
+ * {@link PetStatsTriggers}, never written by the app.
+ */
+@Entity(tableName = "pet_stats_gender")
+public class PetGenderStats {
+
+    @PrimaryKey
+    private final int gender;
+    @ColumnInfo(name = "pet_count")
+    private final long petCount;
+    @ColumnInfo(name = "total_weight")
+    private final long totalWeight;
+
+    public PetGenderStats(int gender, long petCount, long totalWeight){
+        this.gender = gender;
+        this.petCount = petCount;
+        this.totalWeight = totalWeight;
+    }
+
+    public int getGender() {
+        return gender;
+    }
+
+    public long getPetCount() {
+        return petCount;
+    }
+
+    public long getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * @return the average weight over all genders, or 0 if there are no pets.
+     */
+    public static double averageWeight(List<PetGenderStats> stats){
+        long pets = 0;
+        long weight = 0;
+        for(PetGenderStats gender : stats){
+            pets += gender.petCount;
+            weight += gender.totalWeight;
+        }
+        return pets == 0 ? 0 : (double) weight / pets;
+    }
+}
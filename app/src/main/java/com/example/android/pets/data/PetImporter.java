@@ -0,0 +1,306 @@
+package com.example.android.pets.data;
+
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedReader;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.CancellationException;
+import java.util.zip.GZIPInputStream;
+
+/**
+ * Streams pets from a CSV or JSON Lines file, as written by {@link PetExporter}, into the pet
+ * table.
+ *
+ * The import runs as two stages. A parser thread reads records, validates them and maps them to
+ * PetEntry, and hands them over in batches of batchSize. The calling thread inserts each batch in
+ * one transaction. Only QUEUE_CAPACITY batches may wait between the two, so when the database
+ * falls behind the parser blocks instead of filling the heap.
+ *
+ * Every pet is inserted as a new one, the id column of the file is not used. A record that fails
+ * to parse or validate is reported to the Listener with its row number and skipped. Rows are
+ * numbered from 0 in file order, header excluded, and after each commit the Listener gets the
+ * offset to pass back to resume an interrupted import without inserting anything twice.
+ */
+public class PetImporter {
+
+    private static final String LOG_TAG = PetImporter.class.getSimpleName();
+
+    public static final int DEFAULT_BATCH_SIZE = 1000;
+
+    private static final int QUEUE_CAPACITY = 4;
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    /**
+     * Receives the progress of an import on the importing thread.
+     */
+    public interface Listener {
+        void onRowError(long row, String message);
+
+        /**
+         * @param nextOffset the offset to resume from if the import stops after this batch
+         */
+        void onBatchCommitted(long importedRows, long nextOffset);
+    }
+
+    /**
+     * How an import ended.
+     */
+    public static class Result {
+
+        private final long importedRows;
+        private final long failedRows;
+        private final long nextOffset;
+
+        Result(long importedRows, long failedRows, long nextOffset){
+            this.importedRows = importedRows;
+            this.failedRows = failedRows;
+            this.nextOffset = nextOffset;
+        }
+
+        public long getImportedRows() {
+            return importedRows;
+        }
+
+        public long getFailedRows() {
+            return failedRows;
+        }
+
+        /**
+         * @return the number of rows read from the file, header excluded.
+         */
+        public long getNextOffset() {
+            return nextOffset;
+        }
+    }
+
+    private final PetsDatabase mDb;
+    private final int mBatchSize;
+    private volatile boolean mCancelled = false;
+
+    public PetImporter(PetsDatabase database){
+        this(database, DEFAULT_BATCH_SIZE);
+    }
+
+    public PetImporter(PetsDatabase database, int batchSize){
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        mDb = database;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Stops the import after the batch being written. The import then throws a
+     * CancellationException, and everything up to the last committed offset stays imported.
+     */
+    public void cancel(){
+        mCancelled = true;
+    }
+
+    /**
+     * Imports a file, which is read as gzip if its name ends in .gz.
+     *
+     * @param format one of the PetFileFormat.FORMAT_* constants
+     * @param startOffset the number of rows to skip, 0 or a nextOffset from an earlier import
+     */
+    @WorkerThread
+    public Result importFile(File file, int format, long startOffset, @Nullable Listener listener)
+            throws IOException {
+        InputStream stream = new BufferedInputStream(new FileInputStream(file), PetFileFormat.BUFFER_SIZE);
+        try {
+            if(file.getName().endsWith(PetFileFormat.GZIP_EXTENSION)){
+                stream = new GZIPInputStream(stream, PetFileFormat.BUFFER_SIZE);
+            }
+            return importStream(stream, format, startOffset, listener);
+        } finally {
+            stream.close();
+        }
+    }
+
+    /**
+     * Imports an uncompressed stream. The caller closes it.
+     */
+    @WorkerThread
+    public Result importStream(InputStream stream, int format, long startOffset,
+                               @Nullable Listener listener) throws IOException {
+        if(startOffset < 0){
+            throw new IllegalArgumentException("startOffset must not be negative");
+        }
+        PetRecordReader reader = PetRecordReader.create(
+                new BufferedReader(new InputStreamReader(stream, UTF_8), PetFileFormat.BUFFER_SIZE), format);
+        BlockingQueue<Batch> queue = new ArrayBlockingQueue<>(QUEUE_CAPACITY);
+        Parser parser = new Parser(reader, startOffset, queue);
+        Thread parserThread = new Thread(parser, "pet-import-parser");
+        parserThread.start();
+
+        long imported = 0;
+        long failed = 0;
+        long nextOffset = startOffset;
+        try {
+            while(true){
+                Batch batch = queue.take();
+                if(batch.failure != null){
+                    throw batch.failure;
+                }
+                if(!batch.pets.isEmpty()){
+                    mDb.breeds().assignIds(batch.pets);
+                    mDb.petDao().insertPets(batch.pets);
+                }
+                imported += batch.pets.size();
+                failed += batch.errorRows.size();
+                nextOffset = batch.nextOffset;
+                if(listener != null){
+                    for(int i = 0; i < batch.errorRows.size(); i++){
+                        listener.onRowError(batch.errorRows.get(i), batch.errorMessages.get(i));
+                    }
+                    listener.onBatchCommitted(imported, nextOffset);
+                }
+                if(batch.last){
+                    return new Result(imported, failed, nextOffset);
+                }
+                if(mCancelled){
+                    throw new CancellationException("Import cancelled at row " + nextOffset);
+                }
+            }
+        } catch (InterruptedException e){
+            Thread.currentThread().interrupt();
+            throw new CancellationException("Import interrupted at row " + nextOffset);
+        } finally {
+            //Unblocks the parser if it is waiting for room in the queue
+            parserThread.interrupt();
+            try {
+                parserThread.join();
+            } catch (InterruptedException e){
+                Thread.currentThread().interrupt();
+            }
+        }
+    }
+
+    /**
+     * Checks one record and maps it to a new pet.
+     *
+     * @throws IllegalArgumentException with the reason if the record isn't a valid pet
+     */
+    static PetEntry toPetEntry(String[] fields){
+        String name = fields[PetRecordReader.FIELD_NAME] == null ? "" : fields[PetRecordReader.FIELD_NAME].trim();
+        if(name.isEmpty()){
+            throw new IllegalArgumentException("A pet needs a name");
+        }
+        String breed = fields[PetRecordReader.FIELD_BREED] == null ? "" : fields[PetRecordReader.FIELD_BREED].trim();
+        int gender = parseInt(fields[PetRecordReader.FIELD_GENDER], PetFileFormat.COLUMN_GENDER, PetEntry.GENDER_UNKNOWN);
+        if(gender != PetEntry.GENDER_UNKNOWN && gender != PetEntry.GENDER_MALE && gender != PetEntry.GENDER_FEMALE){
+            throw new IllegalArgumentException("Unknown gender " + gender);
+        }
+        int weight = parseInt(fields[PetRecordReader.FIELD_WEIGHT], PetFileFormat.COLUMN_WEIGHT, 0);
+        if(weight < 0){
+            throw new IllegalArgumentException("The weight can't be negative");
+        }
+        return new PetEntry(name, breed, gender, weight);
+    }
+
+    private static int parseInt(@Nullable String value, String column, int defaultValue){
+        if(value == null || value.trim().isEmpty()){
+            return defaultValue;
+        }
+        try {
+            return Integer.parseInt(value.trim());
+        } catch (NumberFormatException e){
+            throw new IllegalArgumentException("The " + column + " is not a whole number: " + value);
+        }
+    }
+
+    //What the parser hands to the writer
+    private static class Batch {
+        final List<PetEntry> pets;
+        final List<Long> errorRows = new ArrayList<>();
+        final List<String> errorMessages = new ArrayList<>();
+        long nextOffset;
+        boolean last;
+        IOException failure;
+
+        Batch(int capacity){
+            pets = new ArrayList<>(capacity);
+        }
+    }
+
+    private class Parser implements Runnable {
+
+        private final PetRecordReader mReader;
+        private final long mStartOffset;
+        private final BlockingQueue<Batch> mQueue;
+
+        Parser(PetRecordReader reader, long startOffset, BlockingQueue<Batch> queue){
+            mReader = reader;
+            mStartOffset = startOffset;
+            mQueue = queue;
+        }
+
+        @Override
+        public void run() {
+            try {
+                parse();
+            } catch (InterruptedException e){
+                //The writer stopped, nobody is waiting for more batches
+            }
+        }
+
+        private void parse() throws InterruptedException {
+            Batch batch = new Batch(mBatchSize);
+            long row = 0;
+            try {
+                while(!mCancelled){
+                    String[] fields;
+                    try {
+                        fields = mReader.next();
+                    } catch (PetRecordReader.MalformedRecordException e){
+                        if(row >= mStartOffset){
+                            batch.errorRows.add(row);
+                            batch.errorMessages.add(e.getMessage());
+                        }
+                        row++;
+                        continue;
+                    }
+                    if(fields == null){
+                        batch.last = true;
+                        break;
+                    }
+                    if(row >= mStartOffset){
+                        try {
+                            batch.pets.add(toPetEntry(fields));
+                        } catch (IllegalArgumentException e){
+                            batch.errorRows.add(row);
+                            batch.errorMessages.add(e.getMessage());
+                        }
+                    }
+                    row++;
+                    //Errors count too, or a file of nothing but bad rows would pile up in one batch
+                    if(batch.pets.size() + batch.errorRows.size() >= mBatchSize){
+                        batch.nextOffset = row;
+                        mQueue.put(batch);
+                        batch = new Batch(mBatchSize);
+                    }
+                }
+                batch.nextOffset = Math.max(row, mStartOffset);
+            } catch (IOException | RuntimeException e){
+                //The writer must hear about it, or it would wait for the next batch forever
+                Log.e(LOG_TAG, "Import failed at row " + row, e);
+                batch = new Batch(0);
+                batch.failure = e instanceof IOException ? (IOException) e : new IOException(e);
+            }
+            mQueue.put(batch);
+        }
+    }
+}
@@ -0,0 +1,91 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Ignore;
+import android.support.v4.util.ObjectsCompat;
+
+/**
+ * The columns of a pet that the catalog actually shows, plus the weight it can be sorted on.
+ * The photo is only its path, the row loads its thumbnail in the background.
+ *
+ * Catalog queries select only these instead of SELECT *, so each row read from the cursor
+ * window is smaller and only a few fields get allocated per pet. The full {@link PetEntry} is
+ * loaded by id when the editor opens a pet.
+ *
+ * The breed is read as its id, and the name is then set from the {@link BreedDictionary}, so
+ * rows of the same breed share one String instead of each allocating its own.
+ */
+public class PetListItem {
+
+    private final int id;
+    private final String name;
+    @ColumnInfo(name = "breed_id")
+    private final int breedId;
+    private final int weight;
+    @ColumnInfo(name = "photo_path")
+    private final String photoPath;
+    @Ignore
+    private String breed;
+
+    public PetListItem(int id, String name, int breedId, int weight, String photoPath){
+        this.id = id;
+        this.name = name;
+        this.breedId = breedId;
+        this.weight = weight;
+        this.photoPath = photoPath;
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBreedId() {
+        return breedId;
+    }
+
+    public String getBreed() {
+        return breed;
+    }
+
+    void setBreed(String breed) {
+        this.breed = breed;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    public String getPhotoPath() {
+        return photoPath;
+    }
+
+    @Override
+    public boolean equals(Object o) {
+        if (this == o) {
+            return true;
+        }
+        if (o == null || getClass() != o.getClass()) {
+            return false;
+        }
+        PetListItem other = (PetListItem) o;
+        return id == other.id
+                && breedId == other.breedId
+                && weight == other.weight
+                && ObjectsCompat.equals(name, other.name)
+                && ObjectsCompat.equals(photoPath, other.photoPath);
+    }
+
+    @Override
+    public int hashCode() {
+        int result = id;
+        result = 31 * result + (name != null ? name.hashCode() : 0);
+        result = 31 * result + breedId;
+        result = 31 * result + weight;
+        result = 31 * result + (photoPath != null ? photoPath.hashCode() : 0);
+        return result;
+    }
+}
@@ -0,0 +1,257 @@
+package com.example.android.pets.data;
+
+import android.arch.lifecycle.LiveData;
+import android.arch.lifecycle.MutableLiveData;
+import android.arch.persistence.db.SupportSQLiteQuery;
+import android.arch.persistence.room.InvalidationTracker;
+import android.support.annotation.NonNull;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Loads the pet table one page at a time using keyset paging on the sort column and id, in
+ * the order and with the filters of the current {@link PetCatalogQuery}.
+ *
+ * Only a window of at most maxPages pages is kept in memory. Loading past the end of the window
+ * drops the page at the other end, so the heap stays bounded no matter how far the user scrolls.
+ * All loads run on a single background thread, and the window is reloaded in place whenever
+ * Room reports that the pet table changed.
+ */
+public class PetPager {
+
+    public static final int DEFAULT_PAGE_SIZE = 50;
+    public static final int DEFAULT_MAX_PAGES = 5;
+
+    private static final String TABLE_PET = "pet";
+
+    private final PetsDatabase mDb;
+    private final int mPageSize;
+    private final int mMaxPages;
+
+    private final ExecutorService mExecutor = Executors.newSingleThreadExecutor();
+    private final MutableLiveData<List<PetListItem>> mWindow = new MutableLiveData<>();
+
+    //Only one pending request of each kind is queued at a time, however often the UI asks
+    private final AtomicBoolean mAfterPending = new AtomicBoolean(false);
+    private final AtomicBoolean mBeforePending = new AtomicBoolean(false);
+    private final AtomicBoolean mRefreshPending = new AtomicBoolean(false);
+
+    //The fields below are only touched on the pager thread
+    private PetCatalogQuery mQuery = PetCatalogQuery.DEFAULT;
+    private final LinkedList<List<PetListItem>> mPages = new LinkedList<>();
+    private boolean mReachedStart = true;
+    private boolean mReachedEnd = false;
+
+    private final InvalidationTracker.Observer mObserver =
+            new InvalidationTracker.Observer(new String[]{TABLE_PET}) {
+                @Override
+                public void onInvalidated(@NonNull Set<String> tables) {
+                    refresh();
+                }
+            };
+
+    public PetPager(PetsDatabase database){
+        this(database, DEFAULT_PAGE_SIZE, DEFAULT_MAX_PAGES);
+    }
+
+    public PetPager(PetsDatabase database, int pageSize, int maxPages){
+        if(pageSize <= 0 || maxPages < 2){
+            throw new IllegalArgumentException("pageSize must be positive and maxPages at least 2");
+        }
+        mDb = database;
+        mPageSize = pageSize;
+        mMaxPages = maxPages;
+
+        //Registering the observer touches the database, so keep it off the main thread
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDb.getInvalidationTracker().addObserver(mObserver);
+            }
+        });
+    }
+
+    /**
+     * @return the pets currently held in the window, in the order of the current query.
+     */
+    public LiveData<List<PetListItem>> getPets(){
+        return mWindow;
+    }
+
+    /**
+     * Switches to a different sort order or filter, and reloads the window from its first page.
+     */
+    public void setQuery(final PetCatalogQuery query){
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                if(query.equals(mQuery)){
+                    return;
+                }
+                mQuery = query;
+                mPages.clear();
+                mReachedStart = true;
+                mReachedEnd = false;
+                doLoadAfter();
+            }
+        });
+    }
+
+    /**
+     * Loads the page following the last one in the window, dropping the first page if the
+     * window is full. Does nothing once the end of the table has been reached.
+     */
+    public void loadAfter(){
+        if(!mAfterPending.compareAndSet(false, true)){
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mAfterPending.set(false);
+                doLoadAfter();
+            }
+        });
+    }
+
+    /**
+     * Loads the page preceding the first one in the window, dropping the last page if the
+     * window is full. Does nothing while the window starts at the beginning of the table.
+     */
+    public void loadBefore(){
+        if(!mBeforePending.compareAndSet(false, true)){
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mBeforePending.set(false);
+                doLoadBefore();
+            }
+        });
+    }
+
+    /**
+     * Re-reads the rows covered by the current window, keeping its position in the table.
+     */
+    public void refresh(){
+        if(!mRefreshPending.compareAndSet(false, true)){
+            return;
+        }
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mRefreshPending.set(false);
+                doRefresh();
+            }
+        });
+    }
+
+    /**
+     * Stops listening for table changes and releases the pager thread.
+     */
+    public void close(){
+        mExecutor.execute(new Runnable() {
+            @Override
+            public void run() {
+                mDb.getInvalidationTracker().removeObserver(mObserver);
+            }
+        });
+        mExecutor.shutdown();
+    }
+
+    private void doLoadAfter(){
+        if(mReachedEnd){
+            return;
+        }
+        SupportSQLiteQuery query = mPages.isEmpty()
+                ? mQuery.first(mPageSize)
+                : mQuery.after(last(mPages.getLast()), mPageSize);
+        List<PetListItem> page = loadPage(query);
+        mReachedEnd = page.size() < mPageSize;
+        if(!page.isEmpty()){
+            mPages.addLast(page);
+            if(mPages.size() > mMaxPages){
+                mPages.removeFirst();
+                mReachedStart = false;
+            }
+        }
+        publish();
+    }
+
+    private void doLoadBefore(){
+        if(mReachedStart || mPages.isEmpty()){
+            return;
+        }
+        SupportSQLiteQuery query = mQuery.before(mPages.getFirst().get(0), mPageSize);
+        List<PetListItem> page = loadPage(query);
+        //The query walks the index backwards, so flip the page into ascending order
+        Collections.reverse(page);
+        mReachedStart = page.size() < mPageSize;
+        if(!page.isEmpty()){
+            mPages.addFirst(page);
+            if(mPages.size() > mMaxPages){
+                mPages.removeLast();
+                mReachedEnd = false;
+            }
+        }
+        publish();
+    }
+
+    private void doRefresh(){
+        int loaded = 0;
+        for(List<PetListItem> page : mPages){
+            loaded += page.size();
+        }
+        //Ask for one extra page when we were at the end, so new pets show up without a scroll
+        int limit = Math.max(loaded, mPageSize) + (mReachedEnd ? mPageSize : 0);
+        boolean fromStart = mReachedStart || mPages.isEmpty();
+        SupportSQLiteQuery query = fromStart
+                ? mQuery.first(limit)
+                : mQuery.from(mPages.getFirst().get(0), limit);
+
+        List<PetListItem> rows = loadPage(query);
+        if(rows.isEmpty() && !fromStart){
+            //Everything in and after the window is gone, start over from the top
+            mReachedStart = true;
+            rows = loadPage(mQuery.first(mPageSize));
+        }
+
+        mPages.clear();
+        for(int start = 0; start < rows.size(); start += mPageSize){
+            mPages.addLast(new ArrayList<>(rows.subList(start, Math.min(start + mPageSize, rows.size()))));
+        }
+        while(mPages.size() > mMaxPages){
+            mPages.removeFirst();
+            mReachedStart = false;
+        }
+        mReachedEnd = rows.size() < limit;
+        publish();
+    }
+
+    //Rows need their breed names before they are shown, or used as the anchor of a breed sort
+    private List<PetListItem> loadPage(SupportSQLiteQuery query){
+        List<PetListItem> page = mDb.petDao().loadPetListItemPage(query);
+        mDb.breeds().nameItems(page);
+        return page;
+    }
+
+    private void publish(){
+        List<PetListItem> window = new ArrayList<>();
+        for(List<PetListItem> page : mPages){
+            window.addAll(page);
+        }
+        mWindow.postValue(window);
+    }
+
+    private static PetListItem last(List<PetListItem> page){
+        return page.get(page.size() - 1);
+    }
+}
@@ -0,0 +1,106 @@
+package com.example.android.pets.data;
+
+import android.content.Context;
+import android.net.Uri;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.UUID;
+
+/**
+ * The pets' photo files, kept in the app's private files directory. A pet stores the path of its
+ * photo (see {@link PetEntry#getPhotoPath()}), never the picture itself, so rows stay small.
+ *
+ * Every photo saved gets a file of its own that is never written again. A path therefore always
+ * stands for the same picture, which is what lets thumbnails of it be cached for good. Replacing
+ * or deleting a pet leaves its old file behind, {@link #deleteUnreferenced(Context, PetsDatabase)}
+ * removes those later.
+ */
+public final class PetPhotos {
+
+    private static final String DIRECTORY = "pet_photos";
+
+    //Files younger than this are kept even if no pet refers to them, as the editor saves a photo
+    //before the pet it belongs to is written
+    private static final long MIN_UNREFERENCED_AGE_MS = 24 * 60 * 60 * 1000L;
+
+    private static final int BUFFER_SIZE = 8192;
+
+    private PetPhotos(){
+    }
+
+    public static File directory(Context context){
+        return new File(context.getFilesDir(), DIRECTORY);
+    }
+
+    /**
+     * Copies a picture, e.g. one the user picked from the gallery, into a new photo file.
+     *
+     * @return the absolute path of the new file, to store as the pet's photo path.
+     * @throws IOException if the picture can't be read or copied, nothing is left behind then.
+     */
+    @WorkerThread
+    public static String save(Context context, Uri uri) throws IOException {
+        File directory = directory(context);
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Could not create " + directory);
+        }
+        File file = new File(directory, UUID.randomUUID().toString());
+        InputStream in = context.getContentResolver().openInputStream(uri);
+        if(in == null){
+            throw new IOException("Could not open " + uri);
+        }
+        boolean copied = false;
+        try {
+            OutputStream out = new FileOutputStream(file);
+            try {
+                byte[] buffer = new byte[BUFFER_SIZE];
+                int read;
+                while((read = in.read(buffer)) != -1){
+                    out.write(buffer, 0, read);
+                }
+            } finally {
+                out.close();
+            }
+            copied = true;
+        } finally {
+            in.close();
+            if(!copied){
+                file.delete();
+            }
+        }
+        return file.getAbsolutePath();
+    }
+
+    /**
+     * Deletes the photo files no pet refers to any more, once they are old enough that no editor
+     * can still be about to save them.
+     *
+     * @return the number of files deleted.
+     */
+    @WorkerThread
+    public static int deleteUnreferenced(Context context, PetsDatabase database){
+        File[] files = directory(context).listFiles();
+        if(files == null || files.length == 0){
+            return 0;
+        }
+        List<String> paths = database.petDao().loadPhotoPaths();
+        Set<String> referenced = new HashSet<>(paths);
+        long cutoff = System.currentTimeMillis() - MIN_UNREFERENCED_AGE_MS;
+        int deleted = 0;
+        for(File file : files){
+            if(file.lastModified() < cutoff && !referenced.contains(file.getAbsolutePath())
+                    && file.delete()){
+                deleted++;
+            }
+        }
+        return deleted;
+    }
+}
@@ -0,0 +1,125 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.database.Cursor;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+
+import java.util.concurrent.CancellationException;
+
+/**
+ * Deletes every pet without holding the write lock for the whole table.
+ *
+ * {@link #purge(ProgressListener)} deletes in id ranges of at most chunkSize pets, each in its
+ * own short transaction. Writers on other threads, such as the importer, sync, bulk writes and
+ * maintenance, get in between chunks: ending a transaction releases the primary connection, and
+ * Android's connection pool hands it straight to a writer waiting for it. Readers see progress
+ * and the WAL can be checkpointed between chunks too. Only the pets present when the purge
+ * starts are deleted, pets inserted while it runs are kept.
+ *
+ * The delete triggers of the search index, the statistics, the change log and sync fire for
+ * every pet, and so do Room's invalidation triggers, which are installed while anything observes
+ * the table. {@link PetCache} and {@link PetPager} observe it for the whole process, so the
+ * table is never emptied in one step.
+ */
+public class PetPurger {
+
+    public static final int DEFAULT_CHUNK_SIZE = 500;
+
+    /**
+     * Receives progress on the purging thread, after every chunk.
+     */
+    public interface ProgressListener {
+        void onProgress(long deletedRows, long totalRows);
+    }
+
+    private static final String TABLE_PET = "pet";
+
+    private static final String MAX_ID_QUERY = "SELECT MAX(id), COUNT(*) FROM pet";
+
+    //The id that ends the next chunk, found on the primary key without reading the rows
+    private static final String CHUNK_END_QUERY =
+            "SELECT id FROM pet WHERE id > ? AND id <= ? ORDER BY id LIMIT 1 OFFSET ?";
+
+    private final PetsDatabase mDb;
+    private final int mChunkSize;
+    private volatile boolean mCancelled = false;
+
+    public PetPurger(PetsDatabase database){
+        this(database, DEFAULT_CHUNK_SIZE);
+    }
+
+    public PetPurger(PetsDatabase database, int chunkSize){
+        if(chunkSize <= 0){
+            throw new IllegalArgumentException("chunkSize must be positive");
+        }
+        mDb = database;
+        mChunkSize = chunkSize;
+    }
+
+    /**
+     * Stops the purge at the next chunk. The purge then throws a CancellationException, and the
+     * chunks already deleted stay deleted.
+     */
+    public void cancel(){
+        mCancelled = true;
+    }
+
+    /**
+     * @return the number of pets deleted.
+     * @throws CancellationException if {@link #cancel()} was called before the purge finished
+     */
+    @WorkerThread
+    public long purge(@Nullable ProgressListener listener){
+        long maxId;
+        long total;
+        Cursor cursor = mDb.query(MAX_ID_QUERY, null);
+        try {
+            cursor.moveToFirst();
+            maxId = cursor.isNull(0) ? 0 : cursor.getLong(0);
+            total = cursor.getLong(1);
+        } finally {
+            cursor.close();
+        }
+
+        long deleted = 0;
+        long lastId = 0;
+        while(lastId < maxId){
+            if(mCancelled){
+                throw new CancellationException("Purge cancelled after " + deleted + " pets");
+            }
+            long chunkEnd = findChunkEnd(lastId, maxId);
+            deleted += deleteRange(lastId, chunkEnd);
+            lastId = chunkEnd;
+            mDb.petCache().clear();
+            if(listener != null){
+                listener.onProgress(deleted, total);
+            }
+        }
+        return deleted;
+    }
+
+    private long findChunkEnd(long lastId, long maxId){
+        Cursor cursor = mDb.query(new SimpleSQLiteQuery(CHUNK_END_QUERY,
+                new Object[]{lastId, maxId, mChunkSize - 1}));
+        try {
+            //Fewer than chunkSize pets left, the last chunk runs to the end
+            return cursor.moveToFirst() ? cursor.getLong(0) : maxId;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //Goes through runInTransaction so Room tells its observers about the change when it commits
+    private int deleteRange(final long afterId, final long lastId){
+        final int[] deleted = new int[1];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                deleted[0] = mDb.getOpenHelper().getWritableDatabase()
+                        .delete(TABLE_PET, "id > ? AND id <= ?", new Object[]{afterId, lastId});
+            }
+        });
+        return deleted[0];
+    }
+}
@@ -0,0 +1,382 @@
+package com.example.android.pets.data;
+
+import android.support.annotation.Nullable;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.util.Arrays;
+
+/**
+ * Reads pet records one at a time from a CSV or JSON Lines stream, in the layout written by
+ * {@link PetExporter}.
+ *
+ * Each record comes back as its raw field values in COLUMN order (id, name, breed, gender,
+ * weight), null where the record has no value. Turning them into a PetEntry, and deciding what
+ * is valid, is left to {@link PetImporter}. A record that can't be parsed at all throws a
+ * MalformedRecordException, after which reading carries on with the next record.
+ */
+abstract class PetRecordReader {
+
+    static final int FIELD_ID = 0;
+    static final int FIELD_NAME = 1;
+    static final int FIELD_BREED = 2;
+    static final int FIELD_GENDER = 3;
+    static final int FIELD_WEIGHT = 4;
+    static final int FIELD_COUNT = 5;
+
+    private static final String[] COLUMNS = {
+            PetFileFormat.COLUMN_ID,
+            PetFileFormat.COLUMN_NAME,
+            PetFileFormat.COLUMN_BREED,
+            PetFileFormat.COLUMN_GENDER,
+            PetFileFormat.COLUMN_WEIGHT
+    };
+
+    static class MalformedRecordException extends Exception {
+        MalformedRecordException(String message){
+            super(message);
+        }
+    }
+
+    static PetRecordReader create(Reader reader, int format) throws IOException {
+        PetFileFormat.checkFormat(format);
+        return format == PetFileFormat.FORMAT_CSV ? new Csv(reader) : new JsonLines(reader);
+    }
+
+    private final Reader mReader;
+    //One character of look-ahead
+    private int mPeeked = -2;
+    //The last character handed out by read, to know whether a bad record already ate its newline
+    private int mLastRead = '\n';
+
+    PetRecordReader(Reader reader){
+        mReader = reader;
+    }
+
+    /**
+     * @return the fields of the next record, or null at the end of the stream. The array is
+     * reused by the next call.
+     */
+    @Nullable
+    abstract String[] next() throws IOException, MalformedRecordException;
+
+    void close() throws IOException {
+        mReader.close();
+    }
+
+    int read() throws IOException {
+        if(mPeeked != -2){
+            mLastRead = mPeeked;
+            mPeeked = -2;
+        }else{
+            mLastRead = mReader.read();
+        }
+        return mLastRead;
+    }
+
+    int peek() throws IOException {
+        if(mPeeked == -2){
+            mPeeked = mReader.read();
+        }
+        return mPeeked;
+    }
+
+    //Drops the rest of a bad record so the next one starts clean
+    void skipLine() throws IOException {
+        int c = mLastRead;
+        while(c != -1 && c != '\n'){
+            c = read();
+        }
+    }
+
+    static int columnIndex(String column){
+        for(int i = 0; i < COLUMNS.length; i++){
+            if(COLUMNS[i].equals(column)){
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * RFC 4180 CSV with a header row that names the columns, in any order. Unknown columns are
+     * ignored, quoted fields may span lines.
+     */
+    private static class Csv extends PetRecordReader {
+
+        private final String[] mFields = new String[FIELD_COUNT];
+        private final StringBuilder mField = new StringBuilder();
+        //For every column of the file, the field it fills, or -1
+        private int[] mColumnFields;
+
+        Csv(Reader reader){
+            super(reader);
+        }
+
+        @Override
+        String[] next() throws IOException, MalformedRecordException {
+            if(mColumnFields == null){
+                if(peek() == -1){
+                    return null;
+                }
+                readHeader();
+            }
+            Arrays.fill(mFields, null);
+            int column = 0;
+            while(true){
+                int end = readField();
+                if(column == 0 && end != ',' && mField.length() == 0){
+                    if(end == -1){
+                        return null;
+                    }
+                    //Blank line
+                    continue;
+                }
+                if(column < mColumnFields.length && mColumnFields[column] != -1 && mField.length() > 0){
+                    mFields[mColumnFields[column]] = mField.toString();
+                }
+                column++;
+                if(end != ','){
+                    break;
+                }
+            }
+            if(column != mColumnFields.length){
+                throw new MalformedRecordException("Expected " + mColumnFields.length
+                        + " columns but found " + column);
+            }
+            return mFields;
+        }
+
+        //A file without a usable header can't be read at all, so this fails the whole import
+        private void readHeader() throws IOException {
+            int[] columnFields = new int[FIELD_COUNT * 2];
+            int count = 0;
+            int end;
+            do {
+                try {
+                    end = readField();
+                } catch (MalformedRecordException e){
+                    throw new IOException("Bad CSV header: " + e.getMessage());
+                }
+                if(count == columnFields.length){
+                    columnFields = Arrays.copyOf(columnFields, count * 2);
+                }
+                columnFields[count++] = columnIndex(mField.toString().trim());
+            } while(end == ',');
+            mColumnFields = Arrays.copyOf(columnFields, count);
+            for(int field : mColumnFields){
+                if(field == FIELD_NAME){
+                    return;
+                }
+            }
+            throw new IOException("The CSV header has no " + PetFileFormat.COLUMN_NAME + " column");
+        }
+
+        /**
+         * Reads one field into mField.
+         *
+         * @return what ended it: ',' for another field, '\n' for the end of the record, or -1
+         * for the end of the stream.
+         */
+        private int readField() throws IOException, MalformedRecordException {
+            mField.setLength(0);
+            int c = read();
+            if(c == '"'){
+                while(true){
+                    c = read();
+                    if(c == -1){
+                        throw new MalformedRecordException("Unterminated quoted field");
+                    }
+                    if(c == '"'){
+                        if(peek() != '"'){
+                            break;
+                        }
+                        read();
+                    }
+                    mField.append((char) c);
+                }
+                c = read();
+                if(c == '\r'){
+                    c = read();
+                }
+                if(c != ',' && c != '\n' && c != -1){
+                    skipLine();
+                    throw new MalformedRecordException("Unexpected text after a quoted field");
+                }
+                return c;
+            }
+            while(c != ',' && c != '\n' && c != -1){
+                if(c != '\r'){
+                    mField.append((char) c);
+                }
+                c = read();
+            }
+            return c;
+        }
+    }
+
+    /**
+     * One flat JSON object per line. Unknown keys are ignored, numbers are kept as written and
+     * blank lines are skipped.
+     */
+    private static class JsonLines extends PetRecordReader {
+
+        private final String[] mFields = new String[FIELD_COUNT];
+        private final StringBuilder mValue = new StringBuilder();
+
+        JsonLines(Reader reader){
+            super(reader);
+        }
+
+        @Override
+        String[] next() throws IOException, MalformedRecordException {
+            int c = skipWhitespace();
+            if(c == -1){
+                return null;
+            }
+            Arrays.fill(mFields, null);
+            try {
+                expect('{');
+                c = skipSpaces();
+                if(c == '}'){
+                    read();
+                }else{
+                    while(true){
+                        String key = readString();
+                        skipSpaces();
+                        expect(':');
+                        skipSpaces();
+                        String value = readValue();
+                        int field = columnIndex(key);
+                        if(field != -1){
+                            mFields[field] = value;
+                        }
+                        c = skipSpaces();
+                        read();
+                        if(c == '}'){
+                            break;
+                        }
+                        if(c != ','){
+                            throw new MalformedRecordException("Expected , or } but found " + describe(c));
+                        }
+                        skipSpaces();
+                    }
+                }
+                skipSpaces();
+                c = read();
+                if(c != '\n' && c != -1){
+                    throw new MalformedRecordException("Unexpected text after the object");
+                }
+                return mFields;
+            } catch (MalformedRecordException e){
+                skipLine();
+                throw e;
+            }
+        }
+
+        private String readValue() throws IOException, MalformedRecordException {
+            int c = peek();
+            if(c == '"'){
+                return readString();
+            }
+            mValue.setLength(0);
+            while(c != -1 && c != ',' && c != '}' && !Character.isWhitespace(c)){
+                mValue.append((char) read());
+                c = peek();
+            }
+            String literal = mValue.toString();
+            if(literal.equals("null")){
+                return null;
+            }
+            if(literal.isEmpty() || literal.equals("{") || literal.equals("[")){
+                throw new MalformedRecordException("Only flat objects of strings and numbers are supported");
+            }
+            return literal;
+        }
+
+        private String readString() throws IOException, MalformedRecordException {
+            expect('"');
+            mValue.setLength(0);
+            while(true){
+                int c = read();
+                if(c == -1 || c == '\n'){
+                    throw new MalformedRecordException("Unterminated string");
+                }
+                if(c == '"'){
+                    return mValue.toString();
+                }
+                if(c != '\\'){
+                    mValue.append((char) c);
+                    continue;
+                }
+                c = read();
+                switch (c){
+                    case '"':
+                    case '\\':
+                    case '/':
+                        mValue.append((char) c);
+                        break;
+                    case 'b':
+                        mValue.append('\b');
+                        break;
+                    case 'f':
+                        mValue.append('\f');
+                        break;
+                    case 'n':
+                        mValue.append('\n');
+                        break;
+                    case 'r':
+                        mValue.append('\r');
+                        break;
+                    case 't':
+                        mValue.append('\t');
+                        break;
+                    case 'u':
+                        int code = 0;
+                        for(int i = 0; i < 4; i++){
+                            int digit = Character.digit(read(), 16);
+                            if(digit == -1){
+                                throw new MalformedRecordException("Bad \\u escape");
+                            }
+                            code = code * 16 + digit;
+                        }
+                        mValue.append((char) code);
+                        break;
+                    default:
+                        throw new MalformedRecordException("Bad escape \\" + describe(c));
+                }
+            }
+        }
+
+        private void expect(int expected) throws IOException, MalformedRecordException {
+            int c = read();
+            if(c != expected){
+                throw new MalformedRecordException("Expected " + (char) expected + " but found " + describe(c));
+            }
+        }
+
+        //Skips whitespace, newlines included, and returns the next character without reading it
+        private int skipWhitespace() throws IOException {
+            int c = peek();
+            while(c != -1 && Character.isWhitespace(c)){
+                read();
+                c = peek();
+            }
+            return c;
+        }
+
+        //Same as skipWhitespace, but stops at the end of the line
+        private int skipSpaces() throws IOException {
+            int c = peek();
+            while(c != -1 && c != '\n' && Character.isWhitespace(c)){
+                read();
+                c = peek();
+            }
+            return c;
+        }
+
+        private static String describe(int c){
+            return c == -1 ? "the end of the file" : c == '\n' ? "the end of the line" : String.valueOf((char) c);
+        }
+    }
+}
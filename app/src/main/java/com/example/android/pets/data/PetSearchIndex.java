@@ -0,0 +1,120 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SimpleSQLiteQuery;
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteQuery;
+
+/**
+ * Full-text index over the name and breed of every pet.
+ *
+ * The index is an FTS4 table whose docid is the pet id. Triggers on the pet table keep it in
+ * sync, so every write path (DAO, bulk writer, raw SQL) updates it without knowing it exists.
+ * Room does not manage the table, which is why it is created from {@link PetsDatabase}'s
+ * callback and migrations, and queried through a raw query.
+ */
+public final class PetSearchIndex {
+
+    static final String TABLE_NAME = "pet_fts";
+
+    private static final String CREATE_TABLE =
+            "CREATE VIRTUAL TABLE IF NOT EXISTS " + TABLE_NAME + " USING fts4(name, breed)";
+
+    private static final String CREATE_DELETE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS pet_fts_after_delete AFTER DELETE ON pet BEGIN "
+                    + "DELETE FROM " + TABLE_NAME + " WHERE docid = OLD.id; END";
+
+    private static final String SEARCH_QUERY =
+            "SELECT pet.id, pet.name, pet.breed_id, pet.weight, pet.photo_path FROM " + TABLE_NAME
+                    + " JOIN pet ON pet.id = " + TABLE_NAME + ".docid"
+                    + " WHERE " + TABLE_NAME + " MATCH ? LIMIT ?";
+
+    private PetSearchIndex(){
+    }
+
+    /**
+     * Creates the index table and the triggers that keep it in sync with the pet table.
+     */
+    static void create(SupportSQLiteDatabase db){
+        create(db, "breed_id", BreedDictionary.nameSql("NEW"));
+    }
+
+    /**
+     * Same as {@link #create(SupportSQLiteDatabase)} for the schema before version 8, when the
+     * pet table held the breed name itself. Only the migrations up to version 8 use it.
+     */
+    static void createBeforeBreedTable(SupportSQLiteDatabase db){
+        create(db, "breed", "NEW.breed");
+    }
+
+    private static void create(SupportSQLiteDatabase db, String breedColumn, String newBreed){
+        db.execSQL(CREATE_TABLE);
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS pet_fts_after_insert AFTER INSERT ON pet BEGIN "
+                + "INSERT INTO " + TABLE_NAME + "(docid, name, breed) "
+                + "VALUES (NEW.id, NEW.name, " + newBreed + "); END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS pet_fts_after_update AFTER UPDATE OF name, " + breedColumn
+                + " ON pet BEGIN "
+                + "UPDATE " + TABLE_NAME + " SET name = NEW.name, breed = " + newBreed + " "
+                + "WHERE docid = NEW.id; END");
+        db.execSQL(CREATE_DELETE_TRIGGER);
+    }
+
+    /**
+     * Fills the index from scratch with the pets already in the table.
+     */
+    static void rebuild(SupportSQLiteDatabase db){
+        db.execSQL("DELETE FROM " + TABLE_NAME);
+        db.execSQL("INSERT INTO " + TABLE_NAME + "(docid, name, breed) "
+                + "SELECT pet.id, pet.name, breed.name FROM pet JOIN breed ON breed.id = pet.breed_id");
+    }
+
+    /**
+     * Same as {@link #rebuild(SupportSQLiteDatabase)} for the schema before version 8.
+     */
+    static void rebuildBeforeBreedTable(SupportSQLiteDatabase db){
+        db.execSQL("DELETE FROM " + TABLE_NAME);
+        db.execSQL("INSERT INTO " + TABLE_NAME + "(docid, name, breed) SELECT id, name, breed FROM pet");
+    }
+
+    /**
+     * Builds a prefix search for what the user typed. Every word has to match the start of a
+     * word in the name or breed, so "gold ret" finds "Golden Retriever".
+     *
+     * @return the query, or null if the text has nothing to search for.
+     */
+    public static SupportSQLiteQuery buildSearchQuery(String text, int limit){
+        String match = toMatchExpression(text);
+        if(match == null){
+            return null;
+        }
+        return new SimpleSQLiteQuery(SEARCH_QUERY, new Object[]{match, limit});
+    }
+
+    //Drops everything but letters and digits, so user input can never be read as FTS syntax
+    static String toMatchExpression(String text){
+        if(text == null){
+            return null;
+        }
+        StringBuilder match = new StringBuilder();
+        for(String token : text.split("[^\\p{L}\\p{N}]+")){
+            if(token.isEmpty()){
+                continue;
+            }
+            if(match.length() > 0){
+                match.append(' ');
+            }
+            //Lower case so words like OR and NOT are never taken for operators
+            appendAsciiLowerCase(match, token);
+            match.append('*');
+        }
+        return match.length() == 0 ? null : match.toString();
+    }
+
+    //The simple tokenizer only folds A-Z, other letters are indexed as they are. Folding them
+    //here too would make e.g. "Élan" never match itself.
+    private static void appendAsciiLowerCase(StringBuilder out, String token){
+        for(int i = 0; i < token.length(); i++){
+            char c = token.charAt(i);
+            out.append(c >= 'A' && c <= 'Z' ? (char) (c + ('a' - 'A')) : c);
+        }
+    }
+}
@@ -0,0 +1,31 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Embedded;
+
+/**
+ * A pet as it was read, and the sequence number of the newest change log entry at that moment.
+ * Every write to the pet table is logged with a higher number, so any change to the pet that the
+ * read didn't see has a number above this one. See {@link PetCache}.
+ */
+public class PetSnapshot {
+
+    @Embedded
+    private final PetEntry pet;
+    //Null while the change log is empty
+    @ColumnInfo(name = "change_seq")
+    private final Long changeSeq;
+
+    public PetSnapshot(PetEntry pet, Long changeSeq){
+        this.pet = pet;
+        this.changeSeq = changeSeq;
+    }
+
+    public PetEntry getPet() {
+        return pet;
+    }
+
+    public Long getChangeSeq() {
+        return changeSeq;
+    }
+}
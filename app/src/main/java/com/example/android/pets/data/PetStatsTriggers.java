@@ -0,0 +1,105 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+
+/**
+ * Triggers that keep the summary tables behind the shelter dashboard up to date: pets and total
+ * weight per gender ({@link PetGenderStats}), pets per breed ({@link PetBreedStats}) and the
+ * weight histogram ({@link PetWeightBucket}).
+ *
+ * Every insert, update and delete on the pet table adjusts the counts of the rows it touches, so
+ * reading the statistics costs the same however many pets there are, and every write path (DAO,
+ * bulk writer, importer, raw SQL) keeps them right. The tables are Room entities so the DAO can
+ * observe them, but the triggers are not, which is why they are created from
+ * {@link PetsDatabase}'s callback and migrations like the search index's.
+ */
+final class PetStatsTriggers {
+
+    static final String TABLE_GENDER = "pet_stats_gender";
+    static final String TABLE_BREED = "pet_stats_breed";
+    static final String TABLE_WEIGHT = "pet_stats_weight";
+
+    private static final String NEW_BUCKET = "(NEW.weight / " + PetWeightBucket.WIDTH + ")";
+    private static final String OLD_BUCKET = "(OLD.weight / " + PetWeightBucket.WIDTH + ")";
+
+    private PetStatsTriggers(){
+    }
+
+    //Creates the rows the pet falls in if they don't exist yet, then counts it in
+    private static String add(String pet, String breed, String bucket){
+        return "INSERT OR IGNORE INTO " + TABLE_GENDER + "(gender, pet_count, total_weight) "
+                + "VALUES (" + pet + ".gender, 0, 0); "
+                + "UPDATE " + TABLE_GENDER + " SET pet_count = pet_count + 1, "
+                + "total_weight = total_weight + " + pet + ".weight WHERE gender = " + pet + ".gender; "
+                + "INSERT OR IGNORE INTO " + TABLE_BREED + "(breed, pet_count) VALUES (" + breed + ", 0); "
+                + "UPDATE " + TABLE_BREED + " SET pet_count = pet_count + 1 WHERE breed = " + breed + "; "
+                + "INSERT OR IGNORE INTO " + TABLE_WEIGHT + "(bucket, pet_count) VALUES (" + bucket + ", 0); "
+                + "UPDATE " + TABLE_WEIGHT + " SET pet_count = pet_count + 1 WHERE bucket = " + bucket + "; ";
+    }
+
+    //Counts the pet out, and drops breeds and buckets left empty so they don't pile up
+    private static String remove(String pet, String breed, String bucket){
+        return "UPDATE " + TABLE_GENDER + " SET pet_count = pet_count - 1, "
+                + "total_weight = total_weight - " + pet + ".weight WHERE gender = " + pet + ".gender; "
+                + "UPDATE " + TABLE_BREED + " SET pet_count = pet_count - 1 WHERE breed = " + breed + "; "
+                + "DELETE FROM " + TABLE_BREED + " WHERE breed = " + breed + " AND pet_count <= 0; "
+                + "UPDATE " + TABLE_WEIGHT + " SET pet_count = pet_count - 1 WHERE bucket = " + bucket + "; "
+                + "DELETE FROM " + TABLE_WEIGHT + " WHERE bucket = " + bucket + " AND pet_count <= 0; ";
+    }
+
+    /**
+     * Creates the triggers. The tables themselves are Room's.
+     */
+    static void create(SupportSQLiteDatabase db){
+        //Pets without a breed have the empty breed, so the name is never NULL
+        create(db, "breed_id", BreedDictionary.nameSql("NEW"), BreedDictionary.nameSql("OLD"));
+    }
+
+    /**
+     * Same as {@link #create(SupportSQLiteDatabase)} for the schema before version 8, when the
+     * pet table held the breed name itself. Only the migrations up to version 8 use it.
+     */
+    static void createBeforeBreedTable(SupportSQLiteDatabase db){
+        //Pets without a breed are counted under the empty breed, a primary key can't be NULL
+        create(db, "breed", "COALESCE(NEW.breed, '')", "COALESCE(OLD.breed, '')");
+    }
+
+    private static void create(SupportSQLiteDatabase db, String breedColumn, String newBreed, String oldBreed){
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS pet_stats_after_insert AFTER INSERT ON pet BEGIN "
+                + add("NEW", newBreed, NEW_BUCKET)
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS pet_stats_after_update AFTER UPDATE OF gender, " + breedColumn
+                + ", weight ON pet BEGIN "
+                + remove("OLD", oldBreed, OLD_BUCKET)
+                + add("NEW", newBreed, NEW_BUCKET)
+                + "END");
+        db.execSQL("CREATE TRIGGER IF NOT EXISTS pet_stats_after_delete AFTER DELETE ON pet BEGIN "
+                + remove("OLD", oldBreed, OLD_BUCKET)
+                + "END");
+    }
+
+    /**
+     * Computes the statistics from scratch from the pets already in the table.
+     */
+    static void rebuild(SupportSQLiteDatabase db){
+        rebuild(db, "SELECT breed.name, COUNT(*) FROM pet JOIN breed ON breed.id = pet.breed_id "
+                + "GROUP BY breed.name");
+    }
+
+    /**
+     * Same as {@link #rebuild(SupportSQLiteDatabase)} for the schema before version 8.
+     */
+    static void rebuildBeforeBreedTable(SupportSQLiteDatabase db){
+        rebuild(db, "SELECT COALESCE(breed, ''), COUNT(*) FROM pet GROUP BY COALESCE(breed, '')");
+    }
+
+    private static void rebuild(SupportSQLiteDatabase db, String breedCounts){
+        clear(db);
+        db.execSQL("INSERT INTO " + TABLE_GENDER + "(gender, pet_count, total_weight) "
+                + "SELECT gender, COUNT(*), SUM(weight) FROM pet GROUP BY gender");
+        db.execSQL("INSERT INTO " + TABLE_BREED + "(breed, pet_count) " + breedCounts);
+        db.execSQL("INSERT INTO " + TABLE_WEIGHT + "(bucket, pet_count) "
+                + "SELECT weight / " + PetWeightBucket.WIDTH + ", COUNT(*) FROM pet "
+                + "GROUP BY weight / " + PetWeightBucket.WIDTH);
+    }
+}
@@ -0,0 +1,30 @@
+package com.example.android.pets.data;
+
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+
+/**
+ * Where {@link PetSyncEngine} pushes local changes to and pulls remote ones from. Bodies are
+ * gzip compressed JSON Lines in the formats of {@link PetSyncCodec}, a backend only moves them.
+ *
+ * The backend owns the versions: it accepts a pushed record only if the version it was based on
+ * is still the current one, gives it a new, higher version, and otherwise answers with its own
+ * current record.
+ */
+public interface PetSyncBackend {
+
+    /**
+     * @param body the pushed {@link RemotePet}s, each at the version it was based on
+     * @return one {@link PetSyncCodec.PushResult} per pushed record, in the same order
+     */
+    @WorkerThread
+    byte[] push(byte[] body) throws IOException;
+
+    /**
+     * @return up to limit {@link RemotePet}s, tombstones included, with a version above
+     * sinceVersion, by ascending version
+     */
+    @WorkerThread
+    byte[] pull(long sinceVersion, int limit) throws IOException;
+}
@@ -0,0 +1,220 @@
+package com.example.android.pets.data;
+
+import android.support.annotation.Nullable;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.BufferedReader;
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStreamReader;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.nio.charset.Charset;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.zip.GZIPInputStream;
+import java.util.zip.GZIPOutputStream;
+
+/**
+ * The wire format between {@link PetSyncEngine} and a {@link PetSyncBackend}: gzip compressed
+ * JSON Lines, one record per line. Pets are sent with short keys and without their local id,
+ * which means nothing to the backend.
+ *
+ * A pet:    {"k":"…","v":12,"d":false,"n":"Toto","b":"Terrier","g":1,"w":7}
+ * A result: {"k":"…","ok":true,"v":13} or {"k":"…","ok":false,"cur":{…the backend's pet…}}
+ */
+public final class PetSyncCodec {
+
+    public static final String CONTENT_TYPE = "application/x-ndjson";
+
+    private static final Charset UTF_8 = Charset.forName("UTF-8");
+
+    private static final String KEY = "k";
+    private static final String VERSION = "v";
+    private static final String DELETED = "d";
+    private static final String NAME = "n";
+    private static final String BREED = "b";
+    private static final String GENDER = "g";
+    private static final String WEIGHT = "w";
+    private static final String ACCEPTED = "ok";
+    private static final String CURRENT = "cur";
+
+    /**
+     * The backend's answer to one pushed pet.
+     */
+    public static final class PushResult {
+
+        private final String key;
+        private final boolean accepted;
+        private final long version;
+        private final RemotePet current;
+
+        private PushResult(String key, boolean accepted, long version, @Nullable RemotePet current){
+            this.key = key;
+            this.accepted = accepted;
+            this.version = version;
+            this.current = current;
+        }
+
+        //The push was applied, and the pet is now at version
+        public static PushResult accepted(String key, long version){
+            return new PushResult(key, true, version, null);
+        }
+
+        //The push was based on an old version, current is what the backend has instead
+        public static PushResult conflict(String key, @Nullable RemotePet current){
+            return new PushResult(key, false, current == null ? 0 : current.getVersion(), current);
+        }
+
+        public String getKey() {
+            return key;
+        }
+
+        public boolean isAccepted() {
+            return accepted;
+        }
+
+        public long getVersion() {
+            return version;
+        }
+
+        @Nullable
+        public RemotePet getCurrent() {
+            return current;
+        }
+    }
+
+    private PetSyncCodec(){
+    }
+
+    public static byte[] encodePets(List<RemotePet> pets) throws IOException {
+        List<JSONObject> lines = new ArrayList<>(pets.size());
+        try {
+            for(RemotePet pet : pets){
+                lines.add(toJson(pet));
+            }
+        } catch (JSONException e){
+            throw new IOException("Can't encode pet", e);
+        }
+        return encode(lines);
+    }
+
+    public static List<RemotePet> decodePets(byte[] body) throws IOException {
+        List<JSONObject> lines = decode(body);
+        List<RemotePet> pets = new ArrayList<>(lines.size());
+        try {
+            for(JSONObject line : lines){
+                pets.add(fromJson(line));
+            }
+        } catch (JSONException e){
+            throw new IOException("Malformed pet", e);
+        }
+        return pets;
+    }
+
+    public static byte[] encodePushResults(List<PushResult> results) throws IOException {
+        List<JSONObject> lines = new ArrayList<>(results.size());
+        try {
+            for(PushResult result : results){
+                JSONObject line = new JSONObject();
+                line.put(KEY, result.key);
+                line.put(ACCEPTED, result.accepted);
+                if(result.accepted){
+                    line.put(VERSION, result.version);
+                }else if(result.current != null){
+                    line.put(CURRENT, toJson(result.current));
+                }
+                lines.add(line);
+            }
+        } catch (JSONException e){
+            throw new IOException("Can't encode push result", e);
+        }
+        return encode(lines);
+    }
+
+    public static List<PushResult> decodePushResults(byte[] body) throws IOException {
+        List<JSONObject> lines = decode(body);
+        List<PushResult> results = new ArrayList<>(lines.size());
+        try {
+            for(JSONObject line : lines){
+                String key = line.getString(KEY);
+                if(line.getBoolean(ACCEPTED)){
+                    results.add(PushResult.accepted(key, line.getLong(VERSION)));
+                }else{
+                    JSONObject current = line.optJSONObject(CURRENT);
+                    results.add(PushResult.conflict(key, current == null ? null : fromJson(current)));
+                }
+            }
+        } catch (JSONException e){
+            throw new IOException("Malformed push result", e);
+        }
+        return results;
+    }
+
+    private static JSONObject toJson(RemotePet pet) throws JSONException {
+        JSONObject json = new JSONObject();
+        json.put(KEY, pet.getKey());
+        json.put(VERSION, pet.getVersion());
+        json.put(DELETED, pet.isDeleted());
+        if(!pet.isDeleted()){
+            json.put(NAME, pet.getName() == null ? JSONObject.NULL : pet.getName());
+            json.put(BREED, pet.getBreed() == null ? JSONObject.NULL : pet.getBreed());
+            json.put(GENDER, pet.getGender());
+            json.put(WEIGHT, pet.getWeight());
+        }
+        return json;
+    }
+
+    private static RemotePet fromJson(JSONObject json) throws JSONException {
+        String key = json.getString(KEY);
+        long version = json.getLong(VERSION);
+        if(json.optBoolean(DELETED)){
+            return RemotePet.tombstone(key, version);
+        }
+        //optString would turn a null into "null"
+        return new RemotePet(key, version, false,
+                json.isNull(NAME) ? null : json.getString(NAME),
+                json.isNull(BREED) ? null : json.getString(BREED),
+                json.optInt(GENDER, PetEntry.GENDER_UNKNOWN),
+                json.optInt(WEIGHT, 0));
+    }
+
+    private static byte[] encode(List<JSONObject> lines) throws IOException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        Writer writer = new OutputStreamWriter(new GZIPOutputStream(bytes, PetFileFormat.BUFFER_SIZE), UTF_8);
+        try {
+            for(JSONObject line : lines){
+                writer.write(line.toString());
+                writer.write('\n');
+            }
+        } finally {
+            writer.close();
+        }
+        return bytes.toByteArray();
+    }
+
+    private static List<JSONObject> decode(byte[] body) throws IOException {
+        List<JSONObject> lines = new ArrayList<>();
+        BufferedReader reader = new BufferedReader(new InputStreamReader(
+                new GZIPInputStream(new ByteArrayInputStream(body), PetFileFormat.BUFFER_SIZE), UTF_8));
+        try {
+            String line;
+            while((line = reader.readLine()) != null){
+                if(line.trim().isEmpty()){
+                    continue;
+                }
+                try {
+                    lines.add(new JSONObject(line));
+                } catch (JSONException e){
+                    throw new IOException("Malformed line " + (lines.size() + 1), e);
+                }
+            }
+        } finally {
+            reader.close();
+        }
+        return lines;
+    }
+}
@@ -0,0 +1,34 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+import android.support.annotation.NonNull;
+
+/**
+ * The highest remote version pulled from one sync backend, so the next pull only asks for what
+ * is newer. Saved in the same transaction as the pets it pulled.
+ */
+@Entity(tableName = "pet_sync_cursor")
+public class PetSyncCursor {
+
+    @PrimaryKey
+    @NonNull
+    private final String backend;
+    @ColumnInfo(name = "pulled_version")
+    private final long pulledVersion;
+
+    public PetSyncCursor(@NonNull String backend, long pulledVersion){
+        this.backend = backend;
+        this.pulledVersion = pulledVersion;
+    }
+
+    @NonNull
+    public String getBackend() {
+        return backend;
+    }
+
+    public long getPulledVersion() {
+        return pulledVersion;
+    }
+}
@@ -0,0 +1,316 @@
+package com.example.android.pets.data;
+
+import android.os.SystemClock;
+import android.support.annotation.WorkerThread;
+
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.UUID;
+import java.util.concurrent.CancellationException;
+
+/**
+ * Two-way sync of the pet table with a {@link PetSyncBackend}, in batches.
+ *
+ * Local writes are tracked by the triggers in {@link PetSyncTriggers}, so any write path marks
+ * pets dirty. A sync first pushes the dirty pets, batchSize to a request, then pulls everything
+ * the backend has that is newer than what was last pulled, batchSize to a request. Each batch is
+ * applied locally in one transaction. Pets are matched by their external key, and a pet that
+ * never had one gets a random one before its first push.
+ *
+ * Conflicts are resolved by version. Every pushed pet carries the remote version its change was
+ * based on, and the backend refuses it if that is no longer the current version. The backend's
+ * copy wins then and replaces the local one, even if its version isn't newer than the one last
+ * synced. A pulled pet likewise replaces the local one whenever its version is higher than the
+ * one last synced, local changes or not.
+ *
+ * The push goes through the dirty pets once, in id order. A pet that is still dirty after its
+ * push, e.g. because it was written again while the push was on the way, is pushed by the next
+ * sync, so a sync always ends.
+ *
+ * The sync state in pet_sync is the database's, not a backend's, so a database syncs with one
+ * backend. One engine runs one sync at a time. {@link #cancel()} may be called from any thread.
+ */
+public class PetSyncEngine {
+
+    public static final int DEFAULT_BATCH_SIZE = 500;
+
+    /**
+     * What one sync did, and what it cost on the wire.
+     */
+    public static class Result {
+
+        private final int pushed;
+        private final int pulled;
+        private final int conflicts;
+        private final long bytesSent;
+        private final long bytesReceived;
+        private final long durationMs;
+
+        Result(int pushed, int pulled, int conflicts, long bytesSent, long bytesReceived, long durationMs){
+            this.pushed = pushed;
+            this.pulled = pulled;
+            this.conflicts = conflicts;
+            this.bytesSent = bytesSent;
+            this.bytesReceived = bytesReceived;
+            this.durationMs = durationMs;
+        }
+
+        //Local changes the backend accepted
+        public int getPushed() {
+            return pushed;
+        }
+
+        //Remote changes applied locally
+        public int getPulled() {
+            return pulled;
+        }
+
+        //Local changes replaced by a newer remote version
+        public int getConflicts() {
+            return conflicts;
+        }
+
+        //Request and response bodies, compressed, headers excluded
+        public long getBytesSent() {
+            return bytesSent;
+        }
+
+        public long getBytesReceived() {
+            return bytesReceived;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        @Override
+        public String toString() {
+            return String.format(Locale.US, "pushed %d, pulled %d, %d conflicts, %d B sent, %d B received in %dms",
+                    pushed, pulled, conflicts, bytesSent, bytesReceived, durationMs);
+        }
+    }
+
+    private final PetsDatabase mDb;
+    private final PetSyncBackend mBackend;
+    private final String mBackendName;
+    private final int mBatchSize;
+    private volatile boolean mCancelled = false;
+
+    //Counters of the sync in progress
+    private int mPushed;
+    private int mPulled;
+    private int mConflicts;
+    private long mBytesSent;
+    private long mBytesReceived;
+    //The push resumes after this pet
+    private int mLastPushedId;
+
+    /**
+     * @param backendName names the backend's pull cursor
+     */
+    public PetSyncEngine(PetsDatabase database, PetSyncBackend backend, String backendName){
+        this(database, backend, backendName, DEFAULT_BATCH_SIZE);
+    }
+
+    public PetSyncEngine(PetsDatabase database, PetSyncBackend backend, String backendName, int batchSize){
+        if(batchSize <= 0){
+            throw new IllegalArgumentException("batchSize must be positive");
+        }
+        mDb = database;
+        mBackend = backend;
+        mBackendName = backendName;
+        mBatchSize = batchSize;
+    }
+
+    /**
+     * Stops the sync after the batch in progress. The sync then throws a CancellationException,
+     * and every batch applied so far stays applied.
+     */
+    public void cancel(){
+        mCancelled = true;
+    }
+
+    @WorkerThread
+    public Result sync() throws IOException {
+        long start = SystemClock.elapsedRealtime();
+        mPushed = 0;
+        mPulled = 0;
+        mConflicts = 0;
+        mBytesSent = 0;
+        mBytesReceived = 0;
+        mLastPushedId = 0;
+
+        mDb.petDao().deleteUnpushedTombstones();
+        assignMissingKeys();
+        boolean more = true;
+        while(more){
+            checkCancelled();
+            more = pushBatch();
+        }
+        more = true;
+        while(more){
+            checkCancelled();
+            more = pullBatch();
+        }
+        return new Result(mPushed, mPulled, mConflicts, mBytesSent, mBytesReceived,
+                SystemClock.elapsedRealtime() - start);
+    }
+
+    private void checkCancelled(){
+        if(mCancelled){
+            throw new CancellationException("Sync cancelled after " + mPushed + " pushed, " + mPulled + " pulled");
+        }
+    }
+
+    //Before the push reads the pets, or setting the key would make them look changed mid-push
+    private void assignMissingKeys(){
+        while(true){
+            final List<Integer> ids = mDb.petDao().loadDirtyPetIdsWithoutKey(mBatchSize);
+            if(ids.isEmpty()){
+                return;
+            }
+            mDb.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for(Integer id : ids){
+                        mDb.petDao().assignPetExternalKey(id, UUID.randomUUID().toString());
+                    }
+                }
+            });
+        }
+    }
+
+    //Returns whether there may be more to push
+    private boolean pushBatch() throws IOException {
+        final List<PetSyncRow> rows = mDb.petDao().loadDirtyPets(mLastPushedId, mBatchSize);
+        if(rows.isEmpty()){
+            return false;
+        }
+        mLastPushedId = rows.get(rows.size() - 1).getPetId();
+        List<RemotePet> pets = new ArrayList<>(rows.size());
+        BreedDictionary breeds = mDb.breeds();
+        for(PetSyncRow row : rows){
+            pets.add(row.toRemotePet(row.isDeleted() ? null : breeds.nameOf(row.getBreedId())));
+        }
+        byte[] request = PetSyncCodec.encodePets(pets);
+        byte[] response = mBackend.push(request);
+        mBytesSent += request.length;
+        mBytesReceived += response.length;
+
+        final List<PetSyncCodec.PushResult> results = PetSyncCodec.decodePushResults(response);
+        if(results.size() != rows.size()){
+            throw new IOException("Pushed " + rows.size() + " pets, got " + results.size() + " results");
+        }
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for(int i = 0; i < rows.size(); i++){
+                    applyPushResult(rows.get(i), results.get(i));
+                }
+            }
+        });
+        mDb.petCache().evictChanged();
+        return rows.size() == mBatchSize;
+    }
+
+    private void applyPushResult(PetSyncRow row, PetSyncCodec.PushResult result){
+        PetDao dao = mDb.petDao();
+        if(result.isAccepted()){
+            mPushed++;
+            if(row.isDeleted()){
+                //A deleted pet can't change again, its ids are never reused
+                dao.deletePetSyncState(row.getPetId());
+            }else{
+                dao.setPetRemoteVersion(row.getPetId(), result.getVersion());
+                //Stays dirty if it was written while the push was on the way
+                dao.clearPetDirty(row.getPetId(), row.getDirty());
+            }
+        }else if(result.getCurrent() != null){
+            //Taken even if it isn't newer than the version last synced, or the pet would stay
+            //dirty and be refused again on every sync
+            applyRemote(result.getCurrent(), true);
+        }else{
+            //The backend doesn't know the pet anymore, the next sync pushes it as a new one
+            dao.setPetRemoteVersion(row.getPetId(), 0);
+        }
+    }
+
+    //Returns whether there may be more to pull
+    private boolean pullBatch() throws IOException {
+        PetSyncCursor cursor = mDb.petDao().loadSyncCursor(mBackendName);
+        long since = cursor == null ? 0 : cursor.getPulledVersion();
+        byte[] response = mBackend.pull(since, mBatchSize);
+        mBytesReceived += response.length;
+
+        final List<RemotePet> pets = PetSyncCodec.decodePets(response);
+        if(pets.isEmpty()){
+            return false;
+        }
+        long pulledVersion = since;
+        for(RemotePet pet : pets){
+            pulledVersion = Math.max(pulledVersion, pet.getVersion());
+        }
+        final PetSyncCursor newCursor = new PetSyncCursor(mBackendName, pulledVersion);
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                for(RemotePet pet : pets){
+                    if(applyRemote(pet, false)){
+                        mPulled++;
+                    }
+                }
+                mDb.petDao().saveSyncCursor(newCursor);
+            }
+        });
+        mDb.petCache().evictChanged();
+        return pets.size() == mBatchSize;
+    }
+
+    /**
+     * Replaces the local pet with the backend's copy, unless the local one is already at that
+     * version or newer, e.g. because it was pushed from here. Runs inside the batch's transaction.
+     *
+     * @param refused whether the backend refused the local pet, which makes its copy win
+     * whatever its version
+     * @return whether anything was written.
+     */
+    private boolean applyRemote(RemotePet remote, boolean refused){
+        PetDao dao = mDb.petDao();
+        PetSyncState state = dao.loadSyncStateByExternalKey(remote.getKey());
+        if(!refused && state != null && remote.getVersion() <= state.getRemoteVersion()){
+            return false;
+        }
+        if(state != null && state.getDirty() > 0){
+            //The local change was based on an older version, the newer one wins
+            mConflicts++;
+        }
+        if(remote.isDeleted()){
+            if(state != null){
+                if(!state.isDeleted()){
+                    dao.deletePet(state.getPetId());
+                }
+                dao.deletePetSyncState(state.getPetId());
+            }
+            return true;
+        }
+        if(state != null && !state.isDeleted()){
+            dao.updatePetByExternalKeyIfChanged(remote.getKey(), remote.getName(),
+                    mDb.breeds().idOf(remote.getBreed()), remote.getGender(), remote.getWeight());
+            //The triggers just marked it dirty, but it now matches the backend
+            dao.markPetSynced(state.getPetId(), remote.getVersion());
+            return true;
+        }
+        if(state != null){
+            //Deleted here, but changed remotely since, so it comes back
+            dao.deletePetSyncState(state.getPetId());
+        }
+        PetEntry pet = new PetEntry(remote.getName(), remote.getBreed(), remote.getGender(), remote.getWeight());
+        pet.setExternalKey(remote.getKey());
+        mDb.breeds().assignId(pet);
+        long id = dao.insertPet(pet);
+        dao.markPetSynced((int) id, remote.getVersion());
+        return true;
+    }
+}
@@ -0,0 +1,83 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+
+/**
+ * A dirty pet as {@link PetSyncEngine} pushes it: its sync state joined with its current values,
+ * which are empty for a tombstone.
+ */
+public class PetSyncRow {
+
+    @ColumnInfo(name = "pet_id")
+    private final int petId;
+    @ColumnInfo(name = "external_key")
+    private final String externalKey;
+    @ColumnInfo(name = "remote_version")
+    private final long remoteVersion;
+    private final int dirty;
+    private final boolean deleted;
+    private final String name;
+    @ColumnInfo(name = "breed_id")
+    private final int breedId;
+    private final int gender;
+    private final int weight;
+
+    public PetSyncRow(int petId, String externalKey, long remoteVersion, int dirty, boolean deleted,
+                      String name, int breedId, int gender, int weight){
+        this.petId = petId;
+        this.externalKey = externalKey;
+        this.remoteVersion = remoteVersion;
+        this.dirty = dirty;
+        this.deleted = deleted;
+        this.name = name;
+        this.breedId = breedId;
+        this.gender = gender;
+        this.weight = weight;
+    }
+
+    public int getPetId() {
+        return petId;
+    }
+
+    public String getExternalKey() {
+        return externalKey;
+    }
+
+    public long getRemoteVersion() {
+        return remoteVersion;
+    }
+
+    public int getDirty() {
+        return dirty;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getBreedId() {
+        return breedId;
+    }
+
+    public int getGender() {
+        return gender;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+
+    /**
+     * @param breed the name of the pet's breed, unused for a tombstone
+     * @return the pet as pushed, at the remote version the local change was based on.
+     */
+    RemotePet toRemotePet(String breed){
+        return deleted
+                ? RemotePet.tombstone(externalKey, remoteVersion)
+                : new RemotePet(externalKey, remoteVersion, false, name, breed, gender, weight);
+    }
+}
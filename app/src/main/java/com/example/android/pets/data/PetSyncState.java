@@ -0,0 +1,59 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.Index;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * Where one pet stands with the sync backend. Rows are created and marked dirty by the triggers
+ * in {@link PetSyncTriggers}, and marked synced by {@link PetSyncEngine}.
+ *
+ * dirty counts the local writes since the last sync rather than just flagging them, so the
+ * engine can tell whether a pet changed again while its push was on the way. A deleted pet keeps
+ * its row, as a tombstone, until the delete has been pushed.
+ */
+@Entity(tableName = "pet_sync",
+        indices = {@Index("external_key"), @Index("dirty")})
+public class PetSyncState {
+
+    @PrimaryKey
+    @ColumnInfo(name = "pet_id")
+    private final int petId;
+    //Copied from the pet, so a tombstone still knows which remote record it deletes
+    @ColumnInfo(name = "external_key")
+    private final String externalKey;
+    //The backend's version of the pet when it was last synced, 0 if it never was
+    @ColumnInfo(name = "remote_version")
+    private final long remoteVersion;
+    private final int dirty;
+    private final boolean deleted;
+
+    public PetSyncState(int petId, String externalKey, long remoteVersion, int dirty, boolean deleted){
+        this.petId = petId;
+        this.externalKey = externalKey;
+        this.remoteVersion = remoteVersion;
+        this.dirty = dirty;
+        this.deleted = deleted;
+    }
+
+    public int getPetId() {
+        return petId;
+    }
+
+    public String getExternalKey() {
+        return externalKey;
+    }
+
+    public long getRemoteVersion() {
+        return remoteVersion;
+    }
+
+    public int getDirty() {
+        return dirty;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+}
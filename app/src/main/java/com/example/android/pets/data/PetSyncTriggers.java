@@ -0,0 +1,48 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+
+/**
+ * Triggers that track which pets have local changes the sync backend hasn't seen, in pet_sync
+ * (see {@link PetSyncState}). Every write path marks pets dirty without knowing about sync, and
+ * the triggers are created from {@link PetsDatabase}'s callback and migrations like the others.
+ */
+final class PetSyncTriggers {
+
+    static final String TABLE_NAME = "pet_sync";
+
+    private static final String CREATE_INSERT_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS pet_sync_after_insert AFTER INSERT ON pet BEGIN "
+                    + "INSERT OR REPLACE INTO " + TABLE_NAME + "(pet_id, external_key, remote_version, dirty, deleted) "
+                    + "VALUES (NEW.id, NEW.external_key, 0, 1, 0); END";
+
+    private static final String CREATE_UPDATE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS pet_sync_after_update AFTER UPDATE ON pet BEGIN "
+                    + "UPDATE " + TABLE_NAME + " SET external_key = NEW.external_key, dirty = dirty + 1 "
+                    + "WHERE pet_id = NEW.id; END";
+
+    private static final String CREATE_DELETE_TRIGGER =
+            "CREATE TRIGGER IF NOT EXISTS pet_sync_after_delete AFTER DELETE ON pet BEGIN "
+                    + "UPDATE " + TABLE_NAME + " SET deleted = 1, dirty = dirty + 1 WHERE pet_id = OLD.id; END";
+
+    private PetSyncTriggers(){
+    }
+
+    /**
+     * Creates the triggers. The table itself is Room's.
+     */
+    static void create(SupportSQLiteDatabase db){
+        db.execSQL(CREATE_INSERT_TRIGGER);
+        db.execSQL(CREATE_UPDATE_TRIGGER);
+        db.execSQL(CREATE_DELETE_TRIGGER);
+    }
+
+    /**
+     * Starts tracking the pets already in the table, all of them dirty so the first sync pushes
+     * them.
+     */
+    static void backfill(SupportSQLiteDatabase db){
+        db.execSQL("INSERT OR IGNORE INTO " + TABLE_NAME + "(pet_id, external_key, remote_version, dirty, deleted) "
+                + "SELECT id, external_key, 0, 1, 0 FROM pet");
+    }
+}
@@ -0,0 +1,38 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.room.ColumnInfo;
+import android.arch.persistence.room.Entity;
+import android.arch.persistence.room.PrimaryKey;
+
+/**
+ * One bar of the weight histogram: the number of pets whose weight is in
+ * [bucket * WIDTH, (bucket + 1) * WIDTH). Maintained by the triggers in {@link PetStatsTriggers}.
+ */
+@Entity(tableName = "pet_stats_weight")
+public class PetWeightBucket {
+
+    //In the same unit as PetEntry's weight
+    public static final int WIDTH = 5;
+
+    @PrimaryKey
+    private final int bucket;
+    @ColumnInfo(name = "pet_count")
+    private final long petCount;
+
+    public PetWeightBucket(int bucket, long petCount){
+        this.bucket = bucket;
+        this.petCount = petCount;
+    }
+
+    public int getBucket() {
+        return bucket;
+    }
+
+    public long getPetCount() {
+        return petCount;
+    }
+
+    public int getMinWeight(){
+        return bucket * WIDTH;
+    }
+}
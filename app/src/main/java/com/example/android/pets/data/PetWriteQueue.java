@@ -0,0 +1,370 @@
+package com.example.android.pets.data;
+
+import android.content.Context;
+import android.os.Handler;
+import android.os.Looper;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+
+/**
+ * Funnels every pet write through a single writer thread.
+ *
+ * Writes are queued and drained in batches, each batch committed in one transaction. While a
+ * write for a pet id is still waiting in the queue, a newer write for the same id is merged into
+ * it: two updates collapse into the last one, and an update followed by a delete becomes just the
+ * delete. Field updates (see {@link PetChanges}) merge the same way, and only the changed columns
+ * are written. Deleting every pet runs on its own through {@link PetPurger}, so it never holds the
+ * write lock for the whole table. Results are reported back on the main thread, one callback per
+ * queued operation.
+ */
+public class PetWriteQueue {
+
+    private static final String LOG_TAG = PetWriteQueue.class.getSimpleName();
+
+    //Upper bound on the operations committed in one transaction
+    private static final int MAX_BATCH_SIZE = 500;
+
+    private static final int OP_INSERT = 0;
+    private static final int OP_UPDATE = 1;
+    private static final int OP_DELETE = 2;
+    private static final int OP_DELETE_ALL = 3;
+    private static final int OP_UPDATE_FIELDS = 4;
+
+    /**
+     * Receives the outcome of one queued write on the main thread.
+     *
+     * For an insert the result is the new pet id, or -1 if the insert failed. For updates and
+     * deletes it is the number of rows affected, so 0 means nothing was written.
+     */
+    public interface WriteCallback {
+        void onWriteComplete(long result);
+    }
+
+    private static final Object LOCK = new Object();
+    private static volatile PetWriteQueue INSTANCE;
+
+    public static PetWriteQueue getInstance(Context context){
+        if(INSTANCE == null){
+            synchronized (LOCK){
+                if(INSTANCE == null){
+                    INSTANCE = new PetWriteQueue(PetsDatabase.getInstance(context));
+                }
+            }
+        }
+        return INSTANCE;
+    }
+
+    private final PetsDatabase mDb;
+    private final ExecutorService mWriter = Executors.newSingleThreadExecutor();
+    private final Handler mMainHandler = new Handler(Looper.getMainLooper());
+
+    //Guarded by mPending: the operations waiting for the writer, and the update or delete
+    //still waiting for each pet id so newer writes can be merged into it.
+    private final List<Operation> mPending = new ArrayList<>();
+    private final Map<Integer, Operation> mPendingById = new HashMap<>();
+    private boolean mDrainScheduled = false;
+
+    PetWriteQueue(PetsDatabase database){
+        mDb = database;
+    }
+
+    public void insertPet(PetEntry petEntry, @Nullable WriteCallback callback){
+        Operation operation = new Operation(OP_INSERT, petEntry, petEntry.getId());
+        operation.callbacks.add(callback);
+        synchronized (mPending){
+            mPending.add(operation);
+            scheduleDrainLocked();
+        }
+    }
+
+    public void updatePet(PetEntry petEntry, @Nullable WriteCallback callback){
+        enqueueById(OP_UPDATE, petEntry, null, petEntry.getId(), callback);
+    }
+
+    /**
+     * Updates only the fields set in changes. Nothing is queued if there are none, the callback
+     * then gets 0 straight away.
+     */
+    public void updatePetFields(PetChanges changes, @Nullable final WriteCallback callback){
+        if(changes.isEmpty()){
+            if(callback != null){
+                mMainHandler.post(new Runnable() {
+                    @Override
+                    public void run() {
+                        callback.onWriteComplete(0);
+                    }
+                });
+            }
+            return;
+        }
+        //Copied, so the caller can't change what's queued and merging can't change the caller's
+        PetChanges queued = new PetChanges(changes.getPetId());
+        queued.mergeFrom(changes);
+        enqueueById(OP_UPDATE_FIELDS, null, queued, changes.getPetId(), callback);
+    }
+
+    public void deletePet(int id, @Nullable WriteCallback callback){
+        enqueueById(OP_DELETE, null, null, id, callback);
+    }
+
+    public void deleteAllPets(@Nullable WriteCallback callback){
+        Operation operation = new Operation(OP_DELETE_ALL, null, 0);
+        operation.callbacks.add(callback);
+        synchronized (mPending){
+            mPending.add(operation);
+            //Writes queued after this must run after it, so they can't merge into earlier ones
+            mPendingById.clear();
+            scheduleDrainLocked();
+        }
+    }
+
+    private void enqueueById(int type, @Nullable PetEntry petEntry, @Nullable PetChanges changes, int id,
+                             @Nullable WriteCallback callback){
+        synchronized (mPending){
+            Operation pending = mPendingById.get(id);
+            if(pending == null){
+                Operation operation = new Operation(type, petEntry, id);
+                operation.changes = changes;
+                operation.callbacks.add(callback);
+                mPending.add(operation);
+                mPendingById.put(id, operation);
+            }else if(pending.type == OP_DELETE){
+                //The pet is already going away, an update after the delete has nothing to write
+                pending.noOpCallbacks.add(callback);
+            }else if(type == OP_UPDATE_FIELDS && pending.type == OP_UPDATE){
+                //The waiting full update picks up the new values and stays a full update
+                pending.petEntry = new PetEntry(pending.petEntry);
+                changes.applyTo(pending.petEntry);
+                pending.callbacks.add(callback);
+            }else if(type == OP_UPDATE_FIELDS){
+                pending.changes.mergeFrom(changes);
+                pending.callbacks.add(callback);
+            }else{
+                //A newer update or a delete replaces the waiting update
+                pending.type = type;
+                pending.petEntry = petEntry;
+                pending.changes = changes;
+                pending.callbacks.add(callback);
+            }
+            scheduleDrainLocked();
+        }
+    }
+
+    private void scheduleDrainLocked(){
+        if(mDrainScheduled){
+            return;
+        }
+        mDrainScheduled = true;
+        mWriter.execute(new Runnable() {
+            @Override
+            public void run() {
+                drain();
+            }
+        });
+    }
+
+    @WorkerThread
+    private void drain(){
+        while(true){
+            final List<Operation> batch;
+            synchronized (mPending){
+                if(mPending.isEmpty()){
+                    mDrainScheduled = false;
+                    return;
+                }
+                int size = Math.min(mPending.size(), MAX_BATCH_SIZE);
+                //Deleting everything runs on its own, in chunks, see runDeleteAll
+                for(int i = 0; i < size; i++){
+                    if(mPending.get(i).type == OP_DELETE_ALL){
+                        size = i == 0 ? 1 : i;
+                        break;
+                    }
+                }
+                List<Operation> head = mPending.subList(0, size);
+                batch = new ArrayList<>(head);
+                head.clear();
+                //Once taken by the writer an operation can no longer absorb newer writes
+                for(Operation operation : batch){
+                    if(mPendingById.get(operation.petId) == operation){
+                        mPendingById.remove(operation.petId);
+                    }
+                }
+            }
+            runBatch(batch);
+            deliver(batch);
+        }
+    }
+
+    @WorkerThread
+    private void runBatch(final List<Operation> batch){
+        if(batch.size() == 1 && batch.get(0).type == OP_DELETE_ALL){
+            runDeleteAll(batch.get(0));
+            return;
+        }
+        try {
+            final long[] seq = new long[1];
+            mDb.runInTransaction(new Runnable() {
+                @Override
+                public void run() {
+                    for(Operation operation : batch){
+                        operation.result = execute(operation);
+                    }
+                    seq[0] = latestChangeSeq();
+                }
+            });
+            for(Operation operation : batch){
+                writeThrough(operation, seq[0]);
+            }
+        } catch (RuntimeException e){
+            //The whole batch was rolled back. Retry each operation on its own, so one bad
+            //write only fails its own caller.
+            Log.w(LOG_TAG, "Batch of " + batch.size() + " writes failed, retrying one by one", e);
+            for(Operation operation : batch){
+                try {
+                    writeThrough(operation, executeAlone(operation));
+                } catch (RuntimeException single){
+                    Log.e(LOG_TAG, "Write failed for pet " + operation.petId, single);
+                    operation.result = operation.type == OP_INSERT ? -1 : 0;
+                }
+            }
+        }
+    }
+
+    //A single DELETE of a big table would hold the write lock until every row is gone. The purger
+    //deletes in short transactions instead, so readers and checkpoints aren't held up that long.
+    @WorkerThread
+    private void runDeleteAll(Operation operation){
+        try {
+            operation.result = new PetPurger(mDb).purge(null);
+        } catch (RuntimeException e){
+            Log.e(LOG_TAG, "Deleting all pets failed", e);
+            operation.result = 0;
+        }
+        mDb.petCache().clear();
+    }
+
+    //Returns the newest change log entry once the operation committed, see PetCache.put
+    private long executeAlone(final Operation operation){
+        final long[] seq = new long[1];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                operation.result = execute(operation);
+                seq[0] = latestChangeSeq();
+            }
+        });
+        return seq[0];
+    }
+
+    private long latestChangeSeq(){
+        Long seq = mDb.petDao().loadLatestChangeSeq();
+        return seq == null ? 0 : seq;
+    }
+
+    private long execute(Operation operation){
+        PetDao dao = mDb.petDao();
+        switch (operation.type){
+            case OP_INSERT:
+                mDb.breeds().assignId(operation.petEntry);
+                return dao.insertPet(operation.petEntry);
+            case OP_UPDATE:
+                mDb.breeds().assignId(operation.petEntry);
+                return dao.updatePet(operation.petEntry);
+            case OP_DELETE:
+                return dao.deletePet(operation.petId);
+            case OP_UPDATE_FIELDS:
+                return updateFields(operation.changes);
+            case OP_DELETE_ALL:
+                return dao.deleteAllPets();
+            default:
+                throw new IllegalStateException("Unknown write " + operation.type);
+        }
+    }
+
+    //Nests in the batch's transaction, and keeps the columns together when retried on its own
+    private int updateFields(final PetChanges changes){
+        final int[] updated = new int[1];
+        mDb.runInTransaction(new Runnable() {
+            @Override
+            public void run() {
+                updated[0] = changes.writeTo(mDb);
+            }
+        });
+        return updated[0];
+    }
+
+    //Keeps the by-id cache exact once an operation is committed, seq being the newest change
+    //log entry at that commit
+    private void writeThrough(Operation operation, long seq){
+        PetCache cache = mDb.petCache();
+        switch (operation.type){
+            case OP_INSERT:
+                if(operation.result > 0){
+                    PetEntry inserted = new PetEntry(operation.petEntry);
+                    inserted.setId((int) operation.result);
+                    cache.put(inserted, seq);
+                }
+                break;
+            case OP_UPDATE:
+                if(operation.result > 0){
+                    cache.put(operation.petEntry, seq);
+                }
+                break;
+            case OP_UPDATE_FIELDS:
+                //Only some columns are known here, so the next read reloads the whole row
+            case OP_DELETE:
+                cache.remove(operation.petId);
+                break;
+            case OP_DELETE_ALL:
+                cache.clear();
+                break;
+        }
+    }
+
+    private void deliver(final List<Operation> batch){
+        mMainHandler.post(new Runnable() {
+            @Override
+            public void run() {
+                for(Operation operation : batch){
+                    for(WriteCallback callback : operation.callbacks){
+                        if(callback != null){
+                            callback.onWriteComplete(operation.result);
+                        }
+                    }
+                    for(WriteCallback callback : operation.noOpCallbacks){
+                        if(callback != null){
+                            callback.onWriteComplete(0);
+                        }
+                    }
+                }
+            }
+        });
+    }
+
+    private static class Operation {
+        int type;
+        PetEntry petEntry;
+        //Only for OP_UPDATE_FIELDS
+        PetChanges changes;
+        final int petId;
+        long result;
+        //Everyone whose write ended up as this operation gets its result
+        final List<WriteCallback> callbacks = new ArrayList<>(1);
+        //Writes that were dropped because the pet was already being deleted
+        final List<WriteCallback> noOpCallbacks = new ArrayList<>(0);
+
+        Operation(int type, @Nullable PetEntry petEntry, int petId){
+            this.type = type;
+            this.petEntry = petEntry;
+            this.petId = petId;
+        }
+    }
+}
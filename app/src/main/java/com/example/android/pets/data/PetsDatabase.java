@@ -3,35 +3,277 @@
  */
 package com.example.android.pets.data;
 
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteOpenHelper;
+import android.arch.persistence.db.framework.FrameworkSQLiteOpenHelperFactory;
 import android.arch.persistence.room.Database;
 import android.arch.persistence.room.Room;
 import android.arch.persistence.room.RoomDatabase;
+import android.arch.persistence.room.migration.Migration;
 import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+import android.support.annotation.WorkerThread;
 
-@Database(entities = {PetEntry.class}, version = 1)
+@Database(entities = {PetEntry.class, PetGenderStats.class, PetBreedStats.class, PetWeightBucket.class,
+        PetChangeLogEntry.class, PetChangeConsumer.class, PetSyncState.class, PetSyncCursor.class,
+        BreedEntry.class},
+        version = PetsDatabase.VERSION)
 public abstract class PetsDatabase extends RoomDatabase {
 
-    private static final Object LOCK = new Object();
+    //Schema version, also what a PetsDatabaseSeed is checked against
+    static final int VERSION = 9;
+
     private static final String DATABASE_NAME = "pets_shelter";
-    private static PetsDatabase INSTANCE;
+
+    //Read by Holder when it first builds the database
+    private static volatile Context sAppContext;
+    private static volatile PetsDatabaseConfig sConfig = PetsDatabaseConfig.DEFAULT;
+    private static volatile boolean sInstanceCreated = false;
+
+    //Version 2 adds the full-text search index over pet names and breeds
+    static final Migration MIGRATION_1_2 = new Migration(1, 2) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            PetSearchIndex.createBeforeBreedTable(database);
+            PetSearchIndex.rebuildBeforeBreedTable(database);
+        }
+    };
+
+    //Version 3 adds the indexes used to sort and filter the catalog in SQL. The names are the ones
+    //Room generates for the @Index annotations on PetEntry.
+    static final Migration MIGRATION_2_3 = new Migration(2, 3) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_name` ON `pet` (`name`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_breed` ON `pet` (`breed`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_weight` ON `pet` (`weight`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_gender_weight` ON `pet` (`gender`, `weight`)");
+        }
+    };
+
+    //Version 4 adds the dashboard statistics, kept up to date by triggers. The tables are created
+    //with the exact SQL Room generates for their entities, so its schema check accepts them.
+    static final Migration MIGRATION_3_4 = new Migration(3, 4) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_stats_gender` (`gender` INTEGER NOT NULL, "
+                    + "`pet_count` INTEGER NOT NULL, `total_weight` INTEGER NOT NULL, PRIMARY KEY(`gender`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_stats_breed` (`breed` TEXT NOT NULL, "
+                    + "`pet_count` INTEGER NOT NULL, PRIMARY KEY(`breed`))");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_stats_weight` (`bucket` INTEGER NOT NULL, "
+                    + "`pet_count` INTEGER NOT NULL, PRIMARY KEY(`bucket`))");
+            PetStatsTriggers.createBeforeBreedTable(database);
+            PetStatsTriggers.rebuildBeforeBreedTable(database);
+        }
+    };
+
+    //Version 5 adds the external key that feeds are upserted by, with its unique index
+    static final Migration MIGRATION_4_5 = new Migration(4, 5) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `external_key` TEXT");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_pet_external_key` ON `pet` (`external_key`)");
+        }
+    };
+
+    //Version 6 adds the change log, with the consumers reading it. Pets written before it
+    //existed are not in it, new consumers start with a resync anyway.
+    static final Migration MIGRATION_5_6 = new Migration(5, 6) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_changelog` (`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`op` INTEGER NOT NULL, `pet_id` INTEGER NOT NULL, `changed_at` INTEGER NOT NULL)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_changelog_consumer` (`name` TEXT NOT NULL, "
+                    + "`acked_seq` INTEGER NOT NULL, `resync_required` INTEGER NOT NULL, PRIMARY KEY(`name`))");
+            PetChangeLog.create(database);
+        }
+    };
+
+    //Version 7 adds the sync bookkeeping. The pets already here are marked dirty, so the first
+    //sync pushes them.
+    static final Migration MIGRATION_6_7 = new Migration(6, 7) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_sync` (`pet_id` INTEGER NOT NULL, `external_key` TEXT, "
+                    + "`remote_version` INTEGER NOT NULL, `dirty` INTEGER NOT NULL, `deleted` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`pet_id`))");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_sync_external_key` ON `pet_sync` (`external_key`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_sync_dirty` ON `pet_sync` (`dirty`)");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_sync_cursor` (`backend` TEXT NOT NULL, "
+                    + "`pulled_version` INTEGER NOT NULL, PRIMARY KEY(`backend`))");
+            PetSyncTriggers.create(database);
+            PetSyncTriggers.backfill(database);
+        }
+    };
+
+    //Version 8 moves breed names into the breed table, and has pets refer to them by id. SQLite
+    //can't drop a column, so the pet table is copied into a new one, keeping the ids and the
+    //AUTOINCREMENT counter, so ids of deleted pets are still never reused. Dropping the old table
+    //drops its triggers and indexes, which are then created again on the new one. The search
+    //index and the statistics are keyed by pet id and breed name, and stay as they are.
+    static final Migration MIGRATION_7_8 = new Migration(7, 8) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("CREATE TABLE IF NOT EXISTS `breed` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`name` TEXT NOT NULL)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_breed_name` ON `breed` (`name`)");
+            database.execSQL("INSERT OR IGNORE INTO breed(name) "
+                    + "SELECT DISTINCT COALESCE(breed, '') FROM pet ORDER BY 1");
+            database.execSQL("CREATE TABLE IF NOT EXISTS `pet_new` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`name` TEXT, `breed_id` INTEGER NOT NULL, `gender` INTEGER NOT NULL, `weight` INTEGER NOT NULL, "
+                    + "`external_key` TEXT)");
+            database.execSQL("INSERT INTO pet_new(id, name, breed_id, gender, weight, external_key) "
+                    + "SELECT pet.id, pet.name, breed.id, pet.gender, pet.weight, pet.external_key "
+                    + "FROM pet JOIN breed ON breed.name = COALESCE(pet.breed, '')");
+            database.execSQL("DELETE FROM sqlite_sequence WHERE name = 'pet_new'");
+            database.execSQL("INSERT INTO sqlite_sequence(name, seq) "
+                    + "SELECT 'pet_new', seq FROM sqlite_sequence WHERE name = 'pet'");
+            database.execSQL("DROP TABLE pet");
+            database.execSQL("ALTER TABLE pet_new RENAME TO pet");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_name` ON `pet` (`name`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_breed_id` ON `pet` (`breed_id`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_weight` ON `pet` (`weight`)");
+            database.execSQL("CREATE INDEX IF NOT EXISTS `index_pet_gender_weight` ON `pet` (`gender`, `weight`)");
+            database.execSQL("CREATE UNIQUE INDEX IF NOT EXISTS `index_pet_external_key` ON `pet` (`external_key`)");
+            PetSearchIndex.create(database);
+            PetStatsTriggers.create(database);
+            PetChangeLog.create(database);
+            PetSyncTriggers.create(database);
+        }
+    };
+
+    //Version 9 adds the path of each pet's photo. No trigger watches it, so nothing else changes.
+    static final Migration MIGRATION_8_9 = new Migration(8, 9) {
+        @Override
+        public void migrate(@NonNull SupportSQLiteDatabase database) {
+            database.execSQL("ALTER TABLE `pet` ADD COLUMN `photo_path` TEXT");
+        }
+    };
+
+    //Room only creates the tables of our entities, everything else is created here on a fresh install
+    private static final Callback CALLBACK = new Callback() {
+        @Override
+        public void onCreate(@NonNull SupportSQLiteDatabase db) {
+            PetSearchIndex.create(db);
+            PetStatsTriggers.create(db);
+            PetChangeLog.create(db);
+            PetSyncTriggers.create(db);
+        }
+    };
 
 //    We don’t need several instances of our database, moreover,
 //    we need to ensure we are always using the same instance and
 //    make sure we are not accidentally creating more than one at
-//    a time, for which we use the singleton pattern:
+//    a time, for which we use the singleton pattern.
+//    The JVM initializes Holder exactly once, the first time getInstance reads it, and
+//    every thread sees the fully built database afterwards, without any locking on our side.
+    private static class Holder {
+        static final PetsDatabase INSTANCE = createInstance();
+    }
+
+    private static PetsDatabase createInstance(){
+        sInstanceCreated = true;
+        return create(sAppContext, DATABASE_NAME, sConfig);
+    }
+
     public static PetsDatabase getInstance(Context context){
-        if(INSTANCE == null){
-            synchronized (LOCK){
-                INSTANCE = Room.databaseBuilder(
-                        context.getApplicationContext(),
-                        PetsDatabase.class,
-                        PetsDatabase.DATABASE_NAME)
-                        .build();
-            }
+        if(sAppContext == null){
+            sAppContext = context.getApplicationContext();
+        }
+        return Holder.INSTANCE;
+    }
+
+    /**
+     * Sets the tuning used by {@link #getInstance(Context)}. It only takes effect if called before
+     * the database is first opened, so call it from Application.onCreate.
+     */
+    public static void setConfig(PetsDatabaseConfig config){
+        if(sInstanceCreated){
+            throw new IllegalStateException("PetsDatabase is already open, set the config before getInstance");
         }
+        sConfig = config;
+    }
+
+    /**
+     * Loads the breed dictionary, and reads the first catalog page so its pages are in SQLite's
+     * cache by the time the catalog asks for them. The first of these queries opens the database,
+     * running any migration and Room's schema check, unless the caller already opened it.
+     * Meant to run on a background thread at process start, off the critical path of the first
+     * screen.
+     */
+    @WorkerThread
+    public void prewarm(){
+        mBreeds.load();
+        petDao().loadPetListItemPage(PetCatalogQuery.DEFAULT.first(PetPager.DEFAULT_PAGE_SIZE));
+    }
+
+    /**
+     * Builds a database with the same schema, migrations and callbacks as the app's own one, under
+     * a different file name. Used for scratch databases, e.g. by benchmarks.
+     */
+    public static PetsDatabase create(Context context, String name){
+        return create(context, name, PetsDatabaseConfig.DEFAULT);
+    }
 
-        return INSTANCE;
+    public static PetsDatabase create(Context context, String name, final PetsDatabaseConfig config){
+        RoomDatabase.Builder<PetsDatabase> builder = Room.databaseBuilder(
+                context.getApplicationContext(),
+                PetsDatabase.class,
+                name);
+        //The seed is copied below the instrumentation, so copying it isn't timed as a query
+        SupportSQLiteOpenHelper.Factory factory = new AutoVacuumOpenHelperFactory(
+                new FrameworkSQLiteOpenHelperFactory());
+        if(config.getSeed() != null){
+            factory = new SeededOpenHelperFactory(factory, config.getSeed());
+        }
+        if(config.getQueryMetrics() != null){
+            factory = new InstrumentedOpenHelperFactory(factory, config.getQueryMetrics());
+        }
+        PetsDatabase database = builder
+                .openHelperFactory(factory)
+                .addMigrations(MIGRATION_1_2, MIGRATION_2_3, MIGRATION_3_4, MIGRATION_4_5, MIGRATION_5_6,
+                        MIGRATION_6_7, MIGRATION_7_8, MIGRATION_8_9)
+                .addCallback(CALLBACK)
+                .addCallback(new Callback() {
+                    @Override
+                    public void onOpen(@NonNull SupportSQLiteDatabase db) {
+                        config.apply(db);
+                    }
+                })
+                .setJournalMode(config.getJournalMode())
+                .build();
+        database.mPetCache = new PetCache(database, config.getPetCacheSize());
+        database.mBreeds = new BreedDictionary(database);
+        database.mQueryMetrics = config.getQueryMetrics();
+        return database;
     }
 
+    private PetCache mPetCache;
+    private BreedDictionary mBreeds;
+    private QueryMetrics mQueryMetrics;
+
     public abstract PetDao petDao();
+
+    /**
+     * @return the by-id cache of full pets that sits in front of {@link PetDao#loadPetById(int)}.
+     */
+    public PetCache petCache(){
+        return mPetCache;
+    }
+
+    /**
+     * @return the breed names and ids of this database, which pets are read and written through.
+     */
+    public BreedDictionary breeds(){
+        return mBreeds;
+    }
+
+    /**
+     * @return the metrics this database reports to, or null if it isn't instrumented.
+     */
+    @Nullable
+    public QueryMetrics getQueryMetrics(){
+        return mQueryMetrics;
+    }
 }
@@ -0,0 +1,234 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.room.RoomDatabase;
+import android.database.Cursor;
+import android.support.annotation.NonNull;
+import android.support.annotation.Nullable;
+
+/**
+ * SQLite tuning for {@link PetsDatabase}: journal mode, synchronous level, page cache size, memory
+ * mapped I/O and the WAL auto-checkpoint threshold. Anything left unset keeps the platform default.
+ * It also sizes the in-memory {@link PetCache}, can install {@link QueryMetrics}, and can name a
+ * {@link PetsDatabaseSeed} that a new database is copied from.
+ *
+ * With write-ahead logging the framework opens a pool of connections, one writer and several
+ * readers, so reads no longer wait for writes. The pragmas are applied when the database is
+ * opened, on the connection that does all the writing. Reader connections keep the platform
+ * defaults for cache and mmap size, the framework gives no hook to configure them.
+ */
+public final class PetsDatabaseConfig {
+
+    /**
+     * Possible values for the synchronous level, see https://sqlite.org/pragma.html#pragma_synchronous
+     */
+    public static final int SYNCHRONOUS_DEFAULT = -1;
+    public static final int SYNCHRONOUS_OFF = 0;
+    public static final int SYNCHRONOUS_NORMAL = 1;
+    public static final int SYNCHRONOUS_FULL = 2;
+
+    public static final PetsDatabaseConfig DEFAULT = new Builder().build();
+
+    private final RoomDatabase.JournalMode journalMode;
+    private final int synchronous;
+    private final Integer cacheSizeKib;
+    private final Long mmapSizeBytes;
+    private final Integer walAutoCheckpointPages;
+    private final int petCacheSize;
+    private final QueryMetrics queryMetrics;
+    private final PetsDatabaseSeed seed;
+
+    private PetsDatabaseConfig(Builder builder){
+        this.journalMode = builder.journalMode;
+        this.synchronous = builder.synchronous;
+        this.cacheSizeKib = builder.cacheSizeKib;
+        this.mmapSizeBytes = builder.mmapSizeBytes;
+        this.walAutoCheckpointPages = builder.walAutoCheckpointPages;
+        this.petCacheSize = builder.petCacheSize;
+        this.queryMetrics = builder.queryMetrics;
+        this.seed = builder.seed;
+    }
+
+    @NonNull
+    public RoomDatabase.JournalMode getJournalMode() {
+        return journalMode;
+    }
+
+    public int getSynchronous() {
+        return synchronous;
+    }
+
+    @Nullable
+    public Integer getCacheSizeKib() {
+        return cacheSizeKib;
+    }
+
+    @Nullable
+    public Long getMmapSizeBytes() {
+        return mmapSizeBytes;
+    }
+
+    @Nullable
+    public Integer getWalAutoCheckpointPages() {
+        return walAutoCheckpointPages;
+    }
+
+    public int getPetCacheSize() {
+        return petCacheSize;
+    }
+
+    @Nullable
+    public QueryMetrics getQueryMetrics() {
+        return queryMetrics;
+    }
+
+    @Nullable
+    public PetsDatabaseSeed getSeed() {
+        return seed;
+    }
+
+    /**
+     * Runs the configured pragmas on a freshly opened database.
+     */
+    void apply(SupportSQLiteDatabase db){
+        if(synchronous != SYNCHRONOUS_DEFAULT){
+            pragma(db, "synchronous = " + synchronous);
+        }
+        if(cacheSizeKib != null){
+            //A negative cache size is in KiB rather than pages
+            pragma(db, "cache_size = " + (-cacheSizeKib));
+        }
+        if(mmapSizeBytes != null){
+            //Ignored by SQLite builds older than 3.7.17
+            pragma(db, "mmap_size = " + mmapSizeBytes);
+        }
+        if(walAutoCheckpointPages != null){
+            pragma(db, "wal_autocheckpoint = " + walAutoCheckpointPages);
+        }
+    }
+
+    //Some pragmas return a row, which execSQL refuses, so run them all as queries. A query only
+    //runs once the cursor is stepped.
+    static void pragma(SupportSQLiteDatabase db, String pragma){
+        Cursor cursor = db.query("PRAGMA " + pragma);
+        try {
+            cursor.moveToFirst();
+        } finally {
+            cursor.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return "journal=" + journalMode
+                + " synchronous=" + synchronous
+                + " cacheKiB=" + cacheSizeKib
+                + " mmap=" + mmapSizeBytes
+                + " autocheckpoint=" + walAutoCheckpointPages
+                + " petCache=" + petCacheSize
+                + " metrics=" + (queryMetrics != null)
+                + " seed=" + seed;
+    }
+
+    public static class Builder {
+
+        private RoomDatabase.JournalMode journalMode = RoomDatabase.JournalMode.AUTOMATIC;
+        private int synchronous = SYNCHRONOUS_DEFAULT;
+        private Integer cacheSizeKib;
+        private Long mmapSizeBytes;
+        private Integer walAutoCheckpointPages;
+        private int petCacheSize = PetCache.DEFAULT_MAX_SIZE;
+        private QueryMetrics queryMetrics;
+        private PetsDatabaseSeed seed;
+
+        public Builder(){
+        }
+
+        public Builder(PetsDatabaseConfig config){
+            this.journalMode = config.journalMode;
+            this.synchronous = config.synchronous;
+            this.cacheSizeKib = config.cacheSizeKib;
+            this.mmapSizeBytes = config.mmapSizeBytes;
+            this.walAutoCheckpointPages = config.walAutoCheckpointPages;
+            this.petCacheSize = config.petCacheSize;
+            this.queryMetrics = config.queryMetrics;
+            this.seed = config.seed;
+        }
+
+        /**
+         * WRITE_AHEAD_LOGGING lets readers run while a write is in progress. TRUNCATE uses a
+         * rollback journal and a single connection. AUTOMATIC picks WAL where the device supports it.
+         */
+        public Builder setJournalMode(@NonNull RoomDatabase.JournalMode journalMode){
+            this.journalMode = journalMode;
+            return this;
+        }
+
+        /**
+         * @param synchronous one of the SYNCHRONOUS_* constants
+         */
+        public Builder setSynchronous(int synchronous){
+            if(synchronous < SYNCHRONOUS_DEFAULT || synchronous > SYNCHRONOUS_FULL){
+                throw new IllegalArgumentException("Unknown synchronous level " + synchronous);
+            }
+            this.synchronous = synchronous;
+            return this;
+        }
+
+        public Builder setCacheSizeKib(int cacheSizeKib){
+            this.cacheSizeKib = cacheSizeKib;
+            return this;
+        }
+
+        /**
+         * @param mmapSizeBytes how much of the file to read through memory mapping, 0 turns it off
+         */
+        public Builder setMmapSizeBytes(long mmapSizeBytes){
+            this.mmapSizeBytes = mmapSizeBytes;
+            return this;
+        }
+
+        /**
+         * @param pages size the WAL may reach before a commit checkpoints it, 0 or less turns
+         *              automatic checkpoints off
+         */
+        public Builder setWalAutoCheckpointPages(int pages){
+            this.walAutoCheckpointPages = pages;
+            return this;
+        }
+
+        /**
+         * @param petCacheSize how many pets the by-id cache holds before evicting the least
+         *                     recently used one
+         */
+        public Builder setPetCacheSize(int petCacheSize){
+            if(petCacheSize <= 0){
+                throw new IllegalArgumentException("petCacheSize must be positive");
+            }
+            this.petCacheSize = petCacheSize;
+            return this;
+        }
+
+        /**
+         * @param queryMetrics where to record the latency of every statement, or null to open
+         *                     the database without any instrumentation
+         */
+        public Builder setQueryMetrics(@Nullable QueryMetrics queryMetrics){
+            this.queryMetrics = queryMetrics;
+            return this;
+        }
+
+        /**
+         * @param seed the prebuilt database to copy when the database file doesn't exist yet, or
+         *             null to create it empty
+         */
+        public Builder setSeed(@Nullable PetsDatabaseSeed seed){
+            this.seed = seed;
+            return this;
+        }
+
+        public PetsDatabaseConfig build(){
+            return new PetsDatabaseConfig(this);
+        }
+    }
+}
@@ -0,0 +1,151 @@
+package com.example.android.pets.data;
+
+import android.content.Context;
+import android.support.annotation.NonNull;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.RandomAccessFile;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.util.Arrays;
+
+/**
+ * A prebuilt database file that {@link PetsDatabase} starts from instead of an empty one, see
+ * {@link PetsDatabaseConfig.Builder#setSeed(PetsDatabaseSeed)}. A large populated dataset then
+ * costs one file copy on first open, not thousands of inserts.
+ *
+ * The seed must be a database this app wrote, e.g. a copy of pets_shelter, so it already has
+ * Room's identity hash, the search index and the triggers, none of which are created for a copied
+ * file. Checkpoint it first if it was in WAL mode, only the main file is copied. Its schema
+ * version is checked before it is used: an older one is migrated as usual, a newer one is refused.
+ */
+public final class PetsDatabaseSeed {
+
+    //Bytes read per transfer from an asset, which can only be read as a stream
+    private static final long ASSET_CHUNK_BYTES = 1024 * 1024;
+
+    //The SQLite file header, see https://sqlite.org/fileformat.html#the_database_header
+    private static final byte[] HEADER_MAGIC = "SQLite format 3\0".getBytes();
+    private static final int HEADER_USER_VERSION_OFFSET = 60;
+
+    private final String assetPath;
+    private final File file;
+
+    private PetsDatabaseSeed(String assetPath, File file){
+        this.assetPath = assetPath;
+        this.file = file;
+    }
+
+    /**
+     * @param assetPath path of the database file in the app's assets
+     */
+    public static PetsDatabaseSeed fromAsset(@NonNull String assetPath){
+        return new PetsDatabaseSeed(assetPath, null);
+    }
+
+    public static PetsDatabaseSeed fromFile(@NonNull File file){
+        return new PetsDatabaseSeed(null, file);
+    }
+
+    /**
+     * Copies the seed to where the database is about to be created. The copy is checked and then
+     * renamed into place, so the database either is the whole seed or doesn't exist.
+     *
+     * @throws IOException if the seed can't be read, isn't a database, or has a schema version
+     * this app can't open. The database is left absent then.
+     */
+    @WorkerThread
+    void copyTo(Context context, File database) throws IOException {
+        File directory = database.getParentFile();
+        if(!directory.isDirectory() && !directory.mkdirs()){
+            throw new IOException("Could not create " + directory);
+        }
+        File temp = File.createTempFile(database.getName(), ".seed", directory);
+        try {
+            FileOutputStream out = new FileOutputStream(temp);
+            try {
+                if(file != null){
+                    copyFile(out.getChannel());
+                }else{
+                    copyAsset(context, out.getChannel());
+                }
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            int version = readUserVersion(temp);
+            if(version < 1 || version > PetsDatabase.VERSION){
+                throw new IOException("Seed " + this + " has schema version " + version
+                        + ", expected 1 to " + PetsDatabase.VERSION);
+            }
+            //A journal left by an earlier database of the same name would be replayed onto the seed
+            for(String suffix : new String[]{"-wal", "-shm", "-journal"}){
+                new File(database.getPath() + suffix).delete();
+            }
+            if(!temp.renameTo(database)){
+                throw new IOException("Could not rename " + temp + " to " + database);
+            }
+        } finally {
+            if(temp.exists()){
+                temp.delete();
+            }
+        }
+    }
+
+    //File to file, the kernel copies the bytes without them passing through the app
+    private void copyFile(FileChannel output) throws IOException {
+        FileInputStream in = new FileInputStream(file);
+        try {
+            FileChannel input = in.getChannel();
+            long size = input.size();
+            long position = 0;
+            while(position < size){
+                position += input.transferTo(position, size - position, output);
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    //Assets are usually compressed in the APK, so they are read as a stream in large chunks
+    private void copyAsset(Context context, FileChannel output) throws IOException {
+        InputStream in = context.getAssets().open(assetPath);
+        try {
+            ReadableByteChannel input = Channels.newChannel(in);
+            long position = 0;
+            long transferred;
+            while((transferred = output.transferFrom(input, position, ASSET_CHUNK_BYTES)) > 0){
+                position += transferred;
+            }
+        } finally {
+            in.close();
+        }
+    }
+
+    //Room stores its schema version in the header's user_version, big-endian
+    private static int readUserVersion(File database) throws IOException {
+        RandomAccessFile in = new RandomAccessFile(database, "r");
+        try {
+            byte[] magic = new byte[HEADER_MAGIC.length];
+            in.readFully(magic);
+            if(!Arrays.equals(magic, HEADER_MAGIC)){
+                throw new IOException(database + " is not an SQLite database");
+            }
+            in.seek(HEADER_USER_VERSION_OFFSET);
+            return in.readInt();
+        } finally {
+            in.close();
+        }
+    }
+
+    @Override
+    public String toString() {
+        return file != null ? file.getPath() : "asset:" + assetPath;
+    }
+}
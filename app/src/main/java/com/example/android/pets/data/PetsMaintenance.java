@@ -0,0 +1,261 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.database.Cursor;
+import android.os.SystemClock;
+import android.support.annotation.WorkerThread;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * Housekeeping for a {@link PetsDatabase} after heavy insert and delete churn:
+ * - Prunes the change log of what every consumer has read, and of what is too old to keep, see
+ *   {@link PetChangeFeed#compact(PetsDatabase, long)}.
+ * - Refreshes the query planner's statistics, with PRAGMA optimize where SQLite has it and a
+ *   plain ANALYZE otherwise.
+ * - Gives free pages back to the file system with incremental vacuum. Databases are created with
+ *   incremental auto-vacuum (see {@link AutoVacuumOpenHelperFactory}). One created before that
+ *   is switched over by a full VACUUM, once a run's budget is large enough for one.
+ * - Checkpoints the WAL and truncates it.
+ *
+ * Every step runs outside a transaction, within a time budget for the whole run. The vacuum
+ * works in small steps and stops once the budget is spent. The other steps are single statements
+ * that can't be interrupted, so the budget can only skip them. Meant to run while the app is
+ * idle, see MaintenanceScheduler.
+ */
+public class PetsMaintenance {
+
+    public static final long DEFAULT_BUDGET_MS = 2000;
+
+    //Pages freed per incremental vacuum step, 1MiB with the default 4KiB pages
+    private static final int VACUUM_STEP_PAGES = 256;
+
+    //Rows sampled per index by ANALYZE, where SQLite supports the limit (3.32 and later)
+    private static final int ANALYSIS_LIMIT = 1000;
+
+    private static final int AUTO_VACUUM_INCREMENTAL = 2;
+
+    //How fast a full VACUUM is assumed to rewrite the database, on slow flash. It writes every
+    //page twice, once to a temp copy and once back.
+    private static final long VACUUM_BYTES_PER_MS = 10 * 1024;
+
+    /**
+     * What one run did, and what it cost.
+     */
+    public static class Report {
+
+        private final long sizeBeforeBytes;
+        private final long sizeAfterBytes;
+        private final long durationMs;
+        private final List<String> steps;
+
+        Report(long sizeBeforeBytes, long sizeAfterBytes, long durationMs, List<String> steps){
+            this.sizeBeforeBytes = sizeBeforeBytes;
+            this.sizeAfterBytes = sizeAfterBytes;
+            this.durationMs = durationMs;
+            this.steps = steps;
+        }
+
+        /**
+         * @return the size of the database file plus its WAL before the run.
+         */
+        public long getSizeBeforeBytes() {
+            return sizeBeforeBytes;
+        }
+
+        public long getSizeAfterBytes() {
+            return sizeAfterBytes;
+        }
+
+        public long getDurationMs() {
+            return durationMs;
+        }
+
+        //One line per step, with what it did and how long it took
+        public List<String> getSteps() {
+            return steps;
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder report = new StringBuilder(String.format(Locale.US,
+                    "Maintenance took %dms, %d KiB -> %d KiB",
+                    durationMs, sizeBeforeBytes / 1024, sizeAfterBytes / 1024));
+            for(String step : steps){
+                report.append("\n  ").append(step);
+            }
+            return report.toString();
+        }
+    }
+
+    private final PetsDatabase mDb;
+    private final long mBudgetMs;
+
+    public PetsMaintenance(PetsDatabase database){
+        this(database, DEFAULT_BUDGET_MS);
+    }
+
+    /**
+     * @param budgetMs how long the whole run should take at most, split between the steps
+     */
+    public PetsMaintenance(PetsDatabase database, long budgetMs){
+        mDb = database;
+        mBudgetMs = budgetMs;
+    }
+
+    @WorkerThread
+    public Report run(){
+        SupportSQLiteDatabase db = mDb.getOpenHelper().getWritableDatabase();
+        File file = new File(db.getPath());
+        long sizeBefore = sizeOf(file);
+        long start = SystemClock.elapsedRealtime();
+        long deadline = start + mBudgetMs;
+        List<String> steps = new ArrayList<>();
+
+        //First, so the pages it frees are given back by the vacuum
+        steps.add(compactChangeLog());
+        steps.add(updateStatistics(db));
+        if(SystemClock.elapsedRealtime() < deadline){
+            steps.add(vacuum(db, deadline));
+        }else{
+            steps.add("vacuum: skipped, over budget");
+        }
+        //A vacuum fills the WAL with the pages it moved, so the checkpoint runs last. It is cheap
+        //and keeps the WAL from growing, so it runs even over budget.
+        if(isWriteAheadLogging(db)){
+            steps.add(checkpoint(db));
+        }
+
+        long end = SystemClock.elapsedRealtime();
+        return new Report(sizeBefore, sizeOf(file), end - start, steps);
+    }
+
+    private String compactChangeLog(){
+        long start = SystemClock.elapsedRealtime();
+        int pruned = PetChangeFeed.compact(mDb, PetChangeFeed.DEFAULT_MAX_AGE_MS);
+        return String.format(Locale.US, "change log: pruned %d changes in %dms",
+                pruned, SystemClock.elapsedRealtime() - start);
+    }
+
+    private String updateStatistics(SupportSQLiteDatabase db){
+        long start = SystemClock.elapsedRealtime();
+        String how;
+        //Bounds both the ANALYZE that optimize runs and the plain one
+        if(versionAtLeast(db, 3, 32)){
+            PetsDatabaseConfig.pragma(db, "analysis_limit = " + ANALYSIS_LIMIT);
+        }
+        //optimize only re-analyzes tables that look stale, and does nothing without earlier stats
+        if(hasStatistics(db) && versionAtLeast(db, 3, 18)){
+            readAll(db, "PRAGMA optimize");
+            how = "optimize";
+        }else{
+            db.execSQL("ANALYZE");
+            how = "ANALYZE";
+        }
+        return String.format(Locale.US, "statistics: %s in %dms", how, SystemClock.elapsedRealtime() - start);
+    }
+
+    private String vacuum(SupportSQLiteDatabase db, long deadline){
+        long start = SystemClock.elapsedRealtime();
+        if(queryLong(db, "PRAGMA auto_vacuum") != AUTO_VACUUM_INCREMENTAL){
+            //A VACUUM can't be interrupted, so it only runs if it should fit in what is left
+            long estimateMs = new File(db.getPath()).length() / VACUUM_BYTES_PER_MS;
+            if(start + estimateMs > deadline){
+                return String.format(Locale.US,
+                        "vacuum: switch to incremental auto-vacuum skipped, needs about %dms", estimateMs);
+            }
+            //Only takes effect on an empty database or after a VACUUM
+            PetsDatabaseConfig.pragma(db, "auto_vacuum = INCREMENTAL");
+            db.execSQL("VACUUM");
+            return String.format(Locale.US, "vacuum: switched to incremental auto-vacuum in %dms",
+                    SystemClock.elapsedRealtime() - start);
+        }
+
+        long freedPages = 0;
+        long freePages = queryLong(db, "PRAGMA freelist_count");
+        while(freePages > 0 && SystemClock.elapsedRealtime() < deadline){
+            //Frees one page per row it returns, so every row has to be read
+            readAll(db, "PRAGMA incremental_vacuum(" + VACUUM_STEP_PAGES + ")");
+            long left = queryLong(db, "PRAGMA freelist_count");
+            freedPages += freePages - left;
+            if(left == freePages){
+                break;
+            }
+            freePages = left;
+        }
+        return String.format(Locale.US, "vacuum: freed %d pages, %d left, in %dms",
+                freedPages, freePages, SystemClock.elapsedRealtime() - start);
+    }
+
+    private String checkpoint(SupportSQLiteDatabase db){
+        long start = SystemClock.elapsedRealtime();
+        //TRUNCATE also resets the WAL file to zero bytes. Returns busy, WAL frames, checkpointed frames.
+        Cursor cursor = db.query("PRAGMA wal_checkpoint(TRUNCATE)");
+        try {
+            if(!cursor.moveToFirst()){
+                return "checkpoint: no result";
+            }
+            return String.format(Locale.US, "checkpoint: %s, %d of %d frames in %dms",
+                    cursor.getInt(0) == 0 ? "done" : "busy",
+                    cursor.getInt(2), cursor.getInt(1), SystemClock.elapsedRealtime() - start);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    //SupportSQLiteDatabase.isWriteAheadLoggingEnabled needs API 16, the pragma works everywhere
+    private static boolean isWriteAheadLogging(SupportSQLiteDatabase db){
+        Cursor cursor = db.query("PRAGMA journal_mode");
+        try {
+            return cursor.moveToFirst() && "wal".equalsIgnoreCase(cursor.getString(0));
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static boolean hasStatistics(SupportSQLiteDatabase db){
+        return queryLong(db, "SELECT COUNT(*) FROM sqlite_master WHERE name = 'sqlite_stat1'") > 0;
+    }
+
+    private static boolean versionAtLeast(SupportSQLiteDatabase db, int major, int minor){
+        Cursor cursor = db.query("SELECT sqlite_version()");
+        try {
+            if(!cursor.moveToFirst()){
+                return false;
+            }
+            String[] parts = cursor.getString(0).split("\\.");
+            int actualMajor = Integer.parseInt(parts[0]);
+            int actualMinor = parts.length > 1 ? Integer.parseInt(parts[1]) : 0;
+            return actualMajor > major || (actualMajor == major && actualMinor >= minor);
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long queryLong(SupportSQLiteDatabase db, String sql){
+        Cursor cursor = db.query(sql);
+        try {
+            return cursor.moveToFirst() ? cursor.getLong(0) : 0;
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static void readAll(SupportSQLiteDatabase db, String sql){
+        Cursor cursor = db.query(sql);
+        try {
+            while(cursor.moveToNext()){
+                //Each step does part of the work
+            }
+        } finally {
+            cursor.close();
+        }
+    }
+
+    private static long sizeOf(File file){
+        return file.length() + new File(file.getPath() + "-wal").length();
+    }
+}
@@ -0,0 +1,156 @@
+package com.example.android.pets.data;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Latency and row counts of every statement run against a {@link PetsDatabase}, plus the
+ * duration of its transactions and how long each one waited for the database lock.
+ *
+ * Install it with {@link PetsDatabaseConfig.Builder#setQueryMetrics(QueryMetrics)}, which wraps
+ * the database's open helper in an {@link InstrumentedOpenHelperFactory}. Statements slower than
+ * the threshold are logged as they finish and kept for {@link #dump()}. While disabled, each
+ * statement costs one volatile read on top of the normal call.
+ */
+public class QueryMetrics {
+
+    private static final String LOG_TAG = QueryMetrics.class.getSimpleName();
+
+    public static final long DEFAULT_SLOW_QUERY_THRESHOLD_MS = 100;
+
+    //Raw queries with literals baked in could make every statement new, so the number tracked
+    //one by one is capped and the rest are counted together
+    private static final int MAX_STATEMENTS = 200;
+    private static final String OTHER_STATEMENTS = "(other statements)";
+
+    private static final int MAX_SLOW_QUERIES = 20;
+
+    private volatile boolean mEnabled = true;
+    private volatile long mSlowQueryThresholdNanos = DEFAULT_SLOW_QUERY_THRESHOLD_MS * 1000000;
+
+    //Everything below is guarded by mLock
+    private final Object mLock = new Object();
+    private final Map<String, StatementStats> mStatements = new HashMap<>();
+    private final LatencyHistogram mTransactions = new LatencyHistogram();
+    private final LatencyHistogram mLockWaits = new LatencyHistogram();
+    private final ArrayDeque<String> mSlowQueries = new ArrayDeque<>(MAX_SLOW_QUERIES);
+
+    public boolean isEnabled(){
+        return mEnabled;
+    }
+
+    /**
+     * Turns recording on or off. Turning it off keeps what was recorded so far.
+     */
+    public void setEnabled(boolean enabled){
+        mEnabled = enabled;
+    }
+
+    public void setSlowQueryThresholdMillis(long thresholdMillis){
+        mSlowQueryThresholdNanos = thresholdMillis * 1000000;
+    }
+
+    /**
+     * @param rows rows returned by a query or changed by a write, or -1 if not known
+     */
+    void recordStatement(String sql, long nanos, long rows){
+        String slowQuery = null;
+        if(nanos >= mSlowQueryThresholdNanos){
+            slowQuery = String.format(Locale.US, "%.1fms, %d rows: %s", nanos / 1e6, rows, sql);
+            Log.w(LOG_TAG, "Slow statement " + slowQuery);
+        }
+        synchronized (mLock){
+            StatementStats stats = mStatements.get(sql);
+            if(stats == null){
+                String key = mStatements.size() < MAX_STATEMENTS ? sql : OTHER_STATEMENTS;
+                stats = mStatements.get(key);
+                if(stats == null){
+                    stats = new StatementStats(key);
+                    mStatements.put(key, stats);
+                }
+            }
+            stats.latency.record(nanos);
+            if(rows > 0){
+                stats.rows += rows;
+            }
+            if(slowQuery != null){
+                if(mSlowQueries.size() == MAX_SLOW_QUERIES){
+                    mSlowQueries.removeFirst();
+                }
+                mSlowQueries.addLast(slowQuery);
+            }
+        }
+    }
+
+    void recordTransaction(long nanos){
+        synchronized (mLock){
+            mTransactions.record(nanos);
+        }
+    }
+
+    void recordLockWait(long nanos){
+        synchronized (mLock){
+            mLockWaits.record(nanos);
+        }
+    }
+
+    public void reset(){
+        synchronized (mLock){
+            mStatements.clear();
+            mTransactions.clear();
+            mLockWaits.clear();
+            mSlowQueries.clear();
+        }
+    }
+
+    /**
+     * @return a readable snapshot of everything recorded so far, statements sorted by the total
+     * time spent in them.
+     */
+    public String dump(){
+        StringBuilder dump = new StringBuilder();
+        synchronized (mLock){
+            dump.append("Transactions: ").append(mTransactions.summary()).append('\n');
+            dump.append("Lock waits:   ").append(mLockWaits.summary()).append('\n');
+
+            List<StatementStats> statements = new ArrayList<>(mStatements.values());
+            Collections.sort(statements, new Comparator<StatementStats>() {
+                @Override
+                public int compare(StatementStats first, StatementStats second) {
+                    long firstTotal = first.latency.getTotalNanos();
+                    long secondTotal = second.latency.getTotalNanos();
+                    return firstTotal < secondTotal ? 1 : firstTotal == secondTotal ? 0 : -1;
+                }
+            });
+            for(StatementStats stats : statements){
+                dump.append('\n').append(stats.sql).append('\n');
+                dump.append("  ").append(stats.latency.summary())
+                        .append(" rows=").append(stats.rows).append('\n');
+            }
+
+            dump.append("\nRecent slow statements:\n");
+            for(String slowQuery : mSlowQueries){
+                dump.append("  ").append(slowQuery).append('\n');
+            }
+        }
+        return dump.toString();
+    }
+
+    private static class StatementStats {
+        final String sql;
+        final LatencyHistogram latency = new LatencyHistogram();
+        long rows;
+
+        StatementStats(String sql){
+            this.sql = sql;
+        }
+    }
+}
@@ -0,0 +1,72 @@
+package com.example.android.pets.data;
+
+import android.support.annotation.Nullable;
+
+/**
+ * A pet as the sync backend knows it: identified by its external key, at a version the backend
+ * assigns and raises on every accepted write. A deleted pet is a tombstone with no fields.
+ *
+ * When pushed, version is the remote version the local change was based on.
+ */
+public final class RemotePet {
+
+    private final String key;
+    private final long version;
+    private final boolean deleted;
+    private final String name;
+    private final String breed;
+    private final int gender;
+    private final int weight;
+
+    public RemotePet(String key, long version, boolean deleted, @Nullable String name,
+                     @Nullable String breed, int gender, int weight){
+        this.key = key;
+        this.version = version;
+        this.deleted = deleted;
+        this.name = name;
+        this.breed = breed;
+        this.gender = gender;
+        this.weight = weight;
+    }
+
+    public static RemotePet tombstone(String key, long version){
+        return new RemotePet(key, version, true, null, null, PetEntry.GENDER_UNKNOWN, 0);
+    }
+
+    /**
+     * @return the same pet at another version.
+     */
+    public RemotePet withVersion(long version){
+        return new RemotePet(key, version, deleted, name, breed, gender, weight);
+    }
+
+    public String getKey() {
+        return key;
+    }
+
+    public long getVersion() {
+        return version;
+    }
+
+    public boolean isDeleted() {
+        return deleted;
+    }
+
+    @Nullable
+    public String getName() {
+        return name;
+    }
+
+    @Nullable
+    public String getBreed() {
+        return breed;
+    }
+
+    public int getGender() {
+        return gender;
+    }
+
+    public int getWeight() {
+        return weight;
+    }
+}
@@ -0,0 +1,105 @@
+package com.example.android.pets.data;
+
+import android.arch.persistence.db.SupportSQLiteDatabase;
+import android.arch.persistence.db.SupportSQLiteOpenHelper;
+import android.content.Context;
+import android.os.Build;
+import android.support.annotation.RequiresApi;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+
+/**
+ * Wraps another open helper factory so a database that doesn't exist yet is copied from a
+ * {@link PetsDatabaseSeed} before it is first opened. Room only opens the database on the first
+ * query or transaction, so the copy runs on whichever background thread gets there first, never
+ * while the database is being built.
+ *
+ * A seed that can't be copied is logged, and the database is created empty as it would be
+ * without one.
+ */
+public class SeededOpenHelperFactory implements SupportSQLiteOpenHelper.Factory {
+
+    private static final String LOG_TAG = SeededOpenHelperFactory.class.getSimpleName();
+
+    private final SupportSQLiteOpenHelper.Factory mDelegate;
+    private final PetsDatabaseSeed mSeed;
+
+    public SeededOpenHelperFactory(SupportSQLiteOpenHelper.Factory delegate, PetsDatabaseSeed seed){
+        mDelegate = delegate;
+        mSeed = seed;
+    }
+
+    @Override
+    public SupportSQLiteOpenHelper create(SupportSQLiteOpenHelper.Configuration configuration) {
+        return new SeededOpenHelper(mDelegate.create(configuration), configuration.context,
+                configuration.name, mSeed);
+    }
+
+    private static class SeededOpenHelper implements SupportSQLiteOpenHelper {
+
+        private final SupportSQLiteOpenHelper mDelegate;
+        private final Context mContext;
+        //Null for an in-memory database, which has no file to copy to
+        private final String mName;
+        private final PetsDatabaseSeed mSeed;
+        //Guarded by this
+        private boolean mSeedChecked = false;
+
+        SeededOpenHelper(SupportSQLiteOpenHelper delegate, Context context, String name, PetsDatabaseSeed seed){
+            mDelegate = delegate;
+            mContext = context;
+            mName = name;
+            mSeed = seed;
+        }
+
+        @Override
+        public String getDatabaseName() {
+            return mDelegate.getDatabaseName();
+        }
+
+        @RequiresApi(api = Build.VERSION_CODES.JELLY_BEAN)
+        @Override
+        public void setWriteAheadLoggingEnabled(boolean enabled) {
+            mDelegate.setWriteAheadLoggingEnabled(enabled);
+        }
+
+        @Override
+        public SupportSQLiteDatabase getWritableDatabase() {
+            seedIfMissing();
+            return mDelegate.getWritableDatabase();
+        }
+
+        @Override
+        public SupportSQLiteDatabase getReadableDatabase() {
+            seedIfMissing();
+            return mDelegate.getReadableDatabase();
+        }
+
+        @Override
+        public void close() {
+            mDelegate.close();
+        }
+
+        //Threads opening the database at the same time wait here until the copy is done
+        private synchronized void seedIfMissing(){
+            if(mSeedChecked){
+                return;
+            }
+            mSeedChecked = true;
+            if(mName == null){
+                return;
+            }
+            File database = mContext.getDatabasePath(mName);
+            if(database.exists()){
+                return;
+            }
+            try {
+                mSeed.copyTo(mContext, database);
+            } catch (IOException e){
+                Log.e(LOG_TAG, "Could not copy seed " + mSeed + ", starting empty", e);
+            }
+        }
+    }
+}
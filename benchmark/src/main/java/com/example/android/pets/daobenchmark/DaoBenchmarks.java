@@ -0,0 +1,393 @@
+package com.example.android.pets.daobenchmark;
+
+import java.io.File;
+import java.io.IOException;
+import java.sql.Connection;
+import java.sql.DriverManager;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.Random;
+
+/**
+ * Runs the PetDao microbenchmarks on the JVM and writes the results as JSON.
+ *
+ * Every benchmark runs against a table already holding each of the configured row counts, by
+ * default 1k, 100k and 1M pets, on a fresh temp-file database in WAL mode like the app uses.
+ * Each one is warmed up before it is timed.
+ *
+ * Options:
+ *   --out FILE          where to write the JSON report, default pet-dao-benchmark.json
+ *   --sizes N,N,...     table sizes to run at
+ *   --in-memory         use an in-memory database instead of a temp file
+ *   --label TEXT        stored in the report, e.g. the commit being measured
+ */
+public final class DaoBenchmarks {
+
+    private static final int[] DEFAULT_SIZES = {1000, 100000, 1000000};
+
+    //Each iteration of a cheap method runs it several times, so the timer's resolution and the
+    //loop overhead don't dominate the sample
+    private static final int SINGLE_WRITES_PER_ITERATION = 100;
+    private static final int LOOKUPS_PER_ITERATION = 1000;
+    //Same as PetPager.DEFAULT_PAGE_SIZE, and how many random pages each iteration loads
+    private static final int PAGE_SIZE = 50;
+    private static final int PAGES_PER_ITERATION = 100;
+    //Same as PetBulkWriter.DEFAULT_CHUNK_SIZE
+    private static final int BULK_CHUNK_SIZE = 500;
+    //Pets are spread over this many breeds, with ids 1..BREEDS
+    private static final int BREEDS = 100;
+
+    private static final int WARMUP_ITERATIONS = 3;
+    private static final int MIN_ITERATIONS = 5;
+    private static final int MAX_ITERATIONS = 50;
+    private static final long TIME_BUDGET_NANOS = 2000000000L;
+
+    private final boolean mInMemory;
+    private final Random mRandom = new Random(42);
+    private final List<Measurement> mMeasurements = new ArrayList<>();
+
+    private Connection mConnection;
+    private JdbcPetDao mDao;
+    private File mDatabaseFile;
+    private int mNextPet = 0;
+
+    private DaoBenchmarks(boolean inMemory){
+        mInMemory = inMemory;
+    }
+
+    public static void main(String[] args) throws Exception {
+        File out = new File("pet-dao-benchmark.json");
+        int[] sizes = DEFAULT_SIZES;
+        boolean inMemory = false;
+        String label = null;
+        for(int i = 0; i < args.length; i++){
+            switch (args[i]){
+                case "--out":
+                    out = new File(args[++i]);
+                    break;
+                case "--sizes":
+                    sizes = parseSizes(args[++i]);
+                    break;
+                case "--in-memory":
+                    inMemory = true;
+                    break;
+                case "--label":
+                    label = args[++i];
+                    break;
+                default:
+                    throw new IllegalArgumentException("Unknown option " + args[i]);
+            }
+        }
+
+        DaoBenchmarks benchmarks = new DaoBenchmarks(inMemory);
+        Map<String, String> environment = new LinkedHashMap<>();
+        if(label != null){
+            environment.put("label", label);
+        }
+        environment.put("storage", inMemory ? "memory" : "file-wal");
+        environment.put("schemaVersion", String.valueOf(PetSchema.VERSION));
+        environment.put("javaVersion", System.getProperty("java.version"));
+        environment.put("osName", System.getProperty("os.name"));
+        environment.put("osArch", System.getProperty("os.arch"));
+        for(int size : sizes){
+            environment.put("sqliteVersion", benchmarks.runAll(size));
+        }
+        JsonReport.write(out, environment, benchmarks.mMeasurements);
+        System.out.println("Wrote " + benchmarks.mMeasurements.size() + " results to " + out.getAbsolutePath());
+    }
+
+    //Returns the SQLite version the driver bundles
+    private String runAll(int rows) throws SQLException, IOException {
+        open();
+        try {
+            fill(rows);
+            System.out.println(String.format(Locale.US, "%,d rows", rows));
+            benchmarkLoadAllPets(rows);
+            benchmarkLoadPetById(rows);
+            checkCatalogPagePlan(rows);
+            benchmarkLoadPageAfterName(rows);
+            benchmarkUpdatePet(rows);
+            benchmarkInsertPet(rows);
+            benchmarkInsertPets(rows);
+            benchmarkDeleteAllPets(rows);
+            return sqliteVersion();
+        } finally {
+            close();
+        }
+    }
+
+    private void benchmarkLoadAllPets(int rows) throws SQLException {
+        measure("loadAllPets", rows, 1, new Body() {
+            @Override
+            public void run() throws SQLException {
+                if(mDao.loadAllPets().isEmpty()){
+                    throw new IllegalStateException("loadAllPets returned nothing");
+                }
+            }
+        });
+    }
+
+    private void benchmarkLoadPetById(final int rows) throws SQLException {
+        measure("loadPetById", rows, LOOKUPS_PER_ITERATION, new Body() {
+            @Override
+            public void run() throws SQLException {
+                for(int i = 0; i < LOOKUPS_PER_ITERATION; i++){
+                    mDao.loadPetById(1 + mRandom.nextInt(rows));
+                }
+            }
+        });
+    }
+
+    //A deep catalog page has to seek the name index to its anchor. If SQLite scanned the index
+    //or the table instead, the page would cost more the further down it is, so fail loudly.
+    private void checkCatalogPagePlan(int rows) throws SQLException {
+        Pet anchor = mDao.loadPetById(rows / 2);
+        PreparedStatement statement = mConnection.prepareStatement(
+                "EXPLAIN QUERY PLAN " + JdbcPetDao.LOAD_PAGE_AFTER_NAME);
+        StringBuilder plan = new StringBuilder();
+        try {
+            statement.setString(1, anchor.name);
+            statement.setString(2, anchor.name);
+            statement.setInt(3, anchor.id);
+            statement.setInt(4, PAGE_SIZE);
+            ResultSet resultSet = statement.executeQuery();
+            try {
+                while(resultSet.next()){
+                    plan.append(resultSet.getString("detail")).append('\n');
+                }
+            } finally {
+                resultSet.close();
+            }
+            mConnection.commit();
+        } finally {
+            statement.close();
+        }
+        System.out.print("  loadPageAfterName plan: " + plan);
+        if(!plan.toString().contains("USING INDEX index_pet_name (name>?)")){
+            throw new IllegalStateException("loadPageAfterName doesn't seek index_pet_name:\n" + plan);
+        }
+    }
+
+    //Pages starting anywhere in the catalog, so a deep page costs the same as a shallow one
+    private void benchmarkLoadPageAfterName(final int rows) throws SQLException {
+        final Pet[] anchors = new Pet[PAGES_PER_ITERATION];
+        for(int i = 0; i < anchors.length; i++){
+            anchors[i] = mDao.loadPetById(1 + mRandom.nextInt(rows));
+        }
+        measure("loadPageAfterName", rows, PAGES_PER_ITERATION, new Body() {
+            @Override
+            public void run() throws SQLException {
+                for(Pet anchor : anchors){
+                    mDao.loadPageAfterName(anchor, PAGE_SIZE);
+                }
+            }
+        });
+    }
+
+    //@Update on existing rows, each call is its own transaction
+    private void benchmarkUpdatePet(final int rows) throws SQLException {
+        measure("updatePet", rows, SINGLE_WRITES_PER_ITERATION, new Body() {
+            @Override
+            public void run() throws SQLException {
+                for(int i = 0; i < SINGLE_WRITES_PER_ITERATION; i++){
+                    int id = 1 + mRandom.nextInt(rows);
+                    int renamed = mNextPet++;
+                    mDao.updatePet(new Pet(id, "Renamed " + renamed, 1 + id % BREEDS, id % 3, id % 50,
+                            externalKey(renamed), null));
+                }
+            }
+        });
+    }
+
+    //One transaction per row, the way the editor inserts
+    private void benchmarkInsertPet(int rows) throws SQLException {
+        measure("insertPet", rows, SINGLE_WRITES_PER_ITERATION, new Body() {
+            @Override
+            public void run() throws SQLException {
+                for(int i = 0; i < SINGLE_WRITES_PER_ITERATION; i++){
+                    mDao.insertPet(newPet());
+                }
+            }
+        });
+    }
+
+    //One chunk of PetBulkWriter, committed once
+    private void benchmarkInsertPets(int rows) throws SQLException {
+        measure("insertPets", rows, BULK_CHUNK_SIZE, new Body() {
+            @Override
+            public void run() throws SQLException {
+                mDao.insertPets(newPets(BULK_CHUNK_SIZE));
+            }
+        });
+    }
+
+    //Destructive, so the table is refilled between runs and only the delete is timed
+    private void benchmarkDeleteAllPets(int rows) throws SQLException {
+        int iterations = rows >= 1000000 ? 1 : 3;
+        long[] nanos = new long[iterations];
+        for(int i = 0; i < iterations; i++){
+            if(i > 0){
+                fill(rows);
+            }
+            long start = System.nanoTime();
+            int deleted = mDao.deleteAllPets();
+            nanos[i] = System.nanoTime() - start;
+            if(deleted < rows){
+                throw new IllegalStateException("deleteAllPets deleted " + deleted + " of " + rows);
+            }
+        }
+        record(new Measurement("deleteAllPets", rows, 1, nanos));
+    }
+
+    private interface Body {
+        void run() throws SQLException;
+    }
+
+    //Warms up, then runs at least MIN_ITERATIONS and stops at MAX_ITERATIONS or once the time
+    //budget is spent, so the 1M row benchmarks don't take minutes
+    private void measure(String benchmark, int rows, int opsPerIteration, Body body) throws SQLException {
+        for(int i = 0; i < WARMUP_ITERATIONS; i++){
+            body.run();
+        }
+        long[] nanos = new long[MAX_ITERATIONS];
+        int iterations = 0;
+        long spent = 0;
+        while(iterations < MAX_ITERATIONS && (iterations < MIN_ITERATIONS || spent < TIME_BUDGET_NANOS)){
+            long start = System.nanoTime();
+            body.run();
+            nanos[iterations] = System.nanoTime() - start;
+            spent += nanos[iterations];
+            iterations++;
+        }
+        long[] samples = new long[iterations];
+        System.arraycopy(nanos, 0, samples, 0, iterations);
+        record(new Measurement(benchmark, rows, opsPerIteration, samples));
+    }
+
+    private void record(Measurement measurement){
+        mMeasurements.add(measurement);
+        System.out.println(String.format(Locale.US, "  %-18s median %,12d ns  p95 %,12d ns  %,12.0f ops/s",
+                measurement.benchmark, measurement.medianNanos(), measurement.p95Nanos(),
+                measurement.opsPerSecond()));
+    }
+
+    //Fills an empty table with ids 1..rows through the bulk insert path
+    private void fill(int rows) throws SQLException {
+        //deleteAllPets leaves the AUTOINCREMENT counter behind, reset it so ids start at 1 again
+        Statement statement = mConnection.createStatement();
+        try {
+            statement.execute("DELETE FROM sqlite_sequence WHERE name = 'pet'");
+            mConnection.commit();
+        } finally {
+            statement.close();
+        }
+        for(int start = 0; start < rows; start += BULK_CHUNK_SIZE){
+            mDao.insertPets(newPets(Math.min(BULK_CHUNK_SIZE, rows - start)));
+        }
+    }
+
+    private Pet newPet(){
+        int i = mNextPet++;
+        return new Pet(0, "Pet " + i, 1 + i % BREEDS, i % 3, i % 50, externalKey(i), null);
+    }
+
+    //Every pet gets a key, as sync gives one to each pet before its first push. Unique across
+    //the run, an update to a key another pet has would replace that pet.
+    private static String externalKey(int i){
+        return String.format(Locale.US, "pet-%010d", i);
+    }
+
+    private List<Pet> newPets(int count){
+        List<Pet> pets = new ArrayList<>(count);
+        for(int i = 0; i < count; i++){
+            pets.add(newPet());
+        }
+        return pets;
+    }
+
+    private void open() throws SQLException, IOException {
+        String url;
+        if(mInMemory){
+            url = "jdbc:sqlite::memory:";
+        }else{
+            mDatabaseFile = File.createTempFile("pet-dao-benchmark", ".db");
+            url = "jdbc:sqlite:" + mDatabaseFile.getAbsolutePath();
+        }
+        mConnection = DriverManager.getConnection(url);
+        if(!mInMemory){
+            Statement statement = mConnection.createStatement();
+            try {
+                statement.execute("PRAGMA journal_mode = WAL");
+            } finally {
+                statement.close();
+            }
+        }
+        PetSchema.create(mConnection);
+        addBreeds();
+        //Transactions are explicit from here on, as in Room
+        mConnection.setAutoCommit(false);
+        mDao = new JdbcPetDao(mConnection);
+    }
+
+    //The breed ids the pets refer to, as the app's BreedDictionary would have added them
+    private void addBreeds() throws SQLException {
+        Statement statement = mConnection.createStatement();
+        try {
+            for(int i = 0; i < BREEDS; i++){
+                statement.execute("INSERT INTO breed(name) VALUES ('Breed " + i + "')");
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private void close() throws SQLException {
+        mDao.close();
+        mConnection.close();
+        if(mDatabaseFile != null){
+            deleteQuietly(mDatabaseFile);
+            deleteQuietly(new File(mDatabaseFile.getPath() + "-wal"));
+            deleteQuietly(new File(mDatabaseFile.getPath() + "-shm"));
+            mDatabaseFile = null;
+        }
+    }
+
+    private static void deleteQuietly(File file){
+        if(file.exists() && !file.delete()){
+            file.deleteOnExit();
+        }
+    }
+
+    private String sqliteVersion() throws SQLException {
+        Statement statement = mConnection.createStatement();
+        try {
+            ResultSet resultSet = statement.executeQuery("SELECT sqlite_version()");
+            try {
+                return resultSet.next() ? resultSet.getString(1) : "unknown";
+            } finally {
+                resultSet.close();
+            }
+        } finally {
+            statement.close();
+        }
+    }
+
+    private static int[] parseSizes(String value){
+        String[] parts = value.split(",");
+        int[] sizes = new int[parts.length];
+        for(int i = 0; i < parts.length; i++){
+            sizes[i] = Integer.parseInt(parts[i].trim());
+            if(sizes[i] <= 0){
+                throw new IllegalArgumentException("Sizes must be positive: " + value);
+            }
+        }
+        return sizes;
+    }
+}
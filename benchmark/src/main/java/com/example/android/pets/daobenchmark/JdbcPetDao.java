@@ -0,0 +1,216 @@
+package com.example.android.pets.daobenchmark;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Statement;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * JDBC stand-in for the Room generated PetDao_Impl.
+ *
+ * Every method runs the SQL Room generates for the matching PetDao method, with the same
+ * transaction boundaries: a single-row write commits on its own, a list write commits once.
+ * Statements are compiled once and reused, as Room does with its SharedSQLiteStatements.
+ */
+final class JdbcPetDao {
+
+    private static final String INSERT_PET =
+            "INSERT OR ABORT INTO `pet`(`id`,`name`,`breed_id`,`gender`,`weight`,`external_key`,`photo_path`) "
+                    + "VALUES (nullif(?, 0),?,?,?,?,?,?)";
+
+    private static final String UPDATE_PET =
+            "UPDATE OR ABORT `pet` SET `id` = ?,`name` = ?,`breed_id` = ?,`gender` = ?,`weight` = ?,"
+                    + "`external_key` = ?,`photo_path` = ? WHERE `id` = ?";
+
+    private static final String LOAD_ALL_PETS = "SELECT * FROM pet";
+
+    private static final String LOAD_PET_BY_ID = "SELECT * FROM pet WHERE id = ?";
+
+    private static final String DELETE_ALL_PETS = "DELETE FROM pet";
+
+    //What PetCatalogQuery.after builds for the name sort without filters, the page PetPager
+    //loads as the catalog scrolls down
+    static final String LOAD_PAGE_AFTER_NAME =
+            "SELECT pet.id, pet.name, pet.breed_id, pet.weight, pet.photo_path FROM pet "
+                    + "WHERE pet.name >= ? AND (pet.name > ? OR pet.id > ?) "
+                    + "ORDER BY pet.name, pet.id LIMIT ?";
+
+    private final Connection mConnection;
+    private final PreparedStatement mInsert;
+    private final PreparedStatement mUpdate;
+    private final PreparedStatement mLoadAll;
+    private final PreparedStatement mLoadById;
+    private final PreparedStatement mLoadPageAfterName;
+
+    JdbcPetDao(Connection connection) throws SQLException {
+        mConnection = connection;
+        mInsert = connection.prepareStatement(INSERT_PET);
+        mUpdate = connection.prepareStatement(UPDATE_PET);
+        mLoadAll = connection.prepareStatement(LOAD_ALL_PETS);
+        mLoadById = connection.prepareStatement(LOAD_PET_BY_ID);
+        mLoadPageAfterName = connection.prepareStatement(LOAD_PAGE_AFTER_NAME);
+    }
+
+    //@Insert long insertPet(PetEntry)
+    long insertPet(Pet pet) throws SQLException {
+        long id = bindAndInsert(pet);
+        mConnection.commit();
+        return id;
+    }
+
+    //@Insert long[] insertPets(List<PetEntry>)
+    long[] insertPets(List<Pet> pets) throws SQLException {
+        long[] ids = new long[pets.size()];
+        try {
+            for(int i = 0; i < pets.size(); i++){
+                ids[i] = bindAndInsert(pets.get(i));
+            }
+            mConnection.commit();
+        } catch (SQLException e){
+            mConnection.rollback();
+            throw e;
+        }
+        return ids;
+    }
+
+    //@Update int updatePet(PetEntry)
+    int updatePet(Pet pet) throws SQLException {
+        int updated = bindAndUpdate(pet);
+        mConnection.commit();
+        return updated;
+    }
+
+    //@Update int updatePets(List<PetEntry>)
+    int updatePets(List<Pet> pets) throws SQLException {
+        int updated = 0;
+        try {
+            for(Pet pet : pets){
+                updated += bindAndUpdate(pet);
+            }
+            mConnection.commit();
+        } catch (SQLException e){
+            mConnection.rollback();
+            throw e;
+        }
+        return updated;
+    }
+
+    //@Query("SELECT * FROM pet") List<PetEntry> loadAllPets(), without the LiveData wrapper
+    List<Pet> loadAllPets() throws SQLException {
+        ResultSet resultSet = mLoadAll.executeQuery();
+        try {
+            List<Pet> pets = new ArrayList<>();
+            while(resultSet.next()){
+                pets.add(readPet(resultSet));
+            }
+            return pets;
+        } finally {
+            resultSet.close();
+            mConnection.commit();
+        }
+    }
+
+    //@Query("SELECT * FROM pet WHERE id = :id") PetEntry loadPetById(int), without the LiveData wrapper
+    Pet loadPetById(int id) throws SQLException {
+        mLoadById.setInt(1, id);
+        ResultSet resultSet = mLoadById.executeQuery();
+        try {
+            return resultSet.next() ? readPet(resultSet) : null;
+        } finally {
+            resultSet.close();
+            mConnection.commit();
+        }
+    }
+
+    //@RawQuery List<PetListItem> loadPetListItemPage(SupportSQLiteQuery), for the page after the
+    //given pet in name order. A list item has no gender or key, they are left 0 and null.
+    List<Pet> loadPageAfterName(Pet last, int limit) throws SQLException {
+        mLoadPageAfterName.setString(1, last.name);
+        mLoadPageAfterName.setString(2, last.name);
+        mLoadPageAfterName.setInt(3, last.id);
+        mLoadPageAfterName.setInt(4, limit);
+        ResultSet resultSet = mLoadPageAfterName.executeQuery();
+        try {
+            List<Pet> pets = new ArrayList<>(limit);
+            while(resultSet.next()){
+                pets.add(new Pet(
+                        resultSet.getInt(1),
+                        resultSet.getString(2),
+                        resultSet.getInt(3),
+                        0,
+                        resultSet.getInt(4),
+                        null,
+                        resultSet.getString(5)));
+            }
+            return pets;
+        } finally {
+            resultSet.close();
+            mConnection.commit();
+        }
+    }
+
+    //@Query("DELETE FROM pet") int deleteAllPets()
+    int deleteAllPets() throws SQLException {
+        Statement statement = mConnection.createStatement();
+        try {
+            int deleted = statement.executeUpdate(DELETE_ALL_PETS);
+            mConnection.commit();
+            return deleted;
+        } finally {
+            statement.close();
+        }
+    }
+
+    void close() throws SQLException {
+        mInsert.close();
+        mUpdate.close();
+        mLoadAll.close();
+        mLoadById.close();
+        mLoadPageAfterName.close();
+    }
+
+    private long bindAndInsert(Pet pet) throws SQLException {
+        mInsert.setInt(1, pet.id);
+        mInsert.setString(2, pet.name);
+        mInsert.setInt(3, pet.breedId);
+        mInsert.setInt(4, pet.gender);
+        mInsert.setInt(5, pet.weight);
+        mInsert.setString(6, pet.externalKey);
+        mInsert.setString(7, pet.photoPath);
+        mInsert.executeUpdate();
+        //Same value as sqlite3_last_insert_rowid, which is what Room returns
+        ResultSet keys = mInsert.getGeneratedKeys();
+        try {
+            return keys.next() ? keys.getLong(1) : -1;
+        } finally {
+            keys.close();
+        }
+    }
+
+    private int bindAndUpdate(Pet pet) throws SQLException {
+        mUpdate.setInt(1, pet.id);
+        mUpdate.setString(2, pet.name);
+        mUpdate.setInt(3, pet.breedId);
+        mUpdate.setInt(4, pet.gender);
+        mUpdate.setInt(5, pet.weight);
+        mUpdate.setString(6, pet.externalKey);
+        mUpdate.setString(7, pet.photoPath);
+        mUpdate.setInt(8, pet.id);
+        return mUpdate.executeUpdate();
+    }
+
+    //Room reads columns by the index it looked up once per query, not by name per row
+    private static Pet readPet(ResultSet resultSet) throws SQLException {
+        return new Pet(
+                resultSet.getInt(1),
+                resultSet.getString(2),
+                resultSet.getInt(3),
+                resultSet.getInt(4),
+                resultSet.getInt(5),
+                resultSet.getString(6),
+                resultSet.getString(7));
+    }
+}
@@ -0,0 +1,88 @@
+package com.example.android.pets.daobenchmark;
+
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Writes the results as one JSON document, so CI can keep it as an artifact and compare the
+ * same benchmark and row count across commits.
+ *
+ * {"suite": "pet-dao", "environment": {...}, "results": [{"benchmark": "loadAllPets",
+ * "rows": 1000, "opsPerIteration": 1, "iterations": 20, "minNanos": ..., "medianNanos": ...,
+ * "p95Nanos": ..., "meanNanos": ..., "opsPerSecond": ...}, ...]}
+ */
+final class JsonReport {
+
+    private JsonReport(){
+    }
+
+    static void write(File file, Map<String, String> environment, List<Measurement> measurements)
+            throws IOException {
+        File parent = file.getAbsoluteFile().getParentFile();
+        if(parent != null && !parent.isDirectory() && !parent.mkdirs()){
+            throw new IOException("Can't create " + parent);
+        }
+        Writer writer = new OutputStreamWriter(new FileOutputStream(file), "UTF-8");
+        try {
+            writer.write(toJson(environment, measurements));
+        } finally {
+            writer.close();
+        }
+    }
+
+    static String toJson(Map<String, String> environment, List<Measurement> measurements){
+        StringBuilder json = new StringBuilder();
+        json.append("{\n  \"suite\": \"pet-dao\",\n  \"environment\": {");
+        boolean first = true;
+        for(Map.Entry<String, String> entry : environment.entrySet()){
+            json.append(first ? "\n" : ",\n");
+            json.append("    ").append(quote(entry.getKey())).append(": ").append(quote(entry.getValue()));
+            first = false;
+        }
+        json.append("\n  },\n  \"results\": [");
+        first = true;
+        for(Measurement measurement : measurements){
+            json.append(first ? "\n" : ",\n");
+            json.append(String.format(Locale.US,
+                    "    {\"benchmark\": %s, \"rows\": %d, \"opsPerIteration\": %d, \"iterations\": %d, "
+                            + "\"minNanos\": %d, \"medianNanos\": %d, \"p95Nanos\": %d, \"meanNanos\": %d, "
+                            + "\"opsPerSecond\": %.1f}",
+                    quote(measurement.benchmark),
+                    measurement.rows,
+                    measurement.opsPerIteration,
+                    measurement.iterations(),
+                    measurement.minNanos(),
+                    measurement.medianNanos(),
+                    measurement.p95Nanos(),
+                    measurement.meanNanos(),
+                    measurement.opsPerSecond()));
+            first = false;
+        }
+        json.append("\n  ]\n}\n");
+        return json.toString();
+    }
+
+    private static String quote(String value){
+        if(value == null){
+            return "null";
+        }
+        StringBuilder quoted = new StringBuilder(value.length() + 2).append('"');
+        for(int i = 0; i < value.length(); i++){
+            char c = value.charAt(i);
+            if(c == '"' || c == '\\'){
+                quoted.append('\\').append(c);
+            }else if(c < 0x20){
+                quoted.append(String.format(Locale.US, "\\u%04x", (int) c));
+            }else{
+                quoted.append(c);
+            }
+        }
+        return quoted.append('"').toString();
+    }
+}
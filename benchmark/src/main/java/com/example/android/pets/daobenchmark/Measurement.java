@@ -0,0 +1,58 @@
+package com.example.android.pets.daobenchmark;
+
+import java.util.Arrays;
+
+/**
+ * Timings of one benchmark at one table size. Each sample is the time of one iteration, and an
+ * iteration runs opsPerIteration calls of the measured method.
+ */
+final class Measurement {
+
+    final String benchmark;
+    final int rows;
+    final int opsPerIteration;
+    private final long[] mSortedNanos;
+
+    Measurement(String benchmark, int rows, int opsPerIteration, long[] nanos){
+        this.benchmark = benchmark;
+        this.rows = rows;
+        this.opsPerIteration = opsPerIteration;
+        mSortedNanos = nanos.clone();
+        Arrays.sort(mSortedNanos);
+    }
+
+    int iterations(){
+        return mSortedNanos.length;
+    }
+
+    long minNanos(){
+        return mSortedNanos[0];
+    }
+
+    long medianNanos(){
+        return percentile(50);
+    }
+
+    long p95Nanos(){
+        return percentile(95);
+    }
+
+    long meanNanos(){
+        long sum = 0;
+        for(long nanos : mSortedNanos){
+            sum += nanos;
+        }
+        return sum / mSortedNanos.length;
+    }
+
+    //Based on the median, which a single GC pause or fsync can't move much
+    double opsPerSecond(){
+        return opsPerIteration * 1e9 / Math.max(medianNanos(), 1);
+    }
+
+    //Nearest-rank percentile
+    private long percentile(int percent){
+        int rank = (int) Math.ceil(percent / 100.0 * mSortedNanos.length);
+        return mSortedNanos[Math.max(rank - 1, 0)];
+    }
+}
@@ -0,0 +1,26 @@
+package com.example.android.pets.daobenchmark;
+
+/**
+ * Plain copy of the app's PetEntry, so reads pay for building the same objects Room builds.
+ * Room only reads and writes the breed id, the app's BreedDictionary handles the names.
+ */
+final class Pet {
+
+    int id;
+    String name;
+    int breedId;
+    int gender;
+    int weight;
+    String externalKey;
+    String photoPath;
+
+    Pet(int id, String name, int breedId, int gender, int weight, String externalKey, String photoPath){
+        this.id = id;
+        this.name = name;
+        this.breedId = breedId;
+        this.gender = gender;
+        this.weight = weight;
+        this.externalKey = externalKey;
+        this.photoPath = photoPath;
+    }
+}
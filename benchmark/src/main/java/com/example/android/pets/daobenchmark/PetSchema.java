@@ -0,0 +1,128 @@
+package com.example.android.pets.daobenchmark;
+
+import java.sql.Connection;
+import java.sql.SQLException;
+import java.sql.Statement;
+
+/**
+ * The schema of the app's PetsDatabase, as Room creates it on a fresh install.
+ *
+ * The table and index statements are the ones Room generates for PetEntry, and the search index
+ * is the one from PetSearchIndex, triggers included, since every write pays for them. The same
+ * goes for the dashboard statistics and the PetStatsTriggers that maintain them, and for the
+ * change log that PetChangeLog's triggers fill, and for PetSyncTriggers' dirty tracking. Pets
+ * refer to their breed by id, the breed table is BreedEntry's. Keep this in step with the app
+ * whenever the schema version changes.
+ */
+final class PetSchema {
+
+    static final int VERSION = 9;
+
+    private static final String[] CREATE_STATEMENTS = {
+            "CREATE TABLE IF NOT EXISTS `pet` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`name` TEXT, `breed_id` INTEGER NOT NULL, `gender` INTEGER NOT NULL, `weight` INTEGER NOT NULL, "
+                    + "`external_key` TEXT, `photo_path` TEXT)",
+            "CREATE INDEX IF NOT EXISTS `index_pet_name` ON `pet` (`name`)",
+            "CREATE INDEX IF NOT EXISTS `index_pet_breed_id` ON `pet` (`breed_id`)",
+            "CREATE INDEX IF NOT EXISTS `index_pet_weight` ON `pet` (`weight`)",
+            "CREATE INDEX IF NOT EXISTS `index_pet_gender_weight` ON `pet` (`gender`, `weight`)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS `index_pet_external_key` ON `pet` (`external_key`)",
+            "CREATE VIRTUAL TABLE IF NOT EXISTS pet_fts USING fts4(name, breed)",
+            "CREATE TRIGGER IF NOT EXISTS pet_fts_after_insert AFTER INSERT ON pet BEGIN "
+                    + "INSERT INTO pet_fts(docid, name, breed) VALUES (NEW.id, NEW.name, " + breedName("NEW") + "); END",
+            "CREATE TRIGGER IF NOT EXISTS pet_fts_after_update AFTER UPDATE OF name, breed_id ON pet BEGIN "
+                    + "UPDATE pet_fts SET name = NEW.name, breed = " + breedName("NEW") + " WHERE docid = NEW.id; END",
+            "CREATE TRIGGER IF NOT EXISTS pet_fts_after_delete AFTER DELETE ON pet BEGIN "
+                    + "DELETE FROM pet_fts WHERE docid = OLD.id; END",
+            "CREATE TABLE IF NOT EXISTS `pet_stats_gender` (`gender` INTEGER NOT NULL, "
+                    + "`pet_count` INTEGER NOT NULL, `total_weight` INTEGER NOT NULL, PRIMARY KEY(`gender`))",
+            "CREATE TABLE IF NOT EXISTS `pet_stats_breed` (`breed` TEXT NOT NULL, "
+                    + "`pet_count` INTEGER NOT NULL, PRIMARY KEY(`breed`))",
+            "CREATE TABLE IF NOT EXISTS `pet_stats_weight` (`bucket` INTEGER NOT NULL, "
+                    + "`pet_count` INTEGER NOT NULL, PRIMARY KEY(`bucket`))",
+            "CREATE TRIGGER IF NOT EXISTS pet_stats_after_insert AFTER INSERT ON pet BEGIN "
+                    + addStats("NEW") + "END",
+            "CREATE TRIGGER IF NOT EXISTS pet_stats_after_update AFTER UPDATE OF gender, breed_id, weight ON pet BEGIN "
+                    + removeStats("OLD") + addStats("NEW") + "END",
+            "CREATE TRIGGER IF NOT EXISTS pet_stats_after_delete AFTER DELETE ON pet BEGIN "
+                    + removeStats("OLD") + "END",
+            "CREATE TABLE IF NOT EXISTS `pet_changelog` (`seq` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`op` INTEGER NOT NULL, `pet_id` INTEGER NOT NULL, `changed_at` INTEGER NOT NULL)",
+            "CREATE TABLE IF NOT EXISTS `pet_changelog_consumer` (`name` TEXT NOT NULL, "
+                    + "`acked_seq` INTEGER NOT NULL, `resync_required` INTEGER NOT NULL, PRIMARY KEY(`name`))",
+            "CREATE TRIGGER IF NOT EXISTS pet_changelog_after_insert AFTER INSERT ON pet BEGIN "
+                    + recordChange(1, "NEW.id") + "END",
+            "CREATE TRIGGER IF NOT EXISTS pet_changelog_after_update AFTER UPDATE ON pet BEGIN "
+                    + recordChange(2, "NEW.id") + "END",
+            "CREATE TRIGGER IF NOT EXISTS pet_changelog_after_delete AFTER DELETE ON pet BEGIN "
+                    + recordChange(3, "OLD.id") + "END",
+            "CREATE TABLE IF NOT EXISTS `pet_sync` (`pet_id` INTEGER NOT NULL, `external_key` TEXT, "
+                    + "`remote_version` INTEGER NOT NULL, `dirty` INTEGER NOT NULL, `deleted` INTEGER NOT NULL, "
+                    + "PRIMARY KEY(`pet_id`))",
+            "CREATE INDEX IF NOT EXISTS `index_pet_sync_external_key` ON `pet_sync` (`external_key`)",
+            "CREATE INDEX IF NOT EXISTS `index_pet_sync_dirty` ON `pet_sync` (`dirty`)",
+            "CREATE TABLE IF NOT EXISTS `pet_sync_cursor` (`backend` TEXT NOT NULL, "
+                    + "`pulled_version` INTEGER NOT NULL, PRIMARY KEY(`backend`))",
+            "CREATE TRIGGER IF NOT EXISTS pet_sync_after_insert AFTER INSERT ON pet BEGIN "
+                    + "INSERT OR REPLACE INTO pet_sync(pet_id, external_key, remote_version, dirty, deleted) "
+                    + "VALUES (NEW.id, NEW.external_key, 0, 1, 0); END",
+            "CREATE TRIGGER IF NOT EXISTS pet_sync_after_update AFTER UPDATE ON pet BEGIN "
+                    + "UPDATE pet_sync SET external_key = NEW.external_key, dirty = dirty + 1 WHERE pet_id = NEW.id; END",
+            "CREATE TRIGGER IF NOT EXISTS pet_sync_after_delete AFTER DELETE ON pet BEGIN "
+                    + "UPDATE pet_sync SET deleted = 1, dirty = dirty + 1 WHERE pet_id = OLD.id; END",
+            "CREATE TABLE IF NOT EXISTS `breed` (`id` INTEGER PRIMARY KEY AUTOINCREMENT NOT NULL, "
+                    + "`name` TEXT NOT NULL)",
+            "CREATE UNIQUE INDEX IF NOT EXISTS `index_breed_name` ON `breed` (`name`)"
+    };
+
+    private PetSchema(){
+    }
+
+    private static String breedName(String pet){
+        return "(SELECT name FROM breed WHERE id = " + pet + ".breed_id)";
+    }
+
+    private static String addStats(String pet){
+        String breed = breedName(pet);
+        String bucket = "(" + pet + ".weight / 5)";
+        return "INSERT OR IGNORE INTO pet_stats_gender(gender, pet_count, total_weight) VALUES (" + pet + ".gender, 0, 0); "
+                + "UPDATE pet_stats_gender SET pet_count = pet_count + 1, total_weight = total_weight + "
+                + pet + ".weight WHERE gender = " + pet + ".gender; "
+                + "INSERT OR IGNORE INTO pet_stats_breed(breed, pet_count) VALUES (" + breed + ", 0); "
+                + "UPDATE pet_stats_breed SET pet_count = pet_count + 1 WHERE breed = " + breed + "; "
+                + "INSERT OR IGNORE INTO pet_stats_weight(bucket, pet_count) VALUES (" + bucket + ", 0); "
+                + "UPDATE pet_stats_weight SET pet_count = pet_count + 1 WHERE bucket = " + bucket + "; ";
+    }
+
+    private static String recordChange(int op, String petId){
+        return "INSERT INTO pet_changelog(op, pet_id, changed_at) VALUES (" + op + ", " + petId + ", "
+                + "CAST((julianday('now') - 2440587.5) * 86400000 AS INTEGER)); ";
+    }
+
+    private static String removeStats(String pet){
+        String breed = breedName(pet);
+        String bucket = "(" + pet + ".weight / 5)";
+        return "UPDATE pet_stats_gender SET pet_count = pet_count - 1, total_weight = total_weight - "
+                + pet + ".weight WHERE gender = " + pet + ".gender; "
+                + "UPDATE pet_stats_breed SET pet_count = pet_count - 1 WHERE breed = " + breed + "; "
+                + "DELETE FROM pet_stats_breed WHERE breed = " + breed + " AND pet_count <= 0; "
+                + "UPDATE pet_stats_weight SET pet_count = pet_count - 1 WHERE bucket = " + bucket + "; "
+                + "DELETE FROM pet_stats_weight WHERE bucket = " + bucket + " AND pet_count <= 0; ";
+    }
+
+    static void create(Connection connection) throws SQLException {
+        Statement statement = connection.createStatement();
+        try {
+            //Before the first table, as the app's AutoVacuumOpenHelperFactory does. The VACUUM
+            //applies it to a file whose header switching to WAL already wrote.
+            statement.execute("PRAGMA auto_vacuum = INCREMENTAL");
+            statement.execute("VACUUM");
+            for(String sql : CREATE_STATEMENTS){
+                statement.execute(sql);
+            }
+            statement.execute("PRAGMA user_version = " + VERSION);
+        } finally {
+            statement.close();
+        }
+    }
+}